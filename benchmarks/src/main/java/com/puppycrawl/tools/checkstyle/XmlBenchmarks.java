@@ -0,0 +1,382 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Benchmarks of the parser, the walker and the expression checks over
+ * generated documents.
+ *
+ * Every benchmark reports its throughput in files per second and, through
+ * the <code>megabytes</code> counter, in MB per second. Run with
+ * <code>-prof gc</code> to get the allocation rate.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlBenchmarks {
+
+    /** Expression evaluated by the expression checks. */
+    private static final String EXPRESSION = "//*[@*]";
+
+    /** Bound high enough for the expression checks to never report. */
+    private static final String NO_LIMIT = String.valueOf(Integer.MAX_VALUE);
+
+    /**
+     * Parses a document to its tree.
+     * @param aDocument the document
+     * @param aCounters the throughput counters
+     * @return the nodes of the document
+     * @throws Exception if the document cannot be parsed
+     */
+    @Benchmark
+    public XmlDocument parseToAst(DocumentState aDocument,
+        ThroughputCounters aCounters) throws Exception
+    {
+        final InputSource source = XmlFileSource.open(aDocument.mFile);
+        try {
+            return XmlTreeWalker.parseDocument(source, aDocument.mFile);
+        }
+        finally {
+            XmlFileSource.close(source);
+            aCounters.count(aDocument);
+        }
+    }
+
+    /**
+     * Parses a document to its tree, reusing the arrays of the previous
+     * iteration as the walker does between files.
+     * @param aHandler the recycled handler
+     * @param aDocument the document
+     * @param aCounters the throughput counters
+     * @return the nodes of the document
+     * @throws Exception if the document cannot be parsed
+     */
+    @Benchmark
+    public XmlDocument parseRecycled(HandlerState aHandler,
+        DocumentState aDocument, ThroughputCounters aCounters)
+        throws Exception
+    {
+        final InputSource source = XmlFileSource.open(aDocument.mFile);
+        try {
+            aHandler.mHandler.reset(aDocument.mFile);
+            return XmlTreeWalker.parseDocument(source, aHandler.mHandler);
+        }
+        finally {
+            XmlFileSource.close(source);
+            aCounters.count(aDocument);
+        }
+    }
+
+    /**
+     * Walks a tree already built, notifying a check subscribed to every
+     * node type.
+     * @param aWalker the walker
+     * @param aDocument the document
+     * @param aCounters the throughput counters
+     * @throws Exception if the walk fails
+     */
+    @Benchmark
+    public void walkOnly(WalkState aWalker, DocumentState aDocument,
+        ThroughputCounters aCounters) throws Exception
+    {
+        aWalker.mWalker.walk(aDocument.mNodes, aDocument.mContents);
+        aCounters.count(aDocument);
+    }
+
+    /**
+     * Runs an XPath check over a file, including the build of its tree.
+     * @param aWalker the walker
+     * @param aDocument the document
+     * @param aCounters the throughput counters
+     * @throws Exception if the walk fails
+     */
+    @Benchmark
+    public void xpathPerFile(XPathState aWalker, DocumentState aDocument,
+        ThroughputCounters aCounters) throws Exception
+    {
+        aWalker.mWalker.walk(aDocument.mNodes, aDocument.mContents);
+        aCounters.count(aDocument);
+    }
+
+    /**
+     * Runs an XQuery check over a file, including the build of its tree.
+     * @param aWalker the walker
+     * @param aDocument the document
+     * @param aCounters the throughput counters
+     * @throws Exception if the walk fails
+     */
+    @Benchmark
+    public void xqueryPerFile(XQueryState aWalker, DocumentState aDocument,
+        ThroughputCounters aCounters) throws Exception
+    {
+        aWalker.mWalker.walk(aDocument.mNodes, aDocument.mContents);
+        aCounters.count(aDocument);
+    }
+
+    /**
+     * Creates a walker running one check.
+     * @param aCheck the configuration of the check
+     * @return the configured walker
+     * @throws CheckstyleException if the check cannot be set up
+     */
+    static XmlTreeWalker createWalker(Configuration aCheck)
+        throws CheckstyleException
+    {
+        final DefaultConfiguration config =
+            new DefaultConfiguration("XmlTreeWalker");
+        config.addChild(aCheck);
+
+        final XmlTreeWalker walker = new XmlTreeWalker();
+        walker.setModuleFactory(new PackageObjectFactory(
+            Collections.<String>emptySet(),
+            XmlBenchmarks.class.getClassLoader()));
+        walker.configure(config);
+        return walker;
+    }
+
+    /**
+     * A generated document, written to a file and parsed once.
+     */
+    @State(Scope.Benchmark)
+    public static class DocumentState
+    {
+        /** Shape of the document, set by JMH. */
+        @Param({"DEEP", "WIDE", "ATTRIBUTES", "TEXT" })
+        public XmlDocumentShape shape;
+
+        /** Approximate size of the document in bytes, set by JMH. */
+        @Param({"16384", "1048576" })
+        public int size;
+
+        /** The file holding the document. */
+        private File mFile;
+
+        /** Length of the file, in bytes. */
+        private long mLength;
+
+        /** Contents of the file. */
+        private FileContents mContents;
+
+        /** Nodes of the file. */
+        private XmlDocument mNodes;
+
+        /**
+         * Generates the document.
+         * @throws Exception if the document cannot be written or parsed
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws Exception
+        {
+            mFile = File.createTempFile("benchmark-" + shape, ".xml");
+            final OutputStream out = new FileOutputStream(mFile);
+            try {
+                out.write(shape.generate(size).getBytes("UTF-8"));
+            }
+            finally {
+                out.close();
+            }
+            mLength = mFile.length();
+
+            final FileText text = new FileText(mFile, "UTF-8");
+            mContents = new FileContents(text);
+            final InputSource source = XmlFileSource.open(text);
+            try {
+                mNodes = XmlTreeWalker.parseDocument(source, mFile);
+            }
+            finally {
+                XmlFileSource.close(source);
+            }
+        }
+
+        /** Deletes the document. */
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            if (!mFile.delete()) {
+                mFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Counts the processed bytes so that the results show MB per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ThroughputCounters
+    {
+        /** Megabytes processed. */
+        public double megabytes;
+
+        /** Resets the counters before each iteration. */
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            megabytes = 0;
+        }
+
+        /**
+         * Counts a processed document.
+         * @param aDocument the document
+         */
+        void count(DocumentState aDocument)
+        {
+            megabytes += aDocument.mLength / (1024.0 * 1024.0);
+        }
+    }
+
+    /**
+     * A content handler reused between the parsed documents.
+     */
+    @State(Scope.Thread)
+    public static class HandlerState
+    {
+        /** The handler. */
+        private XmlContentHandler mHandler;
+
+        /** Creates the handler. */
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            mHandler = new XmlContentHandler(new File("benchmark.xml"));
+        }
+    }
+
+    /**
+     * A walker running a check subscribed to every node type.
+     */
+    @State(Scope.Thread)
+    public static class WalkState
+    {
+        /** The walker. */
+        private XmlTreeWalker mWalker;
+
+        /**
+         * Creates the walker.
+         * @throws CheckstyleException if the walker cannot be set up
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws CheckstyleException
+        {
+            mWalker = createWalker(
+                new DefaultConfiguration(NoOpCheck.class.getName()));
+        }
+    }
+
+    /**
+     * A walker running an XPath check.
+     */
+    @State(Scope.Thread)
+    public static class XPathState
+    {
+        /** The walker. */
+        private XmlTreeWalker mWalker;
+
+        /**
+         * Creates the walker.
+         * @throws CheckstyleException if the walker cannot be set up
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws CheckstyleException
+        {
+            final DefaultConfiguration check = new DefaultConfiguration(
+                "com.puppycrawl.tools.checkstyle.checks.XPathCheck");
+            check.addAttribute("expression", EXPRESSION);
+            check.addAttribute("max", NO_LIMIT);
+            mWalker = createWalker(check);
+        }
+    }
+
+    /**
+     * A walker running an XQuery check.
+     */
+    @State(Scope.Thread)
+    public static class XQueryState
+    {
+        /** The walker. */
+        private XmlTreeWalker mWalker;
+
+        /**
+         * Creates the walker.
+         * @throws CheckstyleException if the walker cannot be set up
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws CheckstyleException
+        {
+            final DefaultConfiguration check = new DefaultConfiguration(
+                "com.puppycrawl.tools.checkstyle.checks.XQueryCheck");
+            check.addAttribute("expression", EXPRESSION);
+            check.addAttribute("max", NO_LIMIT);
+            mWalker = createWalker(check);
+        }
+    }
+
+    /**
+     * Check visiting every node type without doing anything.
+     */
+    public static class NoOpCheck extends Check
+    {
+        /** {@inheritDoc} */
+        @Override
+        public int[] getDefaultTokens()
+        {
+            return new int[] {
+                XmlTokenTypes.DOCUMENT,
+                XmlTokenTypes.ELEMENT,
+                XmlTokenTypes.ATTRIBUTES,
+                XmlTokenTypes.ATTRIBUTE,
+                XmlTokenTypes.PCDATA,
+                XmlTokenTypes.WHITE_SPACE,
+                XmlTokenTypes.PROCESSING_INSTRUCTION,
+            };
+        }
+    }
+}
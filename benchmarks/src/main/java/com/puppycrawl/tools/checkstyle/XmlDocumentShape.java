@@ -0,0 +1,106 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+/**
+ * Shapes of the generated benchmark documents. Every shape writes records
+ * until the document reaches the requested size.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public enum XmlDocumentShape {
+
+    /** Chains of nested elements, each one hundred levels deep. */
+    DEEP {
+        @Override
+        void appendRecord(StringBuilder aBuf, int aIndex)
+        {
+            final int depth = 100;
+            for (int i = 0; i < depth; i++) {
+                aBuf.append("<level depth=\"").append(i).append("\">\n");
+            }
+            aBuf.append("<leaf>").append(aIndex).append("</leaf>\n");
+            for (int i = 0; i < depth; i++) {
+                aBuf.append("</level>\n");
+            }
+        }
+    },
+
+    /** Many small sibling elements under the root. */
+    WIDE {
+        @Override
+        void appendRecord(StringBuilder aBuf, int aIndex)
+        {
+            aBuf.append("<item>").append(aIndex).append("</item>\n");
+        }
+    },
+
+    /** Elements carrying many attributes. */
+    ATTRIBUTES {
+        @Override
+        void appendRecord(StringBuilder aBuf, int aIndex)
+        {
+            aBuf.append("<item");
+            for (int i = 0; i < 20; i++) {
+                aBuf.append(" attr").append(i).append("=\"value ")
+                    .append(aIndex).append('-').append(i).append('"');
+            }
+            aBuf.append("/>\n");
+        }
+    },
+
+    /** Elements holding long runs of text. */
+    TEXT {
+        @Override
+        void appendRecord(StringBuilder aBuf, int aIndex)
+        {
+            aBuf.append("<paragraph>");
+            for (int i = 0; i < 40; i++) {
+                aBuf.append("Lorem ipsum dolor sit amet ").append(aIndex)
+                    .append(", consectetur adipiscing elit.\n");
+            }
+            aBuf.append("</paragraph>\n");
+        }
+    };
+
+    /**
+     * Generates a document of this shape.
+     * @param aSize the approximate size of the document, in bytes
+     * @return the document
+     */
+    public String generate(int aSize)
+    {
+        final StringBuilder buf = new StringBuilder(aSize + 4096);
+        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buf.append("<root xmlns:ns=\"http://example.com/ns\">\n");
+        for (int i = 0; buf.length() < aSize; i++) {
+            appendRecord(buf, i);
+        }
+        buf.append("</root>\n");
+        return buf.toString();
+    }
+
+    /**
+     * Appends one record of this shape.
+     * @param aBuf the document being generated
+     * @param aIndex the index of the record
+     */
+    abstract void appendRecord(StringBuilder aBuf, int aIndex);
+}
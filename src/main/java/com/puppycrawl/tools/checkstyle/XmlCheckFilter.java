@@ -0,0 +1,224 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.google.common.collect.Sets;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tells whether a check of an XmlTreeWalker applies to a document, from
+ * the attributes <code>rootElement</code>, <code>rootNamespace</code> and
+ * <code>files</code> of its configuration.
+ *
+ * Each attribute holds a comma separated list, a document being accepted
+ * when it matches one of the values of every attribute set. Root elements
+ * are compared by local name. A file pattern is a glob matched against
+ * the end of the path, in which <code>*</code> and <code>?</code> stop at
+ * the directory separators and <code>**</code> does not.
+ *
+ * The attributes are removed from the configuration given to the check,
+ * so any check may be filtered.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlRootSniffer
+ */
+final class XmlCheckFilter {
+
+    /** Attribute listing the local names of the accepted root elements. */
+    static final String ROOT_ELEMENT = "rootElement";
+
+    /** Attribute listing the namespaces of the accepted root elements. */
+    static final String ROOT_NAMESPACE = "rootNamespace";
+
+    /** Attribute listing the globs of the accepted files. */
+    static final String FILES = "files";
+
+    /** The filter attributes. */
+    private static final List<String> ATTRIBUTES =
+        Arrays.asList(ROOT_ELEMENT, ROOT_NAMESPACE, FILES);
+
+    /** Accepted local names of the root, null for any. */
+    private final Set<String> mRootElements;
+
+    /** Accepted namespaces of the root, null for any. */
+    private final Set<String> mRootNamespaces;
+
+    /** Pattern of the accepted paths, null for any. */
+    private final Pattern mFiles;
+
+    /**
+     * Creates a filter.
+     * @param aRootElements the accepted local names of the root, or null
+     * @param aRootNamespaces the accepted namespaces of the root, or null
+     * @param aFiles the pattern of the accepted paths, or null
+     */
+    private XmlCheckFilter(Set<String> aRootElements,
+        Set<String> aRootNamespaces, Pattern aFiles)
+    {
+        mRootElements = aRootElements;
+        mRootNamespaces = aRootNamespaces;
+        mFiles = aFiles;
+    }
+
+    /**
+     * Creates the filter of a check.
+     * @param aConf the configuration of the check
+     * @return the filter, null if the configuration sets no filter
+     *         attribute
+     * @throws CheckstyleException if an attribute cannot be read
+     */
+    static XmlCheckFilter create(Configuration aConf)
+        throws CheckstyleException
+    {
+        final List<String> names = Arrays.asList(aConf.getAttributeNames());
+        if (!names.contains(ROOT_ELEMENT) && !names.contains(ROOT_NAMESPACE)
+            && !names.contains(FILES))
+        {
+            return null;
+        }
+        Pattern files = null;
+        if (names.contains(FILES)) {
+            final StringBuilder regex = new StringBuilder();
+            for (String glob : split(aConf.getAttribute(FILES))) {
+                regex.append((regex.length() == 0) ? "" : "|")
+                    .append("(?:.*/)?").append(toRegex(glob));
+            }
+            files = Pattern.compile(regex.toString());
+        }
+        return new XmlCheckFilter(
+            names.contains(ROOT_ELEMENT)
+                ? split(aConf.getAttribute(ROOT_ELEMENT)) : null,
+            names.contains(ROOT_NAMESPACE)
+                ? split(aConf.getAttribute(ROOT_NAMESPACE)) : null,
+            files);
+    }
+
+    /**
+     * Copies a configuration without the filter attributes.
+     * @param aConf the configuration of a check
+     * @return the configuration to give to the check
+     * @throws CheckstyleException if an attribute cannot be read
+     */
+    static Configuration strip(Configuration aConf)
+        throws CheckstyleException
+    {
+        final DefaultConfiguration conf =
+            new DefaultConfiguration(aConf.getName());
+        for (String name : aConf.getAttributeNames()) {
+            if (!ATTRIBUTES.contains(name)) {
+                conf.addAttribute(name, aConf.getAttribute(name));
+            }
+        }
+        for (Configuration child : aConf.getChildren()) {
+            conf.addChild(child);
+        }
+        for (Map.Entry<String, String> message
+            : aConf.getMessages().entrySet())
+        {
+            conf.addMessage(message.getKey(), message.getValue());
+        }
+        return conf;
+    }
+
+    /** @return true if the filter needs the root element of the documents */
+    boolean needsRoot()
+    {
+        return (mRootElements != null) || (mRootNamespaces != null);
+    }
+
+    /**
+     * Tells whether the check applies to a document.
+     * @param aFile the file of the document
+     * @param aRoot the root of the document, null if it could not be read
+     * @return true if the check applies to the document, or if the root is
+     *         needed and unknown
+     */
+    boolean accepts(File aFile, XmlRootSniffer aRoot)
+    {
+        if ((mFiles != null) && !mFiles.matcher(
+            aFile.getAbsolutePath().replace(File.separatorChar, '/'))
+            .matches())
+        {
+            return false;
+        }
+        if (!needsRoot() || (aRoot == null)) {
+            return true;
+        }
+        return ((mRootElements == null)
+                || mRootElements.contains(aRoot.getLocalName()))
+            && ((mRootNamespaces == null)
+                || mRootNamespaces.contains(aRoot.getNamespace()));
+    }
+
+    /**
+     * @param aValue a comma separated list
+     * @return the trimmed values of the list
+     */
+    private static Set<String> split(String aValue)
+    {
+        final Set<String> values = Sets.newHashSet();
+        for (String value : aValue.split(",")) {
+            values.add(value.trim());
+        }
+        return values;
+    }
+
+    /**
+     * @param aGlob a file glob
+     * @return the regular expression of the glob
+     */
+    private static String toRegex(String aGlob)
+    {
+        final StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < aGlob.length(); i++) {
+            final char c = aGlob.charAt(i);
+            if ((c != '*') && (c != '?')) {
+                continue;
+            }
+            if (start < i) {
+                regex.append(Pattern.quote(aGlob.substring(start, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            }
+            else if ((i + 1 < aGlob.length()) && (aGlob.charAt(i + 1) == '*'))
+            {
+                regex.append(".*");
+                i++;
+            }
+            else {
+                regex.append("[^/]*");
+            }
+            start = i + 1;
+        }
+        if (start < aGlob.length()) {
+            regex.append(Pattern.quote(aGlob.substring(start)));
+        }
+        return regex.toString();
+    }
+}
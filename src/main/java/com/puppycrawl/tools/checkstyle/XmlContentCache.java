@@ -0,0 +1,428 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Remembers the files which passed the checks, identified by the hash of
+ * their bytes and of their path rather than by their timestamp.
+ *
+ * The path is taken relative to the working directory, so a file whose
+ * contents are unchanged is skipped on any checkout or machine sharing the
+ * cache file, while the checks on the file name or path are run again on a
+ * moved file. The cache also stores a fingerprint of the checks
+ * configuration and is emptied when it differs, so changing an expression,
+ * a namespace, a bound or a severity invalidates it.
+ *
+ * Only the most recently used entries are kept. The cache file is written
+ * after each audit.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public final class XmlContentCache {
+
+    /** Key of the configuration fingerprint in the cache file. */
+    private static final String CONFIG_HASH_KEY = "configuration__";
+
+    /** Maximum number of files remembered. */
+    static final int MAX_ENTRIES = 100000;
+
+    /** Size of the buffer reading the hashed files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Digits of the hexadecimal hashes. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Logger for debug purpose. */
+    private static final Log LOG =
+        LogFactory.getLog("com.puppycrawl.tools.checkstyle.XmlContentCache");
+
+    /**
+     * Hashes of the files which passed the checks and their length, the
+     * least recently used first.
+     */
+    private final Map<String, Long> mEntries =
+        new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            /** Serialization version. */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> aE)
+            {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    /** The fingerprint of the checks configuration. */
+    private final String mFingerprint;
+
+    /** The cache file, null if the cache is disabled. */
+    private final String mFileName;
+
+    /** Whether the entries changed since the cache file was written. */
+    private boolean mChanged;
+
+    /** Number of files skipped since the cache was created. */
+    private long mSkippedFiles;
+
+    /** Number of bytes not parsed since the cache was created. */
+    private long mSkippedBytes;
+
+    /**
+     * Creates a new cache.
+     * @param aFingerprint the fingerprint of the checks configuration
+     * @param aFileName the cache file, null to disable the cache
+     */
+    public XmlContentCache(String aFingerprint, String aFileName)
+    {
+        mFingerprint = aFingerprint;
+        mFileName = aFileName;
+        if (mFileName == null) {
+            return;
+        }
+
+        final Properties details = new Properties();
+        final File file = new File(mFileName);
+        if (file.exists()) {
+            try {
+                final InputStream in = new FileInputStream(file);
+                try {
+                    details.load(in);
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch (final IOException ex) {
+                LOG.debug("Unable to read cache file " + mFileName, ex);
+                details.clear();
+            }
+        }
+        if (aFingerprint.equals(details.getProperty(CONFIG_HASH_KEY))) {
+            details.remove(CONFIG_HASH_KEY);
+            load(details);
+        }
+        else {
+            mChanged = true;
+        }
+    }
+
+    /**
+     * Loads the entries of the cache file, in the order they were used.
+     * @param aDetails the entries, valued by their length and their rank
+     */
+    private void load(Properties aDetails)
+    {
+        final Map<String, Long> lengths = new LinkedHashMap<String, Long>();
+        final Map<Long, List<String>> byRank =
+            new TreeMap<Long, List<String>>();
+        for (String hash : aDetails.stringPropertyNames()) {
+            final String value = aDetails.getProperty(hash);
+            final int comma = value.indexOf(',');
+            try {
+                lengths.put(hash, Long.valueOf(
+                    (comma < 0) ? value : value.substring(0, comma)));
+                final Long rank = Long.valueOf((comma < 0)
+                    ? "-1" : value.substring(comma + 1));
+                List<String> hashes = byRank.get(rank);
+                if (hashes == null) {
+                    hashes = new ArrayList<String>();
+                    byRank.put(rank, hashes);
+                }
+                hashes.add(hash);
+            }
+            catch (final NumberFormatException ex) {
+                LOG.debug("Ignoring cache entry " + hash, ex);
+                lengths.remove(hash);
+            }
+        }
+        for (List<String> hashes : byRank.values()) {
+            for (String hash : hashes) {
+                mEntries.put(hash, lengths.get(hash));
+            }
+        }
+    }
+
+    /** @return true if the cache is enabled */
+    public boolean isEnabled()
+    {
+        return mFileName != null;
+    }
+
+    /**
+     * Hashes the path and the contents of a file.
+     * @param aFile the file
+     * @return the hash, null if the cache is disabled or the file unreadable
+     */
+    public String hash(File aFile)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(relativePath(aFile).getBytes("UTF-8"));
+            digest.update((byte) 0);
+            final InputStream in = new DigestInputStream(
+                new FileInputStream(aFile), digest);
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0) {
+                    // the stream updates the digest
+                }
+            }
+            finally {
+                in.close();
+            }
+            return toHex(digest.digest());
+        }
+        catch (final IOException ex) {
+            LOG.debug("Unable to hash " + aFile, ex);
+            return null;
+        }
+        catch (final NoSuchAlgorithmException ex) {
+            LOG.debug("Unable to hash " + aFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Gives the path of a file relative to the working directory, or its
+     * absolute path if it lies outside.
+     * @param aFile the file
+     * @return the path, with slash separators
+     */
+    private static String relativePath(File aFile)
+    {
+        final String base = new File("").getAbsolutePath() + File.separator;
+        String path = aFile.getAbsolutePath();
+        if (path.startsWith(base)) {
+            path = path.substring(base.length());
+        }
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Tells whether a file already passed the checks, recording the skip
+     * if so.
+     * @param aHash the hash of the file, may be null
+     * @return true if the file already passed the checks
+     */
+    public boolean alreadyChecked(String aHash)
+    {
+        if (aHash == null) {
+            return false;
+        }
+        final Long length = mEntries.get(aHash);
+        if (length == null) {
+            return false;
+        }
+        mChanged = true;
+        mSkippedFiles++;
+        mSkippedBytes += length;
+        return true;
+    }
+
+    /**
+     * Records that a file passed the checks.
+     * @param aHash the hash of the file, may be null
+     * @param aLength the length in bytes of the file
+     */
+    public void checkedOk(String aHash, long aLength)
+    {
+        if (aHash != null) {
+            mEntries.put(aHash, aLength);
+            mChanged = true;
+        }
+    }
+
+    /** @return the number of files skipped since the cache was created */
+    public long getSkippedFiles()
+    {
+        return mSkippedFiles;
+    }
+
+    /** @return the number of bytes not parsed since the cache was created */
+    public long getSkippedBytes()
+    {
+        return mSkippedBytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return "XmlContentCache[entries=" + mEntries.size()
+            + ", skippedFiles=" + mSkippedFiles
+            + ", skippedBytes=" + mSkippedBytes + "]";
+    }
+
+    /**
+     * Writes the cache file if the entries changed. The file is replaced at
+     * once, so that a process killed while writing it leaves the previous
+     * one.
+     */
+    public void store()
+    {
+        if ((mFileName == null) || !mChanged) {
+            return;
+        }
+        final Properties details = new Properties();
+        details.setProperty(CONFIG_HASH_KEY, mFingerprint);
+        long rank = 0;
+        for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+            details.setProperty(entry.getKey(),
+                entry.getValue() + "," + rank++);
+        }
+        final File file = new File(mFileName);
+        final File temp = new File(mFileName + ".tmp");
+        try {
+            final OutputStream out = new FileOutputStream(temp);
+            try {
+                details.store(out, null);
+            }
+            finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                // some platforms do not replace an existing file
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + temp);
+                }
+            }
+            mChanged = false;
+        }
+        catch (final IOException ex) {
+            LOG.debug("Unable to write cache file " + mFileName, ex);
+        }
+    }
+
+    /**
+     * Writes the cache file.
+     */
+    public void destroy()
+    {
+        store();
+    }
+
+    /**
+     * Computes the fingerprint of a configuration: the names, attributes
+     * and messages of the module and of its children, in a canonical order.
+     * @param aConfiguration the configuration
+     * @param aIgnoredAttributes the attributes of the module itself which
+     *        do not affect the checks
+     * @return the fingerprint
+     */
+    public static String fingerprint(Configuration aConfiguration,
+        String... aIgnoredAttributes)
+    {
+        final StringBuilder buf = new StringBuilder();
+        appendConfiguration(buf, aConfiguration,
+            Arrays.asList(aIgnoredAttributes));
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+            return toHex(digest.digest(buf.toString().getBytes("UTF-8")));
+        }
+        catch (final NoSuchAlgorithmException ex) {
+            // every JVM has MD5, keep the readable form otherwise
+            return buf.toString();
+        }
+        catch (final IOException ex) {
+            return buf.toString();
+        }
+    }
+
+    /**
+     * Appends the canonical form of a configuration.
+     * @param aBuf the buffer to append to
+     * @param aConfiguration the configuration
+     * @param aIgnoredAttributes the attributes left out
+     */
+    private static void appendConfiguration(StringBuilder aBuf,
+        Configuration aConfiguration, List<String> aIgnoredAttributes)
+    {
+        aBuf.append('<').append(aConfiguration.getName());
+        final String[] names = aConfiguration.getAttributeNames().clone();
+        Arrays.sort(names);
+        for (String name : names) {
+            if (aIgnoredAttributes.contains(name)) {
+                continue;
+            }
+            try {
+                aBuf.append(' ').append(name).append('=')
+                    .append(aConfiguration.getAttribute(name));
+            }
+            catch (final CheckstyleException ex) {
+                aBuf.append(' ').append(name);
+            }
+        }
+        final Set<Map.Entry<String, String>> messages =
+            new TreeMap<String, String>(aConfiguration.getMessages())
+                .entrySet();
+        for (Map.Entry<String, String> message : messages) {
+            aBuf.append(" message:").append(message.getKey()).append('=')
+                .append(message.getValue());
+        }
+        aBuf.append('>');
+        for (Configuration child : aConfiguration.getChildren()) {
+            appendConfiguration(aBuf, child,
+                Collections.<String>emptyList());
+        }
+        aBuf.append("</").append(aConfiguration.getName()).append('>');
+    }
+
+    /**
+     * Converts bytes to their hexadecimal form.
+     * @param aBytes the bytes
+     * @return the hexadecimal string
+     */
+    private static String toHex(byte[] aBytes)
+    {
+        final char[] hex = new char[aBytes.length * 2];
+        for (int i = 0; i < aBytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(aBytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[aBytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
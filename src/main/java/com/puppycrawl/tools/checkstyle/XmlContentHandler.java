@@ -22,6 +22,8 @@ package com.puppycrawl.tools.checkstyle;
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
 import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xml.sax.Attributes;
@@ -33,6 +35,23 @@ import org.xml.sax.helpers.LocatorImpl;
 /**
  * XML parser used to build an AST tree of a document.
  * 
+ * The nodes are stored in a compact {@link XmlDocument}, their
+ * {@link DetailAST} views being created on demand. Consecutive character
+ * events are merged into a single text node, and whitespace-only text may
+ * be left out of the tree, the document only counting it. Nothing is
+ * allocated per event besides the kept texts, the names being interned
+ * to the symbol table of the document, and a handler can be reset to reuse
+ * its arrays for the next document.
+ * 
+ * The handler may be restricted to the token types the checks subscribe
+ * to. The document node is always built with its path and name, as the
+ * checks on the file name read them, and the elements are built as
+ * the skeleton of the tree as soon as a type found inside them is
+ * subscribed to. The identifier and attributes of an element, the parts
+ * of a prefix mapping and of a processing instruction are built with
+ * their node. Other nodes, and the text nobody subscribes to, are not
+ * built at all.
+ * 
  * @author Yoann Ciabaud<y.ciabaud@gmail.com>
  */
 public class XmlContentHandler implements ContentHandler {
@@ -40,15 +59,63 @@ public class XmlContentHandler implements ContentHandler {
     /** Stores the location of the parser in the file. */
     private Locator locator;
     
-    /** Root of the AST tree. */
-    private DetailAST root;
+    /** Nodes of the document. */
+    private final XmlDocument document;
     
-    /** Pointer on the last parsed node. */
-    private DetailAST currentNode;
+    /** Pointer on the last opened node. */
+    private int currentNode;
     
     /** Document beeing parsed. */
     private File file;
     
+    /** Whether whitespace-only text is left out of the tree. */
+    private boolean dropWhitespace;
+    
+    /** Automaton evaluated along the parsing, null if none. */
+    private XmlPathAutomaton pathAutomaton;
+    
+    /** Token types built, null for all. */
+    private BitSet builtTypes;
+    
+    /** Whether the elements are built. */
+    private boolean buildElements = true;
+    
+    /** Whether the identifier and attributes of the elements are built. */
+    private boolean buildElementParts = true;
+    
+    /** Whether the prefix mappings are built. */
+    private boolean buildPrefixMappings = true;
+    
+    /** Whether the processing instructions are built. */
+    private boolean buildInstructions = true;
+    
+    /** Whether the skipped entities are built. */
+    private boolean buildEntities = true;
+    
+    /** Initial size of the text run buffer. */
+    private static final int TEXT_CAPACITY = 256;
+    
+    /** Largest text run buffer kept when the handler is reset. */
+    private static final int MAX_RETAINED_TEXT = 1 << 16;
+    
+    /** Characters of the text run not yet added to the tree. */
+    private char[] text = new char[TEXT_CAPACITY];
+    
+    /** Number of characters in the text run. */
+    private int textLength;
+    
+    /** Token type of the text run. */
+    private int textType;
+    
+    /** Line where the text run starts. */
+    private int textLine;
+    
+    /** Column where the text run starts. */
+    private int textColumn;
+    
+    /** Whether the text run only holds whitespace. */
+    private boolean textBlank;
+    
     /** logger for debug purpose. */
     private static final Log LOG =
         LogFactory.getLog("com.puppycrawl.tools.checkstyle.XmlContentHandler");
@@ -57,13 +124,90 @@ public class XmlContentHandler implements ContentHandler {
      * Default constructor. 
      */
     public XmlContentHandler(File file) {
+        this(file, new XmlSymbolTable());
+    }
+
+    /**
+     * Creates a handler interning the names with a shared symbol table.
+     * @param file the document
+     * @param symbols the table of the names
+     */
+    public XmlContentHandler(File file, XmlSymbolTable symbols) {
         super();
         
         locator = new LocatorImpl();
-        root = null;
+        document = new XmlDocument(symbols);
+        currentNode = XmlDocument.NONE;
         this.file = file;
     }
 
+    /**
+     * Prepares the handler to parse another document, reusing the arrays
+     * of the previous one. The nodes of the previous document are lost.
+     * @param file the next document
+     */
+    public void reset(File file) {
+        document.clear();
+        currentNode = XmlDocument.NONE;
+        pathAutomaton = null;
+        textLength = 0;
+        if (text.length > MAX_RETAINED_TEXT) {
+            text = new char[TEXT_CAPACITY];
+        }
+        this.file = file;
+    }
+
+    /**
+     * Sets whether whitespace-only text is left out of the tree.
+     * @param dropWhitespace true to drop whitespace-only text
+     */
+    public void setDropWhitespace(boolean dropWhitespace) {
+        this.dropWhitespace = dropWhitespace;
+    }
+
+    /**
+     * Restricts the tree to the nodes needed by the checks subscribing to
+     * some token types.
+     * @param builtTypes the subscribed token types, null to build every
+     *        node
+     */
+    public void setBuiltTypes(BitSet builtTypes) {
+        this.builtTypes = builtTypes;
+        buildElementParts = isBuilt(XmlTokenTypes.ELEMENT)
+            || isBuilt(XmlTokenTypes.IDENT)
+            || isBuilt(XmlTokenTypes.ATTRIBUTES)
+            || isBuilt(XmlTokenTypes.ATTRIBUTE)
+            || isBuilt(XmlTokenTypes.STRING_LITERAL);
+        buildPrefixMappings = isBuilt(XmlTokenTypes.PREFIX_MAPPING)
+            || isBuilt(XmlTokenTypes.IDENT)
+            || isBuilt(XmlTokenTypes.STRING_LITERAL);
+        buildInstructions = isBuilt(XmlTokenTypes.PROCESSING_INSTRUCTION)
+            || isBuilt(XmlTokenTypes.PROCESSING_TARGET)
+            || isBuilt(XmlTokenTypes.PROCESSING_DATA);
+        buildEntities = isBuilt(XmlTokenTypes.SKIPPED_ENTITY);
+        buildElements = buildElementParts || buildPrefixMappings
+            || buildInstructions || buildEntities
+            || isBuilt(XmlTokenTypes.PCDATA)
+            || isBuilt(XmlTokenTypes.WHITE_SPACE);
+    }
+
+    /**
+     * @param type a token type
+     * @return true if the nodes of the type are subscribed to
+     */
+    private boolean isBuilt(int type) {
+        return (builtTypes == null) || builtTypes.get(type);
+    }
+
+    /**
+     * Sets the automaton evaluating the streamable expressions along the
+     * parsing.
+     * @param pathAutomaton the automaton, null for none
+     */
+    public void setPathAutomaton(XmlPathAutomaton pathAutomaton) {
+        this.pathAutomaton = pathAutomaton;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void setDocumentLocator(Locator value) {
@@ -75,335 +219,285 @@ public class XmlContentHandler implements ContentHandler {
     public void startDocument() throws SAXException {
         LOG.debug("Starting XML parsing");
         
-        // XmlToken
-        XmlToken token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setType(XmlTokenTypes.DOCUMENT);
-        token.setText(file.getName());
-        
+        final int line = locator.getLineNumber();
+        final int col = locator.getColumnNumber();
         
         // Node
-        root = new DetailAST();
-        root.initialize(token);
-        
+        final int root = document.add(XmlDocument.NONE,
+            XmlTokenTypes.DOCUMENT, file.getName(), line, col);
         currentNode = root;
         
         // Path = package
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setType(XmlTokenTypes.PATH);
-        token.setText(file.getParent());
-        DetailAST path = new DetailAST();
-        path.initialize(token);
-        root.addChild(path);
-        DetailAST pathIdent = new DetailAST();
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setType(XmlTokenTypes.IDENT);
-        token.setText(file.getParent());
-        pathIdent.initialize(token);
-        path.addChild(pathIdent);
+        final int path = document.add(root, XmlTokenTypes.PATH,
+            file.getParent(), line, col);
+        document.add(path, XmlTokenTypes.IDENT, file.getParent(), line, col);
         
         // Fake child to match Java grammar structure
-        pathIdent = new DetailAST();
-        pathIdent.initialize(token);
-        path.addChild(pathIdent);
+        document.add(path, XmlTokenTypes.IDENT, file.getParent(), line, col);
         
         // Name = Type
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setType(XmlTokenTypes.IDENT);
-        token.setText(file.getName());
-        DetailAST name = new DetailAST();
-        name.initialize(token);
-        root.addChild(name);
-        DetailAST nameIdent = new DetailAST();
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setType(XmlTokenTypes.IDENT);
-        token.setText(file.getName());
-        nameIdent.initialize(token);
-        name.addChild(nameIdent);
+        final int name = document.add(root, XmlTokenTypes.IDENT,
+            file.getName(), line, col);
+        document.add(name, XmlTokenTypes.IDENT, file.getName(), line, col);
     }
 
     /** {@inheritDoc} */
     public void endDocument() throws SAXException {
+        flushText();
+        if (pathAutomaton != null) {
+            pathAutomaton.endDocument();
+        }
         LOG.debug("Ended parsing");
     }
 
     /** {@inheritDoc} */
     public void startPrefixMapping(String prefix, String URI) throws SAXException {
-        LOG.debug("Prefix mapping : " + URI + ", chosen prefix : " + prefix);
-        
-        // XmlToken
-        XmlToken token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setText(prefix);
-        token.setType(XmlTokenTypes.PREFIX_MAPPING);
+        flushText();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Prefix mapping : " + URI + ", chosen prefix : "
+                + prefix);
+        }
+        if (!buildPrefixMappings) {
+            return;
+        }
         
+        final int line = locator.getLineNumber();
+        final int col = locator.getColumnNumber();
         
         // Node
-        DetailAST child = new DetailAST();
-        child.initialize(token);
+        final int child = document.addName(currentNode,
+            XmlTokenTypes.PREFIX_MAPPING, prefix, line, col);
         
         // Prefix
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setText(prefix);
-        token.setType(XmlTokenTypes.IDENT);
-
-        DetailAST prefixAST = new DetailAST();
-        prefixAST.initialize(token);
-        prefixAST.setText(token.getText());
-        
-        child.addChild(prefixAST);
+        document.addName(child, XmlTokenTypes.IDENT, prefix, line, col);
         
         // URI
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setText(URI);
-        token.setType(XmlTokenTypes.STRING_LITERAL);
-
-        DetailAST uri = new DetailAST();
-        uri.initialize(token);
-        
-        child.addChild(uri);
-        
-        // Parent
-        currentNode.addChild(child);
-        
+        document.addName(child, XmlTokenTypes.STRING_LITERAL, URI, line,
+            col);
     }
 
     /** {@inheritDoc} */
     public void endPrefixMapping(String prefix) throws SAXException {
-        LOG.debug("End of prefix mapping : " + prefix);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("End of prefix mapping : " + prefix);
+        }
     }
 
     /** {@inheritDoc} */
     public void startElement(String nameSpaceURI, String localName,
             String rawName, Attributes attributs) throws SAXException {
-        LOG.debug("Opening element : " + localName);
+        flushText();
+        final boolean debug = LOG.isDebugEnabled();
+        if (debug) {
+            LOG.debug("Opening element : " + localName);
+        }
         
+        final int line = locator.getLineNumber();
         int col = locator.getColumnNumber();
-        
-        // XmlToken
-        XmlToken token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setText(rawName);
-        token.setType(XmlTokenTypes.ELEMENT);
-        
+        if (pathAutomaton != null) {
+            pathAutomaton.startElement(nameSpaceURI, localName, attributs,
+                line, col);
+        }
+        if (!buildElements) {
+            return;
+        }
         
         // Node
-        DetailAST child = new DetailAST();
-        child.initialize(token);
-        
-        
-        // Parent
-        currentNode.addChild(child);
+        final int child = document.addName(currentNode,
+            XmlTokenTypes.ELEMENT, rawName, line, col);
+        document.setNamespace(child, nameSpaceURI);
+        currentNode = child;
+        if (!buildElementParts) {
+            return;
+        }
         
         // Ident
-        DetailAST ident = new DetailAST();
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
         col++;
-        token.setColumn(col);
-        token.setText(localName);
-        token.setType(XmlTokenTypes.IDENT);
-        ident.initialize(token);
-        child.addChild(ident);
+        document.addName(child, XmlTokenTypes.IDENT, localName, line, col);
 
         // Attributes
-        LOG.debug("  Attributes : ");
-        DetailAST attrs = new DetailAST();
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
+        if (debug) {
+            LOG.debug("  Attributes : ");
+        }
         col += rawName.length() + 1;
-        token.setColumn( col );
-        token.setText(rawName);
-        token.setType(XmlTokenTypes.ATTRIBUTES);
-        attrs.initialize(token);
-        child.addChild(attrs);
+        final int attrs = document.addName(child, XmlTokenTypes.ATTRIBUTES,
+            rawName, line, col);
 
         for (int index = 0; index < attributs.getLength(); index++) {
             
+            final String attrName = attributs.getLocalName(index);
+            final String attrValue = attributs.getValue(index);
+            
             // Attribut
-            DetailAST attr = new DetailAST();
-            token = new XmlToken();
-            token.setLine(locator.getLineNumber());
-            token.setColumn( index );
-            token.setText(rawName);
-            token.setType(XmlTokenTypes.ATTRIBUTE);
-            attr.initialize(token);
-            attrs.addChild(attr);
-            LOG.debug("     - " + attributs.getLocalName(index) + " = "
-                    + attributs.getValue(index));
+            final int attr = document.addName(attrs,
+                XmlTokenTypes.ATTRIBUTE, rawName, line, index);
+            document.setNamespace(attr, attributs.getURI(index));
+            if (debug) {
+                LOG.debug("     - " + attrName + " = " + attrValue);
+            }
             
             // Ident
-            ident = new DetailAST();
-            token = new XmlToken();
-            token.setLine(locator.getLineNumber());
-            token.setColumn( index );
-            token.setText(attributs.getLocalName(index));
-            token.setType(XmlTokenTypes.IDENT);
-            ident.initialize(token);
-            attr.addChild(ident);
+            document.addName(attr, XmlTokenTypes.IDENT, attrName, line,
+                index);
             
             // Value
-            DetailAST value  = new DetailAST();
-            token = new XmlToken();
-            token.setLine(locator.getLineNumber());
-            token.setColumn( index + attributs.getLocalName(index).length() + 1 );
-            token.setText(attributs.getValue(index));
-            token.setType(XmlTokenTypes.STRING_LITERAL);
-            value.initialize(token);
-            attr.addChild(value);
+            document.add(attr, XmlTokenTypes.STRING_LITERAL, attrValue,
+                line, index + attrName.length() + 1);
             
             // Go forward
-            col += attributs.getLocalName(index).length()
-                    + attributs.getValue(index).length() + 2;
+            col += attrName.length() + attrValue.length() + 2;
         }
-        
-        // This node is now he current node
-        currentNode = child;
     }
 
     /** {@inheritDoc} */
     public void endElement(String nameSpaceURI, String localName,
             String rawName) throws SAXException {
-        LOG.debug("End of the element : " + localName);
+        flushText();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("End of the element : " + localName);
+        }
+        
+        if (pathAutomaton != null) {
+            pathAutomaton.endElement();
+        }
         
         // Go to the parent
-        currentNode = currentNode.getParent();
+        if (buildElements) {
+            currentNode = document.getParent(currentNode);
+        }
         
     }
 
     /** {@inheritDoc} */
     public void characters(char[] ch, int start, int end) throws SAXException {
         
-        String value = new String(ch, start, end);
-        
-        LOG.debug("#PCDATA : " + value);
-        
-        // XmlToken
-        XmlToken token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber() + start);
-        token.setText(value);
-        token.setType(XmlTokenTypes.PCDATA);
-        
-        
-        // Node
-        DetailAST child = new DetailAST();
-        child.initialize(token);
-        child.setText(token.getText());
-        
-        // Parent
-        currentNode.addChild(child);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("#PCDATA : " + new String(ch, start, end));
+        }
         
+        appendText(XmlTokenTypes.PCDATA, ch, start, end);
     }
 
     /** {@inheritDoc} */
     public void ignorableWhitespace(char[] ch, int start, int end) throws SAXException {
         
-        String value = new String(ch, start, end);
-        
-        LOG.debug("ignorable whitespace : ..." + value + "...");
-        
-        // XmlToken
-        XmlToken token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber() + start);
-        token.setText(value);
-        token.setType(XmlTokenTypes.WHITE_SPACE);
-        
-        
-        // Node
-        DetailAST child = new DetailAST();
-        child.initialize(token);
-        child.setText(token.getText());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("ignorable whitespace : ..." + new String(ch, start, end)
+                + "...");
+        }
         
-        // Parent
-        currentNode.addChild(child);
+        appendText(XmlTokenTypes.WHITE_SPACE, ch, start, end);
+    }
+
+    /**
+     * Adds characters to the current text run, starting a new one if the
+     * type changes.
+     * @param type the token type of the characters
+     * @param ch the characters
+     * @param start the start of the characters
+     * @param length the number of characters
+     */
+    private void appendText(int type, char[] ch, int start, int length) {
+        if ((textLength > 0) && (textType != type)) {
+            flushText();
+        }
+        if (!isBuilt(type)) {
+            return;
+        }
+        if (textLength == 0) {
+            textType = type;
+            textLine = locator.getLineNumber();
+            textColumn = locator.getColumnNumber() + start;
+            textBlank = true;
+        }
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text,
+                Math.max(text.length * 2, textLength + length));
+        }
+        System.arraycopy(ch, start, text, textLength, length);
+        for (int i = textLength; textBlank && (i < textLength + length); i++) {
+            textBlank = isWhitespace(text[i]);
+        }
+        textLength += length;
+    }
+
+    /**
+     * Adds the current text run to the tree, or only counts it if it holds
+     * nothing but whitespace and such text is dropped.
+     */
+    private void flushText() {
+        if (textLength == 0) {
+            return;
+        }
+        if (dropWhitespace && textBlank) {
+            document.countDroppedText();
+        }
+        else {
+            // Node, its text being pooled
+            document.add(currentNode, textType, text, 0, textLength,
+                textLine, textColumn);
+        }
+        textLength = 0;
+    }
+
+    /**
+     * @param c a character
+     * @return true if the character is XML whitespace
+     */
+    private static boolean isWhitespace(char c) {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r');
     }
 
     /** {@inheritDoc} */
     public void processingInstruction(String target, String data) throws SAXException {
-        LOG.debug("Processing instruction : " + target);
-        LOG.debug("  Args : " + data);
-        
-        // XmlToken
-        XmlToken token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setText(target);
-        token.setType(XmlTokenTypes.PROCESSING_INSTRUCTION);
+        flushText();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Processing instruction : " + target);
+            LOG.debug("  Args : " + data);
+        }
+        if (!buildInstructions) {
+            return;
+        }
         
+        final int line = locator.getLineNumber();
+        final int col = locator.getColumnNumber();
         
         // Node
-        DetailAST child = new DetailAST();
-        child.initialize(token);
-        child.setText(token.getText());
+        final int child = document.addName(currentNode,
+            XmlTokenTypes.PROCESSING_INSTRUCTION, target, line, col);
                 
         // Target
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setText(target);
-        token.setType(XmlTokenTypes.PROCESSING_TARGET);
-        
-        DetailAST targetAST = new DetailAST();
-        targetAST.initialize(token);
-        targetAST.setText(token.getText());
-        child.addChild(targetAST);
+        document.addName(child, XmlTokenTypes.PROCESSING_TARGET, target,
+            line, col);
         
         // Data
-        token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber());
-        token.setText(data);
-        token.setType(XmlTokenTypes.PROCESSING_DATA);
-        
-        DetailAST dataAST = new DetailAST();
-        dataAST.initialize(token);
-        dataAST.setText(token.getText());
-        child.addChild(dataAST);
-        
-        
-        // Parent
-        currentNode.addChild(child);
+        document.add(child, XmlTokenTypes.PROCESSING_DATA, data, line, col);
     }
 
     /** {@inheritDoc} */
-    public void skippedEntity(String text) throws SAXException {      
-        
-        // XmlToken
-        XmlToken token = new XmlToken();
-        token.setLine(locator.getLineNumber());
-        token.setColumn(locator.getColumnNumber() );
-        token.setText(text);
-        token.setType(XmlTokenTypes.SKIPPED_ENTITY);
-        
+    public void skippedEntity(String name) throws SAXException {      
+        flushText();
+        if (!buildEntities) {
+            return;
+        }
         
         // Node
-        DetailAST child = new DetailAST();
-        child.initialize(token);
-        child.setText(token.getText());
-         
-        // Parent
-        currentNode.addChild(child);
+        document.addName(currentNode, XmlTokenTypes.SKIPPED_ENTITY, name,
+            locator.getLineNumber(), locator.getColumnNumber());
     }
 
-    /** {@inheritDoc} */
+    /**
+     * @return the nodes of the parsed document
+     */
+    public XmlDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * @return the root of the AST, null if the document is empty
+     */
     public DetailAST getAST() {
-        return root;
+        final int root = document.getRoot();
+        return (root == XmlDocument.NONE) ? null : document.getAST(root);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,521 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import java.util.Arrays;
+
+/**
+ * Compact tree of an XML document.
+ *
+ * The nodes are numbered in document order, the root being node 0, and
+ * their type, links, position and text are held in parallel arrays instead
+ * of one object per node. Character data is copied to a single pool and
+ * only turned into Strings when a text is requested, and the arrays can be
+ * cleared and reused for the next document. Element, attribute and
+ * namespace names are held as ids of a {@link XmlSymbolTable}, which may be
+ * shared by many documents. The
+ * {@link DetailAST} views handed to the checks
+ * are only created when first requested, all at once in a single pass so
+ * that navigating from any view gives the complete tree.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public final class XmlDocument {
+
+    /** Index standing for no node. */
+    public static final int NONE = -1;
+
+    /** Initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Largest number of nodes whose arrays are kept when cleared. */
+    private static final int MAX_RETAINED_NODES = 1 << 16;
+
+    /** Largest character pool kept when cleared. */
+    private static final int MAX_RETAINED_CHARS = 1 << 20;
+
+    /** Number of nodes. */
+    private int mSize;
+
+    /** Token type of each node. */
+    private int[] mType;
+
+    /** Parent of each node. */
+    private int[] mParent;
+
+    /** First child of each node. */
+    private int[] mFirstChild;
+
+    /** Last child of each node, to append in constant time. */
+    private int[] mLastChild;
+
+    /** Next sibling of each node. */
+    private int[] mNextSibling;
+
+    /** Line of each node. */
+    private int[] mLine;
+
+    /** Column of each node. */
+    private int[] mColumn;
+
+    /** Text of each node, null until built for the pooled texts. */
+    private String[] mText;
+
+    /** Symbol of the name held by each node, none for other texts. */
+    private int[] mSymbol;
+
+    /** Symbol of the namespace of each element and attribute. */
+    private int[] mNamespace;
+
+    /** Offset in the character pool of the text of each node. */
+    private int[] mTextOffset;
+
+    /** Length of the pooled text of each node, -1 for String texts. */
+    private int[] mTextLength;
+
+    /** Characters of the pooled texts, one after the other. */
+    private char[] mChars;
+
+    /** Number of characters used in the pool. */
+    private int mCharCount;
+
+    /** Number of whitespace-only texts left out of the tree. */
+    private int mDroppedTexts;
+
+    /** Table of the names. */
+    private final XmlSymbolTable mSymbols;
+
+    /** Views of the nodes, null until requested. */
+    private DetailAST[] mViews;
+
+    /**
+     * Creates an empty document with its own symbol table.
+     */
+    public XmlDocument()
+    {
+        this(new XmlSymbolTable());
+    }
+
+    /**
+     * Creates an empty document.
+     * @param aSymbols the table interning the names of the document
+     */
+    public XmlDocument(XmlSymbolTable aSymbols)
+    {
+        mSymbols = aSymbols;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Removes every node so that the arrays can be reused for another
+     * document. Arrays grown past a bound by a large document are dropped,
+     * which keeps the memory held between documents bounded.
+     */
+    public void clear()
+    {
+        if ((mType.length > MAX_RETAINED_NODES)
+            || (mChars.length > MAX_RETAINED_CHARS))
+        {
+            allocate(INITIAL_CAPACITY);
+        }
+        else {
+            Arrays.fill(mText, 0, mSize, null);
+        }
+        mSize = 0;
+        mCharCount = 0;
+        mDroppedTexts = 0;
+        mViews = null;
+    }
+
+    /**
+     * Appends a node as the last child of another one.
+     * @param aParent the parent node, {@link #NONE} for the root
+     * @param aType the token type
+     * @param aText the text
+     * @param aLine the line
+     * @param aColumn the column
+     * @return the index of the new node
+     */
+    public int add(int aParent, int aType, String aText, int aLine,
+        int aColumn)
+    {
+        final int node = add(aParent, aType, aLine, aColumn);
+        mText[node] = aText;
+        mTextLength[node] = -1;
+        return node;
+    }
+
+    /**
+     * Appends a node whose text is a name, held as an id of the symbol
+     * table.
+     * @param aParent the parent node
+     * @param aType the token type
+     * @param aName the name
+     * @param aLine the line
+     * @param aColumn the column
+     * @return the index of the new node
+     */
+    public int addName(int aParent, int aType, String aName, int aLine,
+        int aColumn)
+    {
+        final int node = add(aParent, aType, aLine, aColumn);
+        mText[node] = null;
+        mTextLength[node] = -1;
+        mSymbol[node] = mSymbols.intern(aName);
+        return node;
+    }
+
+    /**
+     * Sets the namespace of an element or attribute node.
+     * @param aNode the node
+     * @param aNamespaceURI the namespace URI, empty for none
+     */
+    public void setNamespace(int aNode, String aNamespaceURI)
+    {
+        mNamespace[aNode] = ((aNamespaceURI == null)
+            || (aNamespaceURI.length() == 0))
+            ? XmlSymbolTable.NONE : mSymbols.intern(aNamespaceURI);
+    }
+
+    /**
+     * Appends a node whose text is copied to the character pool, its
+     * String being only built when requested.
+     * @param aParent the parent node
+     * @param aType the token type
+     * @param aChars the characters holding the text
+     * @param aStart the start of the text in the characters
+     * @param aLength the length of the text
+     * @param aLine the line
+     * @param aColumn the column
+     * @return the index of the new node
+     */
+    public int add(int aParent, int aType, char[] aChars, int aStart,
+        int aLength, int aLine, int aColumn)
+    {
+        final int node = add(aParent, aType, aLine, aColumn);
+        mText[node] = null;
+        mTextOffset[node] = mCharCount;
+        mTextLength[node] = aLength;
+        appendChars(aChars, aStart, aLength);
+        return node;
+    }
+
+    /**
+     * Appends a node without text.
+     * @param aParent the parent node
+     * @param aType the token type
+     * @param aLine the line
+     * @param aColumn the column
+     * @return the index of the new node
+     */
+    private int add(int aParent, int aType, int aLine, int aColumn)
+    {
+        if (mSize == mType.length) {
+            grow();
+        }
+        final int node = mSize++;
+        mType[node] = aType;
+        mParent[node] = aParent;
+        mFirstChild[node] = NONE;
+        mLastChild[node] = NONE;
+        mNextSibling[node] = NONE;
+        mSymbol[node] = XmlSymbolTable.NONE;
+        mNamespace[node] = XmlSymbolTable.NONE;
+        mLine[node] = aLine;
+        mColumn[node] = aColumn;
+        if (aParent != NONE) {
+            if (mLastChild[aParent] == NONE) {
+                mFirstChild[aParent] = node;
+            }
+            else {
+                mNextSibling[mLastChild[aParent]] = node;
+            }
+            mLastChild[aParent] = node;
+        }
+        mViews = null;
+        return node;
+    }
+
+    /** @return the number of nodes */
+    public int getSize()
+    {
+        return mSize;
+    }
+
+    /** @return the root node, {@link #NONE} if the document is empty */
+    public int getRoot()
+    {
+        return (mSize > 0) ? 0 : NONE;
+    }
+
+    /**
+     * @param aNode the node
+     * @return the token type of the node
+     */
+    public int getType(int aNode)
+    {
+        return mType[aNode];
+    }
+
+    /**
+     * @param aNode the node
+     * @return the parent of the node, {@link #NONE} for the root
+     */
+    public int getParent(int aNode)
+    {
+        return mParent[aNode];
+    }
+
+    /**
+     * @param aNode the node
+     * @return the first child of the node, {@link #NONE} if none
+     */
+    public int getFirstChild(int aNode)
+    {
+        return mFirstChild[aNode];
+    }
+
+    /**
+     * @param aNode the node
+     * @return the next sibling of the node, {@link #NONE} if none
+     */
+    public int getNextSibling(int aNode)
+    {
+        return mNextSibling[aNode];
+    }
+
+    /**
+     * @param aNode the node
+     * @return the line of the node
+     */
+    public int getLine(int aNode)
+    {
+        return mLine[aNode];
+    }
+
+    /**
+     * @param aNode the node
+     * @return the column of the node
+     */
+    public int getColumn(int aNode)
+    {
+        return mColumn[aNode];
+    }
+
+    /**
+     * Returns the text of a node, building its String on the first call
+     * for the pooled texts.
+     * @param aNode the node
+     * @return the text of the node
+     */
+    public String getText(int aNode)
+    {
+        if (mSymbol[aNode] != XmlSymbolTable.NONE) {
+            return mSymbols.getName(mSymbol[aNode]);
+        }
+        if ((mText[aNode] == null) && (mTextLength[aNode] >= 0)) {
+            mText[aNode] = new String(mChars, mTextOffset[aNode],
+                mTextLength[aNode]);
+        }
+        return mText[aNode];
+    }
+
+    /**
+     * @param aNode the node
+     * @return the length of the text of the node, 0 if it has none
+     */
+    public int getTextLength(int aNode)
+    {
+        if (mTextLength[aNode] >= 0) {
+            return mTextLength[aNode];
+        }
+        final String text = getText(aNode);
+        return (text == null) ? 0 : text.length();
+    }
+
+    /**
+     * @param aNode the node
+     * @return the symbol of the name held by the node,
+     *         {@link XmlSymbolTable#NONE} if its text is not a name
+     */
+    public int getSymbol(int aNode)
+    {
+        return mSymbol[aNode];
+    }
+
+    /**
+     * @param aNode the node
+     * @return the symbol of the namespace of the element or attribute node,
+     *         {@link XmlSymbolTable#NONE} if it has none
+     */
+    public int getNamespace(int aNode)
+    {
+        return mNamespace[aNode];
+    }
+
+    /** @return the table of the names of the document */
+    public XmlSymbolTable getSymbols()
+    {
+        return mSymbols;
+    }
+
+    /**
+     * Counts a whitespace-only text left out of the tree.
+     */
+    public void countDroppedText()
+    {
+        mDroppedTexts++;
+    }
+
+    /** @return the number of whitespace-only texts left out of the tree */
+    public int getDroppedTextCount()
+    {
+        return mDroppedTexts;
+    }
+
+    /** @return the number of characters held by the pool */
+    public int getPooledLength()
+    {
+        return mCharCount;
+    }
+
+    /**
+     * Returns the view of a node, creating the views of the whole document
+     * on the first call.
+     * @param aNode the node
+     * @return the view of the node
+     */
+    public DetailAST getAST(int aNode)
+    {
+        if (mViews == null) {
+            createViews();
+        }
+        return mViews[aNode];
+    }
+
+    /** @return true if the views of the nodes have been created */
+    public boolean hasViews()
+    {
+        return mViews != null;
+    }
+
+    /**
+     * Drops the views of the nodes, which are created again if requested.
+     */
+    public void releaseViews()
+    {
+        mViews = null;
+    }
+
+    /**
+     * Creates the views of all the nodes, unless already created, so that
+     * several threads can then read them. The children are linked from the
+     * first one, once their parent is set, which keeps every link update
+     * constant in time.
+     */
+    public void createViews()
+    {
+        if (mViews != null) {
+            return;
+        }
+        final DetailAST[] views = new DetailAST[mSize];
+        final XmlToken token = new XmlToken();
+        for (int node = 0; node < mSize; node++) {
+            token.setType(mType[node]);
+            token.setText(getText(node));
+            token.setLine(mLine[node]);
+            token.setColumn(mColumn[node]);
+            views[node] = new DetailAST();
+            views[node].initialize(token);
+        }
+        for (int node = 0; node < mSize; node++) {
+            int child = mFirstChild[node];
+            if (child == NONE) {
+                continue;
+            }
+            views[node].setFirstChild(views[child]);
+            for (int next = mNextSibling[child]; next != NONE;
+                next = mNextSibling[next])
+            {
+                views[child].setNextSibling(views[next]);
+                child = next;
+            }
+        }
+        mViews = views;
+    }
+
+    /**
+     * Copies characters at the end of the pool.
+     * @param aChars the characters
+     * @param aStart the start of the characters to copy
+     * @param aLength the number of characters to copy
+     */
+    private void appendChars(char[] aChars, int aStart, int aLength)
+    {
+        if (mCharCount + aLength > mChars.length) {
+            mChars = Arrays.copyOf(mChars,
+                Math.max(mChars.length * 2, mCharCount + aLength));
+        }
+        System.arraycopy(aChars, aStart, mChars, mCharCount, aLength);
+        mCharCount += aLength;
+    }
+
+    /**
+     * Replaces the arrays by empty ones.
+     * @param aCapacity the number of nodes the arrays can hold
+     */
+    private void allocate(int aCapacity)
+    {
+        mType = new int[aCapacity];
+        mParent = new int[aCapacity];
+        mFirstChild = new int[aCapacity];
+        mLastChild = new int[aCapacity];
+        mNextSibling = new int[aCapacity];
+        mLine = new int[aCapacity];
+        mColumn = new int[aCapacity];
+        mText = new String[aCapacity];
+        mSymbol = new int[aCapacity];
+        mNamespace = new int[aCapacity];
+        mTextOffset = new int[aCapacity];
+        mTextLength = new int[aCapacity];
+        mChars = new char[aCapacity * 16];
+    }
+
+    /**
+     * Doubles the capacity of the arrays.
+     */
+    private void grow()
+    {
+        final int capacity = mType.length * 2;
+        mType = Arrays.copyOf(mType, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+        mLastChild = Arrays.copyOf(mLastChild, capacity);
+        mNextSibling = Arrays.copyOf(mNextSibling, capacity);
+        mLine = Arrays.copyOf(mLine, capacity);
+        mColumn = Arrays.copyOf(mColumn, capacity);
+        mText = Arrays.copyOf(mText, capacity);
+        mSymbol = Arrays.copyOf(mSymbol, capacity);
+        mNamespace = Arrays.copyOf(mNamespace, capacity);
+        mTextOffset = Arrays.copyOf(mTextOffset, capacity);
+        mTextLength = Arrays.copyOf(mTextLength, capacity);
+    }
+}
@@ -0,0 +1,212 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import java.io.IOException;
+import javax.xml.transform.sax.SAXSource;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.om.DocumentInfo;
+import net.sf.saxon.trans.XPathException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Provides the Saxon tree of the document being walked.
+ *
+ * The tree is built on the first request and the same immutable instance is
+ * handed to every expression check until {@link #release()} is called, so a
+ * file is parsed by Saxon at most once whatever the number of checks.
+ * While the walker checks a shard of a document, the tree is the one of the
+ * shard, and the checks add their counts to the results of the shards.
+ * The services of the workers of a walker otherwise hand out the tree of
+ * the service of the walker, which is built once for all of them.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlTreeWalker
+ */
+public class XmlDocumentService {
+
+    /** Saxon configuration used to build the trees. */
+    private final Configuration mConfiguration;
+
+    /** Contents the current tree was built from. */
+    private FileContents mContents;
+
+    /** Tree of the current document, null until requested. */
+    private DocumentInfo mDocument;
+
+    /** Shard being checked, null if none. */
+    private XmlShard mShard;
+
+    /** Results of the shards of the document, null if none. */
+    private XmlShardResults mShardResults;
+
+    /** Service building the trees of whole documents, null if this one. */
+    private XmlDocumentService mShared;
+
+    /** Whether the external DTDs and entities of the documents are read. */
+    private boolean mExternalEntities = true;
+
+    /**
+     * Creates a new service building its trees with the configuration
+     * shared by the {@link XmlExpressionCache}.
+     */
+    public XmlDocumentService()
+    {
+        this(XmlExpressionCache.getInstance().getConfiguration());
+    }
+
+    /**
+     * Creates a new service.
+     * @param aConfiguration the configuration used to build the trees
+     */
+    public XmlDocumentService(Configuration aConfiguration)
+    {
+        mConfiguration = aConfiguration;
+    }
+
+    /**
+     * Expressions evaluated against the trees of this service must be
+     * compiled with this configuration so that they share its name pool.
+     * @return the Saxon configuration of the service
+     */
+    public Configuration getConfiguration()
+    {
+        return mConfiguration;
+    }
+
+    /**
+     * Sets whether the trees are built reading the external DTDs and
+     * entities of the documents.
+     * @param aExternalEntities true to read the external DTDs and entities
+     */
+    public void setExternalEntities(boolean aExternalEntities)
+    {
+        mExternalEntities = aExternalEntities;
+    }
+
+    /**
+     * Makes this service hand out the trees of whole documents built by
+     * another service, which is then shared between threads.
+     * @param aShared the service building the trees
+     */
+    void setShared(XmlDocumentService aShared)
+    {
+        mShared = aShared;
+    }
+
+    /**
+     * Returns the tree of a document, building it if needed.
+     * @param aContents the contents of the document
+     * @return the root of the Saxon tree
+     * @throws XPathException if the document cannot be built
+     */
+    public synchronized DocumentInfo getDocument(FileContents aContents)
+        throws XPathException
+    {
+        if ((mShard == null) && (mShared != null)) {
+            return mShared.getDocument(aContents);
+        }
+        if ((mDocument == null) || (mContents != aContents)) {
+            InputSource source = null;
+            XMLReader reader = null;
+            try {
+                reader = XmlReaderPool.acquire(mExternalEntities);
+                if (mShard != null) {
+                    source = mShard.createSource(aContents.getText().getFile());
+                    mDocument = mConfiguration.buildDocument(
+                        new SAXSource(mShard.createFilter(reader), source));
+                }
+                else {
+                    source = XmlFileSource.open(aContents.getText());
+                    mDocument = mConfiguration.buildDocument(
+                        new SAXSource(reader, source));
+                }
+                mContents = aContents;
+            }
+            catch (final IOException ex) {
+                throw new XPathException(ex);
+            }
+            catch (final SAXException ex) {
+                throw new XPathException(ex);
+            }
+            finally {
+                XmlReaderPool.release(reader);
+                XmlFileSource.close(source);
+            }
+        }
+        return mDocument;
+    }
+
+    /**
+     * Starts checking a shard of a document, the trees being built from
+     * the shard until {@link #endShard()} is called.
+     * @param aShard the shard
+     * @param aResults the results of the shards of the document
+     */
+    void beginShard(XmlShard aShard, XmlShardResults aResults)
+    {
+        release();
+        mShard = aShard;
+        mShardResults = aResults;
+    }
+
+    /**
+     * Ends checking a shard.
+     */
+    void endShard()
+    {
+        release();
+        mShard = null;
+        mShardResults = null;
+    }
+
+    /**
+     * @return the results of the shards of the document while a shard is
+     *         checked, null otherwise
+     */
+    public XmlShardResults getShardResults()
+    {
+        return mShardResults;
+    }
+
+    /**
+     * Tells whether a node of the tree belongs to the shard being checked
+     * rather than to the copies of the ancestors of its records.
+     * @param aLine the line of the node
+     * @param aColumn the column following the start tag of the node
+     * @return true unless the node is a copy of an ancestor
+     */
+    public boolean isInShard(int aLine, int aColumn)
+    {
+        return (mShard == null) || mShard.contains(aLine, aColumn);
+    }
+
+    /**
+     * Drops the current tree.
+     */
+    public synchronized void release()
+    {
+        mContents = null;
+        mDocument = null;
+    }
+}
@@ -0,0 +1,241 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.query.StaticQueryContext;
+import net.sf.saxon.query.XQueryExpression;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.xpath.XPathFactoryImpl;
+
+/**
+ * Process wide cache of compiled XPath and XQuery expressions.
+ *
+ * All the expressions are compiled with a single Saxon configuration, so
+ * identical rules declared in several modules or several walkers are
+ * compiled once and share the same name pool. The cache is bounded, the
+ * least recently used expressions being evicted first.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public final class XmlExpressionCache {
+
+    /** Default number of expressions kept in the cache. */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /** The process wide instance. */
+    private static final XmlExpressionCache INSTANCE =
+        new XmlExpressionCache(DEFAULT_CAPACITY);
+
+    /** Saxon configuration shared by expressions and documents. */
+    private final Configuration mConfiguration;
+
+    /** Compiled expressions, in access order. */
+    private final Map<String, Object> mExpressions;
+
+    /** Number of lookups answered by the cache. */
+    private long mHits;
+
+    /** Number of lookups that needed a compilation. */
+    private long mMisses;
+
+    /**
+     * Creates a new cache.
+     * @param aCapacity the maximum number of expressions kept
+     */
+    XmlExpressionCache(final int aCapacity)
+    {
+        mConfiguration = new Configuration();
+        mConfiguration.setLineNumbering(true);
+        mExpressions = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> aE)
+            {
+                return size() > aCapacity;
+            }
+        };
+    }
+
+    /** @return the process wide cache */
+    public static XmlExpressionCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /** @return the Saxon configuration shared by all the expressions */
+    public Configuration getConfiguration()
+    {
+        return mConfiguration;
+    }
+
+    /**
+     * Returns a compiled XPath expression.
+     * @param aExpression the XPath expression
+     * @param aNamespaces prefix to namespace URI bindings, may be null
+     * @return the compiled expression
+     * @throws XPathExpressionException if the expression is invalid
+     */
+    public synchronized XPathExpression getXPath(String aExpression,
+        Map<String, String> aNamespaces) throws XPathExpressionException
+    {
+        final String key = createKey("xpath", aExpression, aNamespaces);
+        XPathExpression compiled = (XPathExpression) mExpressions.get(key);
+        if (compiled != null) {
+            mHits++;
+            return compiled;
+        }
+        mMisses++;
+
+        final XPath xpath = new XPathFactoryImpl(mConfiguration).newXPath();
+        if (aNamespaces != null) {
+            xpath.setNamespaceContext(new MapNamespaceContext(
+                new TreeMap<String, String>(aNamespaces)));
+        }
+        compiled = xpath.compile(aExpression);
+        mExpressions.put(key, compiled);
+        return compiled;
+    }
+
+    /**
+     * Returns a compiled XQuery expression.
+     * @param aExpression the XQuery expression
+     * @param aNamespaces prefix to namespace URI bindings, may be null
+     * @return the compiled expression
+     * @throws XPathException if the expression is invalid
+     */
+    public synchronized XQueryExpression getXQuery(String aExpression,
+        Map<String, String> aNamespaces) throws XPathException
+    {
+        final String key = createKey("xquery", aExpression, aNamespaces);
+        XQueryExpression compiled = (XQueryExpression) mExpressions.get(key);
+        if (compiled != null) {
+            mHits++;
+            return compiled;
+        }
+        mMisses++;
+
+        final StaticQueryContext sqc = new StaticQueryContext(mConfiguration);
+        if (aNamespaces != null) {
+            for (Map.Entry<String, String> ns : aNamespaces.entrySet()) {
+                sqc.declareNamespace(ns.getKey(), ns.getValue());
+            }
+        }
+        compiled = sqc.compileQuery(aExpression);
+        mExpressions.put(key, compiled);
+        return compiled;
+    }
+
+    /** @return the number of lookups answered by the cache */
+    public synchronized long getHits()
+    {
+        return mHits;
+    }
+
+    /** @return the number of lookups that needed a compilation */
+    public synchronized long getMisses()
+    {
+        return mMisses;
+    }
+
+    /** @return the number of expressions currently cached */
+    public synchronized int size()
+    {
+        return mExpressions.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString()
+    {
+        return "XmlExpressionCache[size=" + mExpressions.size()
+            + ", hits=" + mHits + ", misses=" + mMisses + "]";
+    }
+
+    /**
+     * Builds the key of an expression, the namespaces being sorted so that
+     * the declaration order does not matter.
+     * @param aLanguage the expression language
+     * @param aExpression the expression
+     * @param aNamespaces prefix to namespace URI bindings, may be null
+     * @return the cache key
+     */
+    private static String createKey(String aLanguage, String aExpression,
+        Map<String, String> aNamespaces)
+    {
+        final StringBuilder key = new StringBuilder(aLanguage).append('\n');
+        if (aNamespaces != null) {
+            for (Map.Entry<String, String> ns
+                : new TreeMap<String, String>(aNamespaces).entrySet())
+            {
+                key.append(ns.getKey()).append('=').append(ns.getValue())
+                    .append('\n');
+            }
+        }
+        return key.append('\n').append(aExpression).toString();
+    }
+
+    /**
+     * Namespace context resolving prefixes from a map.
+     */
+    private static final class MapNamespaceContext
+        implements NamespaceContext
+    {
+        /** Prefix to namespace URI bindings. */
+        private final Map<String, String> mNamespaces;
+
+        /**
+         * Creates a new context.
+         * @param aNamespaces prefix to namespace URI bindings
+         */
+        MapNamespaceContext(Map<String, String> aNamespaces)
+        {
+            mNamespaces = aNamespaces;
+        }
+
+        /** {@inheritDoc} */
+        public String getNamespaceURI(String aPrefix)
+        {
+            return mNamespaces.get(aPrefix);
+        }
+
+        /** {@inheritDoc} */
+        public String getPrefix(String aNamespaceURI)
+        {
+            return null; //not used
+        }
+
+        /** {@inheritDoc} */
+        public Iterator<String> getPrefixes(String aNamespaceURI)
+        {
+            return Collections.<String>emptyList().iterator();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xml.sax.InputSource;
+
+/**
+ * Creates the parser inputs of the checked files.
+ *
+ * The parser reads the bytes of the file, so the encoding declared by the
+ * document is honored and no copy of the whole text is made. Small files
+ * are read in a single call, larger ones are streamed through a buffer,
+ * whatever their size.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public final class XmlFileSource {
+
+    /** Size from which the files are streamed rather than read at once. */
+    static final long STREAMING_THRESHOLD = 1024 * 1024;
+
+    /** Size of the buffer of the streamed files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Logger for debug purpose. */
+    private static final Log LOG =
+        LogFactory.getLog("com.puppycrawl.tools.checkstyle.XmlFileSource");
+
+    /** Prevent instantiation. */
+    private XmlFileSource()
+    {
+    }
+
+    /**
+     * Opens the parser input of a file.
+     * @param aFile the file to read
+     * @return the input, to be closed by the caller
+     * @throws IOException if the file cannot be read
+     */
+    public static InputSource open(File aFile) throws IOException
+    {
+        final InputSource source = new InputSource(openStream(aFile));
+        source.setSystemId(aFile.toURI().toString());
+        return source;
+    }
+
+    /**
+     * Opens the parser input of a text, reading the bytes of its file when
+     * it exists and falling back to the text otherwise.
+     * @param aText the text to parse
+     * @return the input, to be closed by the caller
+     * @throws IOException if the file cannot be read
+     */
+    public static InputSource open(FileText aText) throws IOException
+    {
+        final File file = aText.getFile();
+        if ((file != null) && file.isFile()) {
+            return open(file);
+        }
+        final InputSource source = new InputSource(
+            new StringReader(aText.getFullText().toString()));
+        if (file != null) {
+            source.setSystemId(file.toURI().toString());
+        }
+        return source;
+    }
+
+    /**
+     * Closes the streams of a parser input.
+     * @param aSource the input to close, may be null
+     */
+    public static void close(InputSource aSource)
+    {
+        if (aSource == null) {
+            return;
+        }
+        try {
+            if (aSource.getByteStream() != null) {
+                aSource.getByteStream().close();
+            }
+            if (aSource.getCharacterStream() != null) {
+                aSource.getCharacterStream().close();
+            }
+        }
+        catch (final IOException ex) {
+            LOG.debug("Unable to close " + aSource.getSystemId(), ex);
+        }
+    }
+
+    /**
+     * Opens the bytes of a file, reading a small file at once and
+     * streaming a larger one.
+     * @param aFile the file to read
+     * @return the bytes of the file, to be closed by the caller
+     * @throws IOException if the file cannot be read
+     */
+    static InputStream openStream(File aFile) throws IOException
+    {
+        if (aFile.length() < STREAMING_THRESHOLD) {
+            return new ByteBufferInputStream(read(aFile));
+        }
+        return new BufferedInputStream(
+            new FileInputStream(aFile), BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the bytes of a small file.
+     * @param aFile the file to read
+     * @return the bytes of the file
+     * @throws IOException if the file cannot be read or is too large
+     */
+    private static ByteBuffer read(File aFile) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(aFile, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(aFile + " is too large to be read"
+                    + " at once");
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Input stream reading a byte buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        /** The bytes to read. */
+        private ByteBuffer mBuffer;
+
+        /**
+         * Creates a new stream.
+         * @param aBuffer the bytes to read
+         */
+        ByteBufferInputStream(ByteBuffer aBuffer)
+        {
+            mBuffer = aBuffer;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read() throws IOException
+        {
+            if ((mBuffer == null) || !mBuffer.hasRemaining()) {
+                return -1;
+            }
+            return mBuffer.get() & 0xFF;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read(byte[] aBytes, int aOffset, int aLength)
+            throws IOException
+        {
+            if ((mBuffer == null) || !mBuffer.hasRemaining()) {
+                return -1;
+            }
+            final int length = Math.min(aLength, mBuffer.remaining());
+            mBuffer.get(aBytes, aOffset, length);
+            return length;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int available() throws IOException
+        {
+            return (mBuffer == null) ? 0 : mBuffer.remaining();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException
+        {
+            mBuffer = null;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.xml.sax.Attributes;
+
+/**
+ * Evaluates many {@link XmlPathPattern}s in a single pass over the parser
+ * events.
+ *
+ * The patterns of all the expression checks of a walker are gathered in
+ * one automaton, identical patterns being evaluated once. For each open
+ * element and each pattern, the automaton keeps as bits of a long the
+ * steps matched by the element and by its ancestors, so every event costs
+ * a few bit operations per pattern. The matches are counted in document
+ * order, their location being only kept in the range of indexes requested
+ * by the checks.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlContentHandler
+ */
+public final class XmlPathAutomaton {
+
+    /** Initial depth of the element stack. */
+    private static final int INITIAL_DEPTH = 32;
+
+    /** The patterns. */
+    private final List<XmlPathPattern> mPatterns = Lists.newArrayList();
+
+    /** Index of the patterns, by canonical form. */
+    private final Map<String, Integer> mIndexes =
+        new HashMap<String, Integer>();
+
+    /** Index of the first match located, for each pattern. */
+    private int[] mLocatedFrom = new int[0];
+
+    /** Index following the last match located, for each pattern. */
+    private int[] mLocatedTo = new int[0];
+
+    /** Steps matched by each open element, by depth and pattern. */
+    private long[][] mMatched = new long[INITIAL_DEPTH][0];
+
+    /** Steps matched by each open element or its ancestors. */
+    private long[][] mReached = new long[INITIAL_DEPTH][0];
+
+    /** Depth of the current element, the document node being at 0. */
+    private int mDepth;
+
+    /** Number of matches of each pattern. */
+    private int[] mCounts = new int[0];
+
+    /** Line of the located matches of each pattern. */
+    private int[][] mLines = new int[0][];
+
+    /** Column of the located matches of each pattern. */
+    private int[][] mColumns = new int[0][];
+
+    /** Document the matches belong to. */
+    private Object mDocument;
+
+    /** Whether the whole document has been evaluated. */
+    private boolean mComplete;
+
+    /**
+     * Adds a pattern, or finds the identical one already added.
+     * @param aPattern the pattern
+     * @param aLocatedFrom index of the first match whose location is needed
+     * @return the index of the pattern
+     */
+    public int add(XmlPathPattern aPattern, int aLocatedFrom)
+    {
+        return add(aPattern, aLocatedFrom, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds a pattern, or finds the identical one already added, only a
+     * range of its matches being located.
+     * @param aPattern the pattern
+     * @param aLocatedFrom index of the first match whose location is needed
+     * @param aLocatedTo index following the last match whose location is
+     *        needed
+     * @return the index of the pattern
+     */
+    public int add(XmlPathPattern aPattern, int aLocatedFrom, int aLocatedTo)
+    {
+        final Integer known = mIndexes.get(aPattern.toString());
+        if (known != null) {
+            final int index = known.intValue();
+            mLocatedFrom[index] = Math.min(mLocatedFrom[index],
+                Math.max(0, aLocatedFrom));
+            mLocatedTo[index] = Math.max(mLocatedTo[index], aLocatedTo);
+            return index;
+        }
+        final int index = mPatterns.size();
+        mPatterns.add(aPattern);
+        mIndexes.put(aPattern.toString(), Integer.valueOf(index));
+        mLocatedFrom = Arrays.copyOf(mLocatedFrom, index + 1);
+        mLocatedFrom[index] = Math.max(0, aLocatedFrom);
+        mLocatedTo = Arrays.copyOf(mLocatedTo, index + 1);
+        mLocatedTo[index] = aLocatedTo;
+        mCounts = new int[index + 1];
+        mLines = Arrays.copyOf(mLines, index + 1);
+        mLines[index] = new int[0];
+        mColumns = Arrays.copyOf(mColumns, index + 1);
+        mColumns[index] = new int[0];
+        mMatched = new long[INITIAL_DEPTH][index + 1];
+        mReached = new long[INITIAL_DEPTH][index + 1];
+        mDocument = null;
+        return index;
+    }
+
+    /** @return the number of patterns */
+    public int getSize()
+    {
+        return mPatterns.size();
+    }
+
+    /**
+     * Starts the evaluation of a document.
+     * @param aDocument the document the matches will belong to
+     */
+    public void beginDocument(Object aDocument)
+    {
+        mDocument = aDocument;
+        mComplete = false;
+        mDepth = 0;
+        Arrays.fill(mCounts, 0);
+        // the document node matches the empty path
+        Arrays.fill(mMatched[0], 1L);
+        Arrays.fill(mReached[0], 1L);
+    }
+
+    /**
+     * Evaluates the start of an element.
+     * @param aNamespaceURI the namespace of the element, empty if none
+     * @param aLocalName the local name of the element
+     * @param aAttributes the attributes of the element
+     * @param aLine the line reported by the parser
+     * @param aColumn the column reported by the parser
+     */
+    public void startElement(String aNamespaceURI, String aLocalName,
+        Attributes aAttributes, int aLine, int aColumn)
+    {
+        final int parent = mDepth++;
+        if (mDepth == mMatched.length) {
+            growStack();
+        }
+        for (int index = 0; index < mPatterns.size(); index++) {
+            final XmlPathPattern pattern = mPatterns.get(index);
+            final int steps = pattern.getElementSteps();
+            final long matchedByParent = mMatched[parent][index];
+            final long reachedByParent = mReached[parent][index];
+            long matched = 0;
+            for (int step = 0; step < steps; step++) {
+                final long bit = 1L << step;
+                final long enabled = pattern.isDescendant(step)
+                    ? reachedByParent : matchedByParent;
+                if (((enabled & bit) != 0) && pattern.matchesElement(step,
+                    aNamespaceURI, aLocalName, aAttributes))
+                {
+                    matched |= bit << 1;
+                }
+            }
+            final long reached = reachedByParent | matched;
+            mMatched[mDepth][index] = matched;
+            mReached[mDepth][index] = reached;
+
+            final long last = 1L << steps;
+            if (!pattern.isAttribute()) {
+                if ((matched & last) != 0) {
+                    addMatch(index, aLine, aColumn);
+                }
+            }
+            else if (((pattern.isDescendant(steps) ? reached : matched)
+                & last) != 0)
+            {
+                for (int i = 0; i < aAttributes.getLength(); i++) {
+                    if (pattern.matchesAttribute(aAttributes.getURI(i),
+                        aAttributes.getLocalName(i)))
+                    {
+                        // attributes are located at their element
+                        addMatch(index, aLine, aColumn);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the end of an element.
+     */
+    public void endElement()
+    {
+        mDepth--;
+    }
+
+    /**
+     * Marks the evaluation of the document as complete.
+     */
+    public void endDocument()
+    {
+        mComplete = true;
+    }
+
+    /**
+     * @param aDocument a document
+     * @return true if the matches of the document have been evaluated
+     */
+    public boolean hasResults(Object aDocument)
+    {
+        return mComplete && (aDocument != null) && (aDocument == mDocument);
+    }
+
+    /**
+     * @param aPattern the index of a pattern
+     * @return the number of nodes selected by the pattern
+     */
+    public int getMatchCount(int aPattern)
+    {
+        return mCounts[aPattern];
+    }
+
+    /**
+     * @param aPattern the index of a pattern
+     * @param aMatch the index of a located match
+     * @return the line of the match
+     */
+    public int getMatchLine(int aPattern, int aMatch)
+    {
+        return mLines[aPattern][aMatch - mLocatedFrom[aPattern]];
+    }
+
+    /**
+     * @param aPattern the index of a pattern
+     * @param aMatch the index of a located match
+     * @return the column of the match, as reported by the parser
+     */
+    public int getMatchColumn(int aPattern, int aMatch)
+    {
+        return mColumns[aPattern][aMatch - mLocatedFrom[aPattern]];
+    }
+
+    /**
+     * Counts a match, keeping its location if needed.
+     * @param aPattern the index of the pattern
+     * @param aLine the line of the match
+     * @param aColumn the column of the match
+     */
+    private void addMatch(int aPattern, int aLine, int aColumn)
+    {
+        final int match = mCounts[aPattern]++;
+        final int located = match - mLocatedFrom[aPattern];
+        if ((located < 0) || (match >= mLocatedTo[aPattern])) {
+            return;
+        }
+        if (located == mLines[aPattern].length) {
+            final int capacity = Math.max(16, located * 2);
+            mLines[aPattern] = Arrays.copyOf(mLines[aPattern], capacity);
+            mColumns[aPattern] = Arrays.copyOf(mColumns[aPattern], capacity);
+        }
+        mLines[aPattern][located] = aLine;
+        mColumns[aPattern][located] = aColumn;
+    }
+
+    /**
+     * Doubles the depth of the element stack.
+     */
+    private void growStack()
+    {
+        final int depth = mMatched.length * 2;
+        final int patterns = mPatterns.size();
+        mMatched = Arrays.copyOf(mMatched, depth);
+        mReached = Arrays.copyOf(mReached, depth);
+        for (int i = depth / 2; i < depth; i++) {
+            mMatched[i] = new long[patterns];
+            mReached[i] = new long[patterns];
+        }
+    }
+}
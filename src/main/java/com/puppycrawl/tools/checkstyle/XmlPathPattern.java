@@ -0,0 +1,360 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.xml.sax.Attributes;
+
+/**
+ * XPath expression of the subset which can be evaluated while parsing.
+ *
+ * The subset is made of location paths of child (<code>/</code>) and
+ * descendant (<code>//</code>) steps testing element names, each step
+ * possibly requiring attributes (<code>[@name]</code>), the last step
+ * possibly selecting attributes (<code>/@name</code>). Names may be
+ * prefixed by a bound prefix, or replaced by <code>*</code>. A relative
+ * path is evaluated from the document node. Any other expression is left
+ * to Saxon.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlPathAutomaton
+ */
+public final class XmlPathPattern {
+
+    /** Maximum number of steps, one bit of a long being used per step. */
+    private static final int MAX_STEPS = 63;
+
+    /** Whether each step uses the descendant axis. */
+    private final boolean[] mDescendant;
+
+    /** Namespace tested by each step, null for any. */
+    private final String[] mNamespace;
+
+    /** Local name tested by each step, null for any. */
+    private final String[] mLocalName;
+
+    /** Attributes required by each step, namespace and local name pairs. */
+    private final String[][] mRequired;
+
+    /** Whether the last step selects attributes. */
+    private final boolean mAttribute;
+
+    /** Canonical form, namespaces being resolved. */
+    private final String mKey;
+
+    /**
+     * Creates a pattern from its parsed steps.
+     * @param aSteps the steps
+     * @param aAttribute whether the last step selects attributes
+     */
+    private XmlPathPattern(List<Step> aSteps, boolean aAttribute)
+    {
+        final int size = aSteps.size();
+        mDescendant = new boolean[size];
+        mNamespace = new String[size];
+        mLocalName = new String[size];
+        mRequired = new String[size][];
+        mAttribute = aAttribute;
+        final StringBuilder key = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            final Step step = aSteps.get(i);
+            mDescendant[i] = step.mDescendant;
+            mNamespace[i] = step.mName[0];
+            mLocalName[i] = step.mName[1];
+            mRequired[i] = step.mRequired.toArray(
+                new String[step.mRequired.size()]);
+            key.append(step.mDescendant ? "//" : "/");
+            if (aAttribute && (i == size - 1)) {
+                key.append('@');
+            }
+            appendName(key, step.mName[0], step.mName[1]);
+            for (int j = 0; j < mRequired[i].length; j += 2) {
+                key.append("[@");
+                appendName(key, mRequired[i][j], mRequired[i][j + 1]);
+                key.append(']');
+            }
+        }
+        mKey = key.toString();
+    }
+
+    /**
+     * Compiles an expression if it belongs to the streamable subset.
+     * @param aExpression the XPath expression
+     * @param aNamespaces prefix to namespace URI bindings, may be null
+     * @return the pattern, null if the expression must be left to Saxon
+     */
+    public static XmlPathPattern compile(String aExpression,
+        Map<String, String> aNamespaces)
+    {
+        if (aExpression == null) {
+            return null;
+        }
+        final String expression = aExpression.trim();
+        final List<Step> steps = new ArrayList<Step>();
+        final int[] pos = new int[1];
+        boolean attribute = false;
+        while (pos[0] < expression.length()) {
+            if (attribute || (steps.size() == MAX_STEPS)) {
+                return null;
+            }
+            final Step step = new Step();
+            if (expression.startsWith("//", pos[0])) {
+                step.mDescendant = true;
+                pos[0] += 2;
+            }
+            else if (expression.charAt(pos[0]) == '/') {
+                pos[0]++;
+            }
+            else if (!steps.isEmpty()) {
+                return null;
+            }
+            if ((pos[0] < expression.length())
+                && (expression.charAt(pos[0]) == '@'))
+            {
+                if (steps.isEmpty() && !step.mDescendant) {
+                    return null;
+                }
+                pos[0]++;
+                attribute = true;
+            }
+            step.mName = parseName(expression, pos, aNamespaces);
+            if (step.mName == null) {
+                return null;
+            }
+            while (!attribute && (pos[0] < expression.length())
+                && (expression.charAt(pos[0]) == '['))
+            {
+                if (!expression.startsWith("[@", pos[0])) {
+                    return null;
+                }
+                pos[0] += 2;
+                final String[] required =
+                    parseName(expression, pos, aNamespaces);
+                if ((required == null) || (pos[0] >= expression.length())
+                    || (expression.charAt(pos[0]) != ']'))
+                {
+                    return null;
+                }
+                pos[0]++;
+                step.mRequired.add(required[0]);
+                step.mRequired.add(required[1]);
+            }
+            steps.add(step);
+        }
+        return steps.isEmpty() ? null : new XmlPathPattern(steps, attribute);
+    }
+
+    /**
+     * Parses a name test, <code>*</code> or a possibly prefixed name whose
+     * local part may be <code>*</code>.
+     * @param aExpression the expression
+     * @param aPos the position in the expression, moved past the name test
+     * @param aNamespaces prefix to namespace URI bindings, may be null
+     * @return the namespace and local name, each null for any, or null if
+     *         no name test could be parsed
+     */
+    private static String[] parseName(String aExpression, int[] aPos,
+        Map<String, String> aNamespaces)
+    {
+        if (aExpression.startsWith("*", aPos[0])) {
+            aPos[0]++;
+            return new String[] {null, null};
+        }
+        final String first = parseNCName(aExpression, aPos);
+        if (first == null) {
+            return null;
+        }
+        if (!aExpression.startsWith(":", aPos[0])) {
+            // unprefixed names are in no namespace
+            return new String[] {"", first};
+        }
+        aPos[0]++;
+        final String namespace =
+            (aNamespaces == null) ? null : aNamespaces.get(first);
+        if (namespace == null) {
+            return null;
+        }
+        if (aExpression.startsWith("*", aPos[0])) {
+            aPos[0]++;
+            return new String[] {namespace, null};
+        }
+        final String local = parseNCName(aExpression, aPos);
+        return (local == null) ? null : new String[] {namespace, local};
+    }
+
+    /**
+     * Parses a name without colon.
+     * @param aExpression the expression
+     * @param aPos the position in the expression, moved past the name
+     * @return the name, null if none starts at the position
+     */
+    private static String parseNCName(String aExpression, int[] aPos)
+    {
+        final int start = aPos[0];
+        int end = start;
+        while (end < aExpression.length()) {
+            final char c = aExpression.charAt(end);
+            final boolean valid = Character.isLetter(c) || (c == '_')
+                || ((end > start) && (Character.isDigit(c) || (c == '-')
+                    || (c == '.')));
+            if (!valid) {
+                break;
+            }
+            end++;
+        }
+        if (end == start) {
+            return null;
+        }
+        aPos[0] = end;
+        return aExpression.substring(start, end);
+    }
+
+    /**
+     * Appends a name test to the canonical form.
+     * @param aBuf the canonical form being built
+     * @param aNamespace the namespace, null for any
+     * @param aLocalName the local name, null for any
+     */
+    private static void appendName(StringBuilder aBuf, String aNamespace,
+        String aLocalName)
+    {
+        if (aNamespace != null) {
+            aBuf.append('{').append(aNamespace).append('}');
+        }
+        aBuf.append((aLocalName == null) ? "*" : aLocalName);
+    }
+
+    /** @return the number of steps testing elements */
+    int getElementSteps()
+    {
+        return mAttribute ? mDescendant.length - 1 : mDescendant.length;
+    }
+
+    /** @return true if the last step selects attributes */
+    boolean isAttribute()
+    {
+        return mAttribute;
+    }
+
+    /**
+     * @param aStep the index of a step
+     * @return true if the step uses the descendant axis
+     */
+    boolean isDescendant(int aStep)
+    {
+        return mDescendant[aStep];
+    }
+
+    /**
+     * Tests an element against a step.
+     * @param aStep the index of the step
+     * @param aNamespaceURI the namespace of the element, empty if none
+     * @param aLocalName the local name of the element
+     * @param aAttributes the attributes of the element
+     * @return true if the element matches the step
+     */
+    boolean matchesElement(int aStep, String aNamespaceURI,
+        String aLocalName, Attributes aAttributes)
+    {
+        if (!matchesName(mNamespace[aStep], mLocalName[aStep],
+            aNamespaceURI, aLocalName))
+        {
+            return false;
+        }
+        final String[] required = mRequired[aStep];
+        for (int i = 0; i < required.length; i += 2) {
+            if (!hasAttribute(aAttributes, required[i], required[i + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests an attribute against the last step.
+     * @param aNamespaceURI the namespace of the attribute, empty if none
+     * @param aLocalName the local name of the attribute
+     * @return true if the attribute is selected by the last step
+     */
+    boolean matchesAttribute(String aNamespaceURI, String aLocalName)
+    {
+        final int last = mDescendant.length - 1;
+        return matchesName(mNamespace[last], mLocalName[last],
+            aNamespaceURI, aLocalName);
+    }
+
+    /**
+     * @param aAttributes the attributes of an element
+     * @param aNamespace the namespace tested, null for any
+     * @param aLocalName the local name tested, null for any
+     * @return true if one of the attributes matches the name test
+     */
+    private static boolean hasAttribute(Attributes aAttributes,
+        String aNamespace, String aLocalName)
+    {
+        for (int i = 0; i < aAttributes.getLength(); i++) {
+            if (matchesName(aNamespace, aLocalName, aAttributes.getURI(i),
+                aAttributes.getLocalName(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param aNamespace the namespace tested, null for any
+     * @param aLocalName the local name tested, null for any
+     * @param aNodeNamespace the namespace of the node, empty if none
+     * @param aNodeLocalName the local name of the node
+     * @return true if the node matches the name test
+     */
+    private static boolean matchesName(String aNamespace, String aLocalName,
+        String aNodeNamespace, String aNodeLocalName)
+    {
+        return ((aLocalName == null) || aLocalName.equals(aNodeLocalName))
+            && ((aNamespace == null) || aNamespace.equals(aNodeNamespace));
+    }
+
+    /**
+     * Two patterns with the same canonical form select the same nodes.
+     * @return the canonical form of the pattern, namespaces being resolved
+     */
+    @Override
+    public String toString()
+    {
+        return mKey;
+    }
+
+    /**
+     * A step being parsed.
+     */
+    private static final class Step
+    {
+        /** Whether the step uses the descendant axis. */
+        private boolean mDescendant;
+        /** Namespace and local name tested. */
+        private String[] mName;
+        /** Required attributes, namespace and local name pairs. */
+        private final List<String> mRequired = new ArrayList<String>();
+    }
+}
@@ -0,0 +1,458 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wall-clock time and allocated bytes spent by the walker, per phase, per
+ * check and per file.
+ *
+ * A profile is confined to the walker owning it; the profiles of the
+ * workers of a parallel walker are merged at the end of the run. The
+ * allocated bytes are only measured on virtual machines able to report the
+ * allocations of a thread, they are zero otherwise.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public final class XmlProfile {
+
+    /** The phases of the processing of a file. */
+    public enum Phase {
+        /** Parsing of the document, to an AST or to streaming checks. */
+        PARSE("parse"),
+        /** Calls of <code>beginTree</code>. */
+        BEGIN_TREE("beginTree"),
+        /** Calls of <code>visitToken</code>. */
+        VISIT("visit"),
+        /** Calls of <code>leaveToken</code>. */
+        LEAVE("leave"),
+        /** Calls of <code>finishTree</code>. */
+        FINISH_TREE("finishTree");
+
+        /** Name of the phase in the reports. */
+        private final String mLabel;
+
+        /**
+         * Creates a phase.
+         * @param aLabel name of the phase in the reports
+         */
+        private Phase(String aLabel)
+        {
+            mLabel = aLabel;
+        }
+
+        /** @return the name of the phase in the reports */
+        public String getLabel()
+        {
+            return mLabel;
+        }
+    }
+
+    /** Number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** Number of bytes in a kilobyte. */
+    private static final double BYTES_PER_KILO = 1024.0;
+
+    /** Number of bytes in a megabyte. */
+    private static final long BYTES_PER_MEGA = 1024 * 1024;
+
+    /** Thread bean able to report the allocated bytes, null if none. */
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS =
+        createAllocationsBean();
+
+    /** Totals of each phase. */
+    private final Counter[] mPhases = createCounters();
+
+    /** Counters of each check, by label and phase. */
+    private final Map<String, Counter[]> mChecks =
+        new LinkedHashMap<String, Counter[]>();
+
+    /** Counters of each file. */
+    private final Map<String, Counter> mFiles =
+        new LinkedHashMap<String, Counter>();
+
+    /** Files parsed to a tree, their length being counted as bytes. */
+    private final Counter mInput = new Counter();
+
+    /** @return the bytes allocated so far by the current thread, or 0 */
+    public long allocatedBytes()
+    {
+        if (ALLOCATIONS == null) {
+            return 0;
+        }
+        return ALLOCATIONS.getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+    }
+
+    /**
+     * Records the time and bytes spent in a phase, outside of the checks.
+     * @param aPhase the phase
+     * @param aStartNanos value of {@link System#nanoTime()} at the start
+     * @param aStartBytes value of {@link #allocatedBytes()} at the start
+     */
+    public void record(Phase aPhase, long aStartNanos, long aStartBytes)
+    {
+        mPhases[aPhase.ordinal()].add(System.nanoTime() - aStartNanos,
+            allocatedBytes() - aStartBytes);
+    }
+
+    /**
+     * Records the time and bytes spent by a check.
+     * @param aCheck the label of the check
+     * @param aPhase the phase
+     * @param aStartNanos value of {@link System#nanoTime()} at the start
+     * @param aStartBytes value of {@link #allocatedBytes()} at the start
+     */
+    public void record(String aCheck, Phase aPhase, long aStartNanos,
+        long aStartBytes)
+    {
+        final long nanos = System.nanoTime() - aStartNanos;
+        final long bytes = allocatedBytes() - aStartBytes;
+        mPhases[aPhase.ordinal()].add(nanos, bytes);
+        Counter[] counters = mChecks.get(aCheck);
+        if (counters == null) {
+            counters = createCounters();
+            mChecks.put(aCheck, counters);
+        }
+        counters[aPhase.ordinal()].add(nanos, bytes);
+    }
+
+    /**
+     * Records the size of a file parsed to a tree, to relate the bytes
+     * allocated by the parsing to the size of the input.
+     * @param aBytes the length of the file
+     */
+    public void recordInput(long aBytes)
+    {
+        mInput.add(0, aBytes);
+    }
+
+    /**
+     * @return the bytes allocated by the parsing per megabyte of parsed
+     *         files, 0 if no file was parsed to a tree
+     */
+    public long getParseBytesPerMegabyte()
+    {
+        if (mInput.mBytes == 0) {
+            return 0;
+        }
+        return mPhases[Phase.PARSE.ordinal()].mBytes * BYTES_PER_MEGA
+            / mInput.mBytes;
+    }
+
+    /**
+     * Records the time and bytes spent on a file.
+     * @param aFile the path of the file
+     * @param aStartNanos value of {@link System#nanoTime()} at the start
+     * @param aStartBytes value of {@link #allocatedBytes()} at the start
+     */
+    public void recordFile(String aFile, long aStartNanos, long aStartBytes)
+    {
+        Counter counter = mFiles.get(aFile);
+        if (counter == null) {
+            counter = new Counter();
+            mFiles.put(aFile, counter);
+        }
+        counter.add(System.nanoTime() - aStartNanos,
+            allocatedBytes() - aStartBytes);
+    }
+
+    /**
+     * Adds the counters of another profile to this one.
+     * @param aOther the profile to merge
+     */
+    public void merge(XmlProfile aOther)
+    {
+        merge(mPhases, aOther.mPhases);
+        mInput.merge(aOther.mInput);
+        for (Map.Entry<String, Counter[]> check : aOther.mChecks.entrySet()) {
+            Counter[] counters = mChecks.get(check.getKey());
+            if (counters == null) {
+                counters = createCounters();
+                mChecks.put(check.getKey(), counters);
+            }
+            merge(counters, check.getValue());
+        }
+        for (Map.Entry<String, Counter> file : aOther.mFiles.entrySet()) {
+            Counter counter = mFiles.get(file.getKey());
+            if (counter == null) {
+                counter = new Counter();
+                mFiles.put(file.getKey(), counter);
+            }
+            counter.merge(file.getValue());
+        }
+    }
+
+    /**
+     * Prints a readable summary: the totals of the phases, then the
+     * slowest checks and files.
+     * @param aOut the stream to print to
+     * @param aTop the number of checks and files listed
+     */
+    public void report(PrintStream aOut, int aTop)
+    {
+        aOut.println("XmlTreeWalker profile");
+        aOut.println(String.format("  %-12s %10s %12s %14s",
+            "phase", "calls", "time (ms)", "alloc (KB)"));
+        for (Phase phase : Phase.values()) {
+            final Counter counter = mPhases[phase.ordinal()];
+            aOut.println(String.format("  %-12s %10d %12.1f %14.1f",
+                phase.getLabel(), counter.mCalls,
+                counter.mNanos / NANOS_PER_MILLI,
+                counter.mBytes / BYTES_PER_KILO));
+        }
+        if (mInput.mCalls > 0) {
+            aOut.println(String.format(
+                "  parse alloc per MB of input (KB) %14.1f",
+                getParseBytesPerMegabyte() / BYTES_PER_KILO));
+        }
+
+        aOut.println("Slowest checks");
+        for (Map.Entry<String, Counter> check
+            : sort(sumChecks(), aTop))
+        {
+            printEntry(aOut, check);
+        }
+
+        aOut.println("Slowest files");
+        for (Map.Entry<String, Counter> file : sort(mFiles, aTop)) {
+            printEntry(aOut, file);
+        }
+    }
+
+    /**
+     * Writes every counter to a CSV file with the columns
+     * <code>kind,name,phase,calls,nanos,bytes</code>.
+     * @param aFile the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File aFile) throws IOException
+    {
+        final Writer writer =
+            new OutputStreamWriter(new FileOutputStream(aFile), "UTF-8");
+        final PrintWriter out = new PrintWriter(writer);
+        try {
+            out.println("kind,name,phase,calls,nanos,bytes");
+            for (Phase phase : Phase.values()) {
+                writeRow(out, "phase", phase.getLabel(), phase.getLabel(),
+                    mPhases[phase.ordinal()]);
+            }
+            for (Map.Entry<String, Counter[]> check : mChecks.entrySet()) {
+                for (Phase phase : Phase.values()) {
+                    final Counter counter = check.getValue()[phase.ordinal()];
+                    if (counter.mCalls > 0) {
+                        writeRow(out, "check", check.getKey(),
+                            phase.getLabel(), counter);
+                    }
+                }
+            }
+            for (Map.Entry<String, Counter> file : mFiles.entrySet()) {
+                writeRow(out, "file", file.getKey(), "", file.getValue());
+            }
+            if (mInput.mCalls > 0) {
+                writeRow(out, "input", "", Phase.PARSE.getLabel(), mInput);
+            }
+        }
+        finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Unable to write " + aFile);
+        }
+    }
+
+    /** @return the totals of each check, all phases included */
+    private Map<String, Counter> sumChecks()
+    {
+        final Map<String, Counter> sums = new LinkedHashMap<String, Counter>();
+        for (Map.Entry<String, Counter[]> check : mChecks.entrySet()) {
+            final Counter sum = new Counter();
+            for (Counter counter : check.getValue()) {
+                sum.merge(counter);
+            }
+            sums.put(check.getKey(), sum);
+        }
+        return sums;
+    }
+
+    /**
+     * Prints a check or a file of the summary.
+     * @param aOut the stream to print to
+     * @param aEntry the name and counter of the check or file
+     */
+    private static void printEntry(PrintStream aOut,
+        Map.Entry<String, Counter> aEntry)
+    {
+        aOut.println(String.format("  %12.1f ms %14.1f KB  %s",
+            aEntry.getValue().mNanos / NANOS_PER_MILLI,
+            aEntry.getValue().mBytes / BYTES_PER_KILO,
+            aEntry.getKey()));
+    }
+
+    /**
+     * Writes a row of the CSV file.
+     * @param aOut the file
+     * @param aKind the kind of the counter
+     * @param aName the name of the phase, check or file
+     * @param aPhase the phase of the counter
+     * @param aCounter the counter
+     */
+    private static void writeRow(PrintWriter aOut, String aKind, String aName,
+        String aPhase, Counter aCounter)
+    {
+        aOut.println(aKind + "," + quote(aName) + "," + aPhase + ","
+            + aCounter.mCalls + "," + aCounter.mNanos + ","
+            + aCounter.mBytes);
+    }
+
+    /**
+     * Quotes a CSV field.
+     * @param aValue the value of the field
+     * @return the quoted field
+     */
+    private static String quote(String aValue)
+    {
+        return "\"" + aValue.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Sorts counters by decreasing time.
+     * @param aCounters the counters to sort
+     * @param aTop the number of counters kept
+     * @return the slowest counters
+     */
+    private static List<Map.Entry<String, Counter>> sort(
+        Map<String, Counter> aCounters, int aTop)
+    {
+        final List<Map.Entry<String, Counter>> sorted =
+            new ArrayList<Map.Entry<String, Counter>>(aCounters.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Counter>>()
+        {
+            public int compare(Map.Entry<String, Counter> aFirst,
+                Map.Entry<String, Counter> aSecond)
+            {
+                final long first = aFirst.getValue().mNanos;
+                final long second = aSecond.getValue().mNanos;
+                return (first < second) ? 1 : ((first == second) ? 0 : -1);
+            }
+        });
+        return sorted.subList(0, Math.min(Math.max(aTop, 0), sorted.size()));
+    }
+
+    /**
+     * Merges counters phase by phase.
+     * @param aTarget the counters to add to
+     * @param aSource the counters to add
+     */
+    private static void merge(Counter[] aTarget, Counter[] aSource)
+    {
+        for (int i = 0; i < aTarget.length; i++) {
+            aTarget[i].merge(aSource[i]);
+        }
+    }
+
+    /** @return one empty counter per phase */
+    private static Counter[] createCounters()
+    {
+        final Counter[] counters = new Counter[Phase.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new Counter();
+        }
+        return counters;
+    }
+
+    /**
+     * @return the thread bean if it can measure the allocations of a
+     *         thread, null otherwise
+     */
+    private static com.sun.management.ThreadMXBean createAllocationsBean()
+    {
+        try {
+            final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                final com.sun.management.ThreadMXBean allocations =
+                    (com.sun.management.ThreadMXBean) bean;
+                if (allocations.isThreadAllocatedMemorySupported()) {
+                    allocations.setThreadAllocatedMemoryEnabled(true);
+                    return allocations;
+                }
+            }
+        }
+        catch (final LinkageError ex) {
+            // not a HotSpot virtual machine
+        }
+        catch (final UnsupportedOperationException ex) {
+            // allocations cannot be measured
+        }
+        return null;
+    }
+
+    /**
+     * Number of calls, time and allocated bytes.
+     */
+    private static final class Counter
+    {
+        /** Number of calls. */
+        private long mCalls;
+        /** Time spent, in nanoseconds. */
+        private long mNanos;
+        /** Bytes allocated. */
+        private long mBytes;
+
+        /**
+         * Counts a call.
+         * @param aNanos the time spent
+         * @param aBytes the bytes allocated
+         */
+        void add(long aNanos, long aBytes)
+        {
+            mCalls++;
+            mNanos += aNanos;
+            mBytes += aBytes;
+        }
+
+        /**
+         * Adds another counter to this one.
+         * @param aOther the counter to add
+         */
+        void merge(Counter aOther)
+        {
+            mCalls += aOther.mCalls;
+            mNanos += aOther.mNanos;
+            mBytes += aOther.mBytes;
+        }
+    }
+}
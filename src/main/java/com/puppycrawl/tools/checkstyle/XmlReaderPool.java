@@ -0,0 +1,210 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Pool of the SAX parsers used to read the checked documents.
+ *
+ * Each thread keeps its own parsers, so they are never shared between
+ * threads and creating a parser, which involves a service lookup, happens
+ * once per thread instead of once per file. A thread parsing a document
+ * while another one is being parsed gets a second parser.
+ *
+ * The parsers are aware of the namespaces and do not validate. By default
+ * they read the external DTDs and entities, like any SAX parser. When
+ * acquired with external entities refused, they never read them: the
+ * entities declared there are not expanded and the default attributes
+ * declared there are not added.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public final class XmlReaderPool {
+
+    /** SAX feature URI prefix. */
+    private static final String SAX_FEATURES = "http://xml.org/sax/features/";
+
+    /** Features enabled on every parser. */
+    private static final String[] ENABLED_FEATURES = {
+        SAX_FEATURES + "namespaces",
+    };
+
+    /** Features disabled on every parser. */
+    private static final String[] DISABLED_FEATURES = {
+        SAX_FEATURES + "namespace-prefixes",
+        SAX_FEATURES + "validation",
+    };
+
+    /** Features reading external DTDs and entities. */
+    private static final String[] EXTERNAL_FEATURES = {
+        SAX_FEATURES + "external-general-entities",
+        SAX_FEATURES + "external-parameter-entities",
+        "http://apache.org/xml/features/nonvalidating/load-external-dtd",
+    };
+
+    /** Property holding the lexical handler, set by Saxon. */
+    private static final String LEXICAL_HANDLER =
+        "http://xml.org/sax/properties/lexical-handler";
+
+    /** Handler set on the idle parsers so they retain no document state. */
+    private static final DefaultHandler IDLE_HANDLER = new DefaultHandler();
+
+    /** Resolves every external entity to an empty document. */
+    private static final EntityResolver EMPTY_RESOLVER = new EntityResolver()
+    {
+        public InputSource resolveEntity(String aPublicId, String aSystemId)
+        {
+            return new InputSource(new StringReader(""));
+        }
+    };
+
+    /** Lets the parser resolve the external entities itself. */
+    private static final EntityResolver DEFAULT_RESOLVER = new EntityResolver()
+    {
+        public InputSource resolveEntity(String aPublicId, String aSystemId)
+        {
+            return null;
+        }
+    };
+
+    /** Idle parsers of each thread. */
+    private static final ThreadLocal<Deque<XMLReader>> IDLE_READERS =
+        new ThreadLocal<Deque<XMLReader>>() {
+            @Override
+            protected Deque<XMLReader> initialValue()
+            {
+                return new ArrayDeque<XMLReader>();
+            }
+        };
+
+    /** Prevent instantiation. */
+    private XmlReaderPool()
+    {
+    }
+
+    /**
+     * Takes a parser from the pool of the current thread, creating it if
+     * none is idle. The parser must be given back with
+     * {@link #release(XMLReader)} by the same thread. The parser reads the
+     * external DTD and the external entities of the documents.
+     * @return a configured parser
+     * @throws SAXException if no parser can be created
+     */
+    public static XMLReader acquire() throws SAXException
+    {
+        return acquire(true);
+    }
+
+    /**
+     * Takes a parser from the pool of the current thread, creating it if
+     * none is idle. The parser must be given back with
+     * {@link #release(XMLReader)} by the same thread.
+     * @param aExternalEntities whether the parser reads the external DTD
+     *        and the external entities of the documents
+     * @return a configured parser
+     * @throws SAXException if no parser can be created
+     */
+    public static XMLReader acquire(boolean aExternalEntities)
+        throws SAXException
+    {
+        XMLReader reader = IDLE_READERS.get().poll();
+        if (reader == null) {
+            reader = XMLReaderFactory.createXMLReader();
+            configure(reader);
+        }
+        if (aExternalEntities) {
+            setFeatures(reader, EXTERNAL_FEATURES, true);
+            reader.setEntityResolver(DEFAULT_RESOLVER);
+        }
+        return reader;
+    }
+
+    /**
+     * Gives back a parser to the pool of the current thread, dropping the
+     * handlers of the last document.
+     * @param aReader the parser, may be null
+     */
+    public static void release(XMLReader aReader)
+    {
+        if (aReader == null) {
+            return;
+        }
+        try {
+            configure(aReader);
+        }
+        catch (final SAXException ex) {
+            // the parser no longer accepts our setup, let it go
+            return;
+        }
+        IDLE_READERS.get().push(aReader);
+    }
+
+    /**
+     * Sets the features and handlers of a parser.
+     * @param aReader the parser to configure
+     * @throws SAXException if a required feature is not supported
+     */
+    private static void configure(XMLReader aReader) throws SAXException
+    {
+        for (String feature : ENABLED_FEATURES) {
+            aReader.setFeature(feature, true);
+        }
+        setFeatures(aReader, DISABLED_FEATURES, false);
+        setFeatures(aReader, EXTERNAL_FEATURES, false);
+        try {
+            aReader.setProperty(LEXICAL_HANDLER, null);
+        }
+        catch (final SAXException ex) {
+            // lexical handlers not supported, nothing to drop
+        }
+        aReader.setContentHandler(IDLE_HANDLER);
+        aReader.setDTDHandler(IDLE_HANDLER);
+        aReader.setErrorHandler(IDLE_HANDLER);
+        aReader.setEntityResolver(EMPTY_RESOLVER);
+    }
+
+    /**
+     * Sets optional features of a parser.
+     * @param aReader the parser to configure
+     * @param aFeatures the features
+     * @param aValue the value of the features
+     */
+    private static void setFeatures(XMLReader aReader, String[] aFeatures,
+        boolean aValue)
+    {
+        for (String feature : aFeatures) {
+            try {
+                aReader.setFeature(feature, aValue);
+            }
+            catch (final SAXException ex) {
+                // not supported by this parser, the resolver covers it
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import java.io.File;
+import java.io.IOException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the root element of a document, stopping the parser at its start
+ * tag so that only the prolog is read.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlCheckFilter
+ */
+final class XmlRootSniffer extends DefaultHandler {
+
+    /** Thrown to stop the parser once the root is read. */
+    private static final SAXException STOP =
+        new SAXException("root element read");
+
+    /** Namespace URI of the root, empty if none. */
+    private String mNamespace;
+
+    /** Local name of the root. */
+    private String mLocalName;
+
+    /** Whether the external DTD, which may default the namespace, is read. */
+    private boolean mExternalEntities = true;
+
+    /**
+     * Sets whether the external DTD of the documents is read.
+     * @param aExternalEntities true to read the external DTDs and entities
+     */
+    void setExternalEntities(boolean aExternalEntities)
+    {
+        mExternalEntities = aExternalEntities;
+    }
+
+    /**
+     * Reads the root element of a document.
+     * @param aFile the file of the document
+     * @return true if the root was read, false if the prolog is not well
+     *         formed or the file cannot be read
+     */
+    boolean sniff(File aFile)
+    {
+        mNamespace = null;
+        mLocalName = null;
+        InputSource source = null;
+        XMLReader reader = null;
+        try {
+            reader = XmlReaderPool.acquire(mExternalEntities);
+            source = XmlFileSource.open(aFile);
+            reader.setContentHandler(this);
+            reader.parse(source);
+        }
+        catch (final SAXException ex) {
+            // STOP is expected, other errors are reported by the parse
+        }
+        catch (final IOException ex) {
+            // reported by the parse of the document
+        }
+        finally {
+            XmlReaderPool.release(reader);
+            XmlFileSource.close(source);
+        }
+        return mLocalName != null;
+    }
+
+    /** @return the namespace URI of the root, empty if none */
+    String getNamespace()
+    {
+        return mNamespace;
+    }
+
+    /** @return the local name of the root */
+    String getLocalName()
+    {
+        return mLocalName;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String aUri, String aLocalName, String aQName,
+        Attributes aAttributes) throws SAXException
+    {
+        mNamespace = aUri;
+        mLocalName = aLocalName;
+        throw STOP;
+    }
+}
@@ -0,0 +1,307 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * A part of a document checked on its own, built from the lines of the
+ * document.
+ *
+ * A record shard holds consecutive elements at the split path, wrapped in
+ * copies of the start tags of their ancestors, each one on its own line.
+ * The remainder holds the document without the records of the shards,
+ * their characters being replaced by as many line feeds and spaces so that
+ * the rest of the document keeps its positions. The parser events of a
+ * shard are reported at the lines of the original document.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlShardSplitter
+ */
+final class XmlShard {
+
+    /** Lines of the document. */
+    private final List<String> mLines;
+
+    /** Ancestors of the records, null for the remainder. */
+    private final Ancestor[] mAncestors;
+
+    /**
+     * Ranges of the records, or of the records blanked in the remainder,
+     * as start line, start column, end line and end column quadruples,
+     * lines from 1 and columns from 0, end columns exclusive.
+     */
+    private final int[] mRanges;
+
+    /**
+     * Creates a shard.
+     * @param aLines the lines of the document
+     * @param aAncestors the ancestors of the records, null for the
+     *        remainder
+     * @param aRanges the ranges of the records
+     */
+    private XmlShard(List<String> aLines, Ancestor[] aAncestors,
+        int[] aRanges)
+    {
+        mLines = aLines;
+        mAncestors = aAncestors;
+        mRanges = aRanges;
+    }
+
+    /**
+     * Creates a shard of records.
+     * @param aLines the lines of the document
+     * @param aAncestors the ancestors of the records
+     * @param aStartLine line of the start of the first record
+     * @param aStartColumn column of the start of the first record
+     * @param aEndLine line of the end of the last record
+     * @param aEndColumn column following the end of the last record
+     * @return the shard
+     */
+    static XmlShard records(List<String> aLines, Ancestor[] aAncestors,
+        int aStartLine, int aStartColumn, int aEndLine, int aEndColumn)
+    {
+        return new XmlShard(aLines, aAncestors,
+            new int[] {aStartLine, aStartColumn, aEndLine, aEndColumn});
+    }
+
+    /**
+     * Creates the remainder of a document.
+     * @param aLines the lines of the document
+     * @param aRanges the ranges of the record shards, in document order
+     * @return the shard
+     */
+    static XmlShard remainder(List<String> aLines, int[] aRanges)
+    {
+        return new XmlShard(aLines, null, aRanges);
+    }
+
+    /**
+     * Opens the parser input of the shard, whose text is built on each
+     * call rather than kept.
+     * @param aFile the file of the document
+     * @return the input
+     */
+    InputSource createSource(File aFile)
+    {
+        final InputSource source =
+            new InputSource(new StringReader(getText()));
+        source.setSystemId(aFile.toURI().toString());
+        return source;
+    }
+
+    /**
+     * Wraps a parser so that it reports the lines of the document.
+     * @param aReader the parser
+     * @return the parser to use
+     */
+    XMLReader createFilter(XMLReader aReader)
+    {
+        final XMLFilterImpl filter = new LineFilter();
+        filter.setParent(aReader);
+        return filter;
+    }
+
+    /** @return the text of the shard */
+    String getText()
+    {
+        final StringBuilder buf = new StringBuilder();
+        if (mAncestors == null) {
+            int line = 1;
+            int column = 0;
+            for (int i = 0; i < mRanges.length; i += 4) {
+                append(buf, line, column, mRanges[i], mRanges[i + 1]);
+                blank(buf, mRanges[i], mRanges[i + 1], mRanges[i + 2],
+                    mRanges[i + 3]);
+                line = mRanges[i + 2];
+                column = mRanges[i + 3];
+            }
+            append(buf, line, column, mLines.size(),
+                mLines.get(mLines.size() - 1).length());
+            return buf.toString();
+        }
+
+        for (Ancestor ancestor : mAncestors) {
+            spaces(buf, ancestor.mEndColumn - ancestor.mTag.length());
+            buf.append(ancestor.mTag).append('\n');
+        }
+        spaces(buf, mRanges[1]);
+        append(buf, mRanges[0], mRanges[1], mRanges[2], mRanges[3]);
+        buf.append('\n');
+        for (int i = mAncestors.length - 1; i >= 0; i--) {
+            buf.append("</").append(mAncestors[i].mName).append('>');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Tells whether a node of the shard is part of its records, the nodes
+     * of the remainder all being part of it.
+     * @param aLine the line of the node in the document
+     * @param aColumn the column following the start tag of the node
+     * @return false if the node is a copy of an ancestor of the records
+     */
+    boolean contains(int aLine, int aColumn)
+    {
+        return (mAncestors == null) || (aLine > mRanges[0])
+            || ((aLine == mRanges[0]) && (aColumn > mRanges[1]));
+    }
+
+    /**
+     * Maps a line of the shard to the line of the document.
+     * @param aLine the line in the shard
+     * @return the line in the document
+     */
+    int mapLine(int aLine)
+    {
+        if ((mAncestors == null) || (aLine <= 0)) {
+            return aLine;
+        }
+        if (aLine <= mAncestors.length) {
+            return mAncestors[aLine - 1].mEndLine;
+        }
+        return aLine - mAncestors.length - 1 + mRanges[0];
+    }
+
+    /**
+     * Appends a range of the document.
+     * @param aBuf the text being built
+     * @param aStartLine the first line
+     * @param aStartColumn the first column
+     * @param aEndLine the last line
+     * @param aEndColumn the column following the range
+     */
+    private void append(StringBuilder aBuf, int aStartLine, int aStartColumn,
+        int aEndLine, int aEndColumn)
+    {
+        if (aStartLine == aEndLine) {
+            aBuf.append(mLines.get(aStartLine - 1), aStartColumn, aEndColumn);
+            return;
+        }
+        final String first = mLines.get(aStartLine - 1);
+        aBuf.append(first, aStartColumn, first.length()).append('\n');
+        for (int line = aStartLine + 1; line < aEndLine; line++) {
+            aBuf.append(mLines.get(line - 1)).append('\n');
+        }
+        aBuf.append(mLines.get(aEndLine - 1), 0, aEndColumn);
+    }
+
+    /**
+     * Appends the line feeds and spaces standing for a range.
+     * @param aBuf the text being built
+     * @param aStartLine the first line
+     * @param aStartColumn the first column
+     * @param aEndLine the last line
+     * @param aEndColumn the column following the range
+     */
+    private static void blank(StringBuilder aBuf, int aStartLine,
+        int aStartColumn, int aEndLine, int aEndColumn)
+    {
+        for (int line = aStartLine; line < aEndLine; line++) {
+            aBuf.append('\n');
+        }
+        spaces(aBuf, (aStartLine == aEndLine)
+            ? aEndColumn - aStartColumn : aEndColumn);
+    }
+
+    /**
+     * Appends spaces.
+     * @param aBuf the text being built
+     * @param aCount the number of spaces, none if negative
+     */
+    private static void spaces(StringBuilder aBuf, int aCount)
+    {
+        for (int i = 0; i < aCount; i++) {
+            aBuf.append(' ');
+        }
+    }
+
+    /**
+     * Start tag of an ancestor of the records.
+     */
+    static final class Ancestor
+    {
+        /** Qualified name of the element. */
+        private final String mName;
+
+        /** Start tag, on a single line. */
+        private final String mTag;
+
+        /** Line of the end of the start tag. */
+        private final int mEndLine;
+
+        /** Column following the end of the start tag. */
+        private final int mEndColumn;
+
+        /**
+         * Creates an ancestor.
+         * @param aName the qualified name of the element
+         * @param aTag the start tag
+         * @param aEndLine the line of the end of the start tag
+         * @param aEndColumn the column following the start tag
+         */
+        Ancestor(String aName, String aTag, int aEndLine, int aEndColumn)
+        {
+            mName = aName;
+            mTag = aTag.replace('\r', ' ').replace('\n', ' ');
+            mEndLine = aEndLine;
+            mEndColumn = aEndColumn;
+        }
+    }
+
+    /**
+     * Reports the events of the shard at the lines of the document.
+     */
+    private final class LineFilter extends XMLFilterImpl
+    {
+        /** {@inheritDoc} */
+        @Override
+        public void setDocumentLocator(final Locator aLocator)
+        {
+            super.setDocumentLocator(new Locator() {
+                public String getPublicId()
+                {
+                    return aLocator.getPublicId();
+                }
+
+                public String getSystemId()
+                {
+                    return aLocator.getSystemId();
+                }
+
+                public int getLineNumber()
+                {
+                    return mapLine(aLocator.getLineNumber());
+                }
+
+                public int getColumnNumber()
+                {
+                    return aLocator.getColumnNumber();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,159 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.google.common.collect.Maps;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Gathers the matches counted by the checks on each shard of a document,
+ * so that a rule over the whole document is answered once every shard is
+ * checked.
+ *
+ * The checks of the workers add their results concurrently, under the
+ * configuration they share. Match locations are returned in document
+ * order, whatever the order in which the shards were checked.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlShardedCheck
+ */
+public final class XmlShardResults {
+
+    /** Results by check. */
+    private final Map<Object, Tally> mTallies = Maps.newHashMap();
+
+    /**
+     * Adds the matches of a check on a shard.
+     * @param aCheck the key of the check, such as its configuration
+     * @param aCount the number of matches
+     * @param aLines the lines of the located matches
+     * @param aColumns the columns of the located matches
+     * @param aLocated the number of located matches
+     */
+    public synchronized void add(Object aCheck, int aCount, int[] aLines,
+        int[] aColumns, int aLocated)
+    {
+        Tally tally = mTallies.get(aCheck);
+        if (tally == null) {
+            tally = new Tally();
+            mTallies.put(aCheck, tally);
+        }
+        tally.mCount += aCount;
+        if (tally.mSize + aLocated > tally.mLocations.length) {
+            tally.mLocations = Arrays.copyOf(tally.mLocations,
+                Math.max(2 * tally.mLocations.length, tally.mSize + aLocated));
+        }
+        for (int i = 0; i < aLocated; i++) {
+            tally.mLocations[tally.mSize++] =
+                ((long) aLines[i] << 32) | (aColumns[i] & 0xFFFFFFFFL);
+        }
+        tally.mSorted = false;
+    }
+
+    /**
+     * @param aCheck the key of a check
+     * @return true if the check added results
+     */
+    public synchronized boolean contains(Object aCheck)
+    {
+        return mTallies.containsKey(aCheck);
+    }
+
+    /**
+     * @param aCheck the key of a check
+     * @return the number of matches of the check on every shard
+     */
+    public synchronized int getCount(Object aCheck)
+    {
+        final Tally tally = mTallies.get(aCheck);
+        return (tally == null) ? 0 : tally.mCount;
+    }
+
+    /**
+     * @param aCheck the key of a check
+     * @return the number of located matches of the check
+     */
+    public synchronized int getLocated(Object aCheck)
+    {
+        final Tally tally = mTallies.get(aCheck);
+        return (tally == null) ? 0 : tally.mSize;
+    }
+
+    /**
+     * @param aCheck the key of a check
+     * @param aIndex the index of a located match, in document order
+     * @return the line of the match
+     */
+    public synchronized int getLine(Object aCheck, int aIndex)
+    {
+        return (int) (sorted(aCheck)[aIndex] >> 32);
+    }
+
+    /**
+     * @param aCheck the key of a check
+     * @param aIndex the index of a located match, in document order
+     * @return the column of the match
+     */
+    public synchronized int getColumn(Object aCheck, int aIndex)
+    {
+        return (int) sorted(aCheck)[aIndex];
+    }
+
+    /**
+     * Forgets the results, before the next document.
+     */
+    public synchronized void clear()
+    {
+        mTallies.clear();
+    }
+
+    /**
+     * @param aCheck the key of a check
+     * @return the locations of the matches of the check, sorted
+     */
+    private long[] sorted(Object aCheck)
+    {
+        final Tally tally = mTallies.get(aCheck);
+        if (!tally.mSorted) {
+            Arrays.sort(tally.mLocations, 0, tally.mSize);
+            tally.mSorted = true;
+        }
+        return tally.mLocations;
+    }
+
+    /**
+     * Results of a check.
+     */
+    private static final class Tally
+    {
+        /** Number of matches. */
+        private int mCount;
+
+        /** Locations of the matches, line in the high bits. */
+        private long[] mLocations = new long[16];
+
+        /** Number of locations. */
+        private int mSize;
+
+        /** Whether the locations are sorted. */
+        private boolean mSorted;
+    }
+}
@@ -0,0 +1,243 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.List;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Finds the records of a document, the elements at a split path such as
+ * <code>/export/record</code>, and groups them into {@link XmlShard}s.
+ *
+ * Only the positions of the records and the start tags of their ancestors
+ * are kept, the shards being built from the lines of the document. The
+ * start of a record is found by looking back from the end of its start
+ * tag, reported by the parser, for the <code>&lt;</code> which cannot
+ * appear elsewhere in a tag.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+final class XmlShardSplitter extends DefaultHandler {
+
+    /** Qualified names of the split path, <code>*</code> matching any. */
+    private final String[] mPath;
+
+    /** Lines of the document. */
+    private final List<String> mLines;
+
+    /** Maximum number of records per shard. */
+    private final int mShardSize;
+
+    /** Locator of the parser. */
+    private Locator mLocator;
+
+    /** Depth of the current element, 0 for the root. */
+    private int mDepth = -1;
+
+    /** Number of open elements matching the start of the split path. */
+    private int mMatched;
+
+    /** Ancestors of the next records. */
+    private final List<XmlShard.Ancestor> mAncestors = Lists.newArrayList();
+
+    /** Ancestors of the records, null when changed since the last record. */
+    private XmlShard.Ancestor[] mChain;
+
+    /** Ancestors of the records of each shard. */
+    private final List<XmlShard.Ancestor[]> mShardChains =
+        Lists.newArrayList();
+
+    /** Ranges of the shards, by four ints. */
+    private int[] mRanges = new int[64];
+
+    /** Number of shards. */
+    private int mShards;
+
+    /** Number of records of the last shard. */
+    private int mRecords;
+
+    /** Line of the start of the last start tag. */
+    private int mTagLine;
+
+    /** Column of the start of the last start tag. */
+    private int mTagColumn;
+
+    /**
+     * Creates a splitter.
+     * @param aPath the qualified names of the split path from the root
+     * @param aLines the lines of the document
+     * @param aShardSize the maximum number of records per shard
+     */
+    XmlShardSplitter(String[] aPath, List<String> aLines, int aShardSize)
+    {
+        mPath = aPath;
+        mLines = aLines;
+        mShardSize = aShardSize;
+    }
+
+    /**
+     * Parses a split path such as <code>/export/record</code>.
+     * @param aPath the path
+     * @return the qualified names of the path
+     * @throws IllegalArgumentException if the path is not absolute
+     */
+    static String[] parsePath(String aPath)
+    {
+        if (!aPath.startsWith("/") || aPath.startsWith("//")
+            || aPath.endsWith("/"))
+        {
+            throw new IllegalArgumentException(
+                "Split path must be absolute: " + aPath);
+        }
+        return aPath.substring(1).split("/");
+    }
+
+    /**
+     * @return the shards of records followed by the remainder of the
+     *         document, empty if no record was found
+     */
+    List<XmlShard> getShards()
+    {
+        final List<XmlShard> shards = Lists.newArrayList();
+        for (int i = 0; i < mShards; i++) {
+            shards.add(XmlShard.records(mLines, mShardChains.get(i),
+                mRanges[4 * i], mRanges[4 * i + 1], mRanges[4 * i + 2],
+                mRanges[4 * i + 3]));
+        }
+        if (mShards > 0) {
+            shards.add(XmlShard.remainder(mLines,
+                Arrays.copyOf(mRanges, 4 * mShards)));
+        }
+        return shards;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setDocumentLocator(Locator aLocator)
+    {
+        mLocator = aLocator;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String aUri, String aLocalName, String aQName,
+        Attributes aAttributes)
+    {
+        mDepth++;
+        if ((mDepth != mMatched) || (mDepth >= mPath.length)
+            || (!"*".equals(mPath[mDepth]) && !mPath[mDepth].equals(aQName)))
+        {
+            return;
+        }
+        mMatched++;
+
+        final int line = mLocator.getLineNumber();
+        final int column = mLocator.getColumnNumber() - 1;
+        findTagStart(line, column);
+        if (mDepth < mPath.length - 1) {
+            mAncestors.add(new XmlShard.Ancestor(aQName,
+                getTag(mTagLine, mTagColumn, line, column), line, column));
+            mChain = null;
+            return;
+        }
+
+        if (mChain == null) {
+            mChain = mAncestors.toArray(
+                new XmlShard.Ancestor[mAncestors.size()]);
+        }
+        if ((mShards == 0) || (mRecords == mShardSize)
+            || (mShardChains.get(mShards - 1) != mChain))
+        {
+            if (4 * mShards == mRanges.length) {
+                mRanges = Arrays.copyOf(mRanges, 2 * mRanges.length);
+            }
+            mRanges[4 * mShards] = mTagLine;
+            mRanges[4 * mShards + 1] = mTagColumn;
+            mShardChains.add(mChain);
+            mShards++;
+            mRecords = 0;
+        }
+        mRecords++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String aUri, String aLocalName, String aQName)
+    {
+        if (mDepth == mMatched - 1) {
+            mMatched--;
+            if (mDepth == mPath.length - 1) {
+                mRanges[4 * mShards - 2] = mLocator.getLineNumber();
+                mRanges[4 * mShards - 1] = mLocator.getColumnNumber() - 1;
+            }
+            else {
+                mAncestors.remove(mAncestors.size() - 1);
+                mChain = null;
+            }
+        }
+        mDepth--;
+    }
+
+    /**
+     * Finds the <code>&lt;</code> starting the tag ending at a position,
+     * setting {@link #mTagLine} and {@link #mTagColumn}.
+     * @param aLine the line of the end of the tag
+     * @param aColumn the column following the tag
+     */
+    private void findTagStart(int aLine, int aColumn)
+    {
+        int line = aLine;
+        int start = mLines.get(line - 1).lastIndexOf('<', aColumn - 1);
+        while (start < 0) {
+            line--;
+            start = mLines.get(line - 1).lastIndexOf('<');
+        }
+        mTagLine = line;
+        mTagColumn = start;
+    }
+
+    /**
+     * Extracts a start tag from the lines of the document.
+     * @param aStartLine the line of the start of the tag
+     * @param aStartColumn the column of the start of the tag
+     * @param aEndLine the line of the end of the tag
+     * @param aEndColumn the column following the tag
+     * @return the tag
+     */
+    private String getTag(int aStartLine, int aStartColumn, int aEndLine,
+        int aEndColumn)
+    {
+        if (aStartLine == aEndLine) {
+            return mLines.get(aStartLine - 1).substring(aStartColumn,
+                aEndColumn);
+        }
+        final StringBuilder buf = new StringBuilder(
+            mLines.get(aStartLine - 1).substring(aStartColumn));
+        for (int line = aStartLine + 1; line < aEndLine; line++) {
+            buf.append(' ').append(mLines.get(line - 1));
+        }
+        buf.append(' ').append(mLines.get(aEndLine - 1), 0, aEndColumn);
+        return buf.toString();
+    }
+}
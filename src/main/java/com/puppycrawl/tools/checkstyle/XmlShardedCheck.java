@@ -0,0 +1,42 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+/**
+ * Contract of the checks whose rules apply to a whole document when the
+ * XmlTreeWalker splits it into shards.
+ *
+ * While a shard is checked, such a check adds what it counted to the
+ * {@link XmlShardResults} of the walker, available from its
+ * {@link XmlDocumentService}, instead of logging. Once every shard is
+ * checked, the walker calls {@link #finishShards(XmlShardResults)} on its
+ * own instance of the check, whose file contents are the ones of the
+ * document.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public interface XmlShardedCheck {
+
+    /**
+     * Logs the violations of the whole document.
+     * @param aResults the results added while checking the shards
+     */
+    void finishShards(XmlShardResults aResults);
+}
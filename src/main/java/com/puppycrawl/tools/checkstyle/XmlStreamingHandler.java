@@ -0,0 +1,124 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.XmlStreamingCheck;
+import java.io.File;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * Forwards the parser events to streaming checks, without building any
+ * tree.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlStreamingCheck
+ */
+public class XmlStreamingHandler extends DefaultHandler {
+
+    /** Checks notified of the events. */
+    private final XmlStreamingCheck[] checks;
+
+    /** Document being parsed. */
+    private final File file;
+
+    /** Stores the location of the parser in the file. */
+    private Locator locator = new LocatorImpl();
+
+    /**
+     * Creates a new handler.
+     * @param file the document being parsed
+     * @param checks the checks notified of the events
+     */
+    public XmlStreamingHandler(File file, XmlStreamingCheck[] checks) {
+        this.file = file;
+        this.checks = checks;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setDocumentLocator(Locator value) {
+        locator = value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startDocument() throws SAXException {
+        for (XmlStreamingCheck check : checks) {
+            check.beginDocument(file);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endDocument() throws SAXException {
+        for (XmlStreamingCheck check : checks) {
+            check.endDocument();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(String nameSpaceURI, String localName,
+            String rawName, Attributes attributs) throws SAXException {
+        final int line = locator.getLineNumber();
+        final int column = locator.getColumnNumber();
+        for (XmlStreamingCheck check : checks) {
+            check.startElement(nameSpaceURI, localName, rawName, line, column);
+            for (int index = 0; index < attributs.getLength(); index++) {
+                check.attribute(attributs.getURI(index),
+                    attributs.getLocalName(index), attributs.getQName(index),
+                    attributs.getValue(index), line, column);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(String nameSpaceURI, String localName,
+            String rawName) throws SAXException {
+        final int line = locator.getLineNumber();
+        final int column = locator.getColumnNumber();
+        for (XmlStreamingCheck check : checks) {
+            check.endElement(nameSpaceURI, localName, rawName, line, column);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void characters(char[] ch, int start, int length)
+        throws SAXException {
+        final int line = locator.getLineNumber();
+        final int column = locator.getColumnNumber();
+        for (XmlStreamingCheck check : checks) {
+            check.characters(ch, start, length, line, column);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length)
+        throws SAXException {
+        characters(ch, start, length);
+    }
+}
@@ -0,0 +1,126 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns the element, attribute and namespace names of the documents
+ * walked during a run to int ids.
+ *
+ * Every name is held once, whatever the number of its occurrences, and the
+ * text of the name nodes handed to the checks is the instance held by the
+ * table: once a check has looked up the id of a name, it can compare names
+ * by id, or by identity against {@link #getName(int)}. Checks receive the
+ * table of their walker through their <code>symbolTable</code> property.
+ *
+ * The table is shared by the workers of a walker, lookups never lock and
+ * only the first occurrence of a name does. It is never trimmed: a walker
+ * starts each run with a new table, handed again to its checks, so ids
+ * are only valid during the run and a walker kept between runs, as by the
+ * daemon or the watch mode, only holds the names of the current one.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ * @see XmlDocument
+ */
+public final class XmlSymbolTable {
+
+    /** Id standing for no name. */
+    public static final int NONE = -1;
+
+    /** Ids of the names. */
+    private final ConcurrentMap<String, Integer> mIds =
+        new ConcurrentHashMap<String, Integer>();
+
+    /** Names by id, replaced when grown. */
+    private volatile String[] mNames = new String[64];
+
+    /** Number of names. */
+    private int mSize;
+
+    /**
+     * Returns the id of a name, adding the name to the table if needed.
+     * @param aName the name
+     * @return the id of the name, {@link #NONE} for null
+     */
+    public int intern(String aName)
+    {
+        if (aName == null) {
+            return NONE;
+        }
+        final Integer id = mIds.get(aName);
+        if (id != null) {
+            return id.intValue();
+        }
+        return add(aName);
+    }
+
+    /**
+     * Returns the id of a name without adding it to the table.
+     * @param aName the name
+     * @return the id of the name, {@link #NONE} if unknown
+     */
+    public int getId(String aName)
+    {
+        final Integer id = (aName == null) ? null : mIds.get(aName);
+        return (id == null) ? NONE : id.intValue();
+    }
+
+    /**
+     * @param aId an id returned by {@link #intern(String)}
+     * @return the name of the id
+     */
+    public String getName(int aId)
+    {
+        return mNames[aId];
+    }
+
+    /** @return the number of names in the table */
+    public synchronized int getSize()
+    {
+        return mSize;
+    }
+
+    /**
+     * Adds a name unless another thread did it first.
+     * @param aName the name
+     * @return the id of the name
+     */
+    private synchronized int add(String aName)
+    {
+        final Integer known = mIds.get(aName);
+        if (known != null) {
+            return known.intValue();
+        }
+        final int id = mSize;
+        String[] names = mNames;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+        }
+        names[id] = aName;
+        // publishes the name before its id can be read
+        mNames = names;
+        mSize++;
+        mIds.put(aName, Integer.valueOf(id));
+        return id;
+    }
+}
@@ -18,8 +18,8 @@
 ////////////////////////////////////////////////////////////////////////////////
 package com.puppycrawl.tools.checkstyle;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.puppycrawl.tools.checkstyle.api.AbstractFileSetCheck;
 import com.puppycrawl.tools.checkstyle.api.Check;
@@ -30,38 +30,118 @@ import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import com.puppycrawl.tools.checkstyle.api.FileContents;
 import com.puppycrawl.tools.checkstyle.api.FileText;
 import com.puppycrawl.tools.checkstyle.api.LocalizedMessage;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
 import com.puppycrawl.tools.checkstyle.api.TokenTypes;
 import com.puppycrawl.tools.checkstyle.api.Utils;
+import com.puppycrawl.tools.checkstyle.api.XmlStreamingCheck;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.stream.XMLStreamException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 
 /**
  * Responsible for walking an abstract syntax tree and notifying interested
  * checks at each each node.
  *
+ * When the <code>threads</code> property is greater than one, the checks
+ * are shared out between workers owning their own instances of them, each
+ * check always running on the same worker. A file is parsed once, its views
+ * and its Saxon tree being built once, and the workers walk this read-only
+ * tree concurrently, each one running its share of the checks. The
+ * messages of the file are gathered before it is reported, so that they
+ * come within its own events, in file order.
+ *
+ * When the <code>streaming</code> property is set and every check
+ * implements {@link XmlStreamingCheck}, no AST is built: the parser events
+ * are forwarded to the checks.
+ *
+ * A check whose configuration sets <code>rootElement</code>,
+ * <code>rootNamespace</code> or <code>files</code> is only notified of the
+ * documents it applies to, see {@link XmlCheckFilter}. The root element is
+ * read from the prolog before the document is parsed, and a file to which
+ * no check applies is not parsed at all.
+ *
+ * Only the nodes of the token types the checks subscribe to are built,
+ * with the elements holding them, see {@link XmlContentHandler}: a walker
+ * whose checks only subscribe to <code>DOCUMENT</code> builds no element.
+ *
  * @author Yoann Ciabaud<y.ciabaud@gmail.com>
  * @see TreeWalker
  */
 public class XmlTreeWalker extends AbstractFileSetCheck {
 
-    /** Maps from token name to checks */
-    private final Multimap<String, Check> mTokenToChecks =
-        HashMultimap.create();
-    /** All the registered checks */
-    private final Set<Check> mAllChecks = Sets.newHashSet();
+    /** The registered checks */
+    private final Route mChecks = new Route();
+    /** The checks applying to the current file */
+    private Route mRoute = mChecks;
+    /** Dispatch of the subsets of the checks, by applying checks */
+    private final Map<BitSet, Route> mRoutes = Maps.newHashMap();
+    /** Applicability filters of the checks, in registration order */
+    private final List<XmlCheckFilter> mFilters = Lists.newArrayList();
+    /** Whether a check has a filter */
+    private boolean mFiltered;
+    /** Whether a check is filtered on the root of the documents */
+    private boolean mSniffing;
+    /** Reads the root of the documents */
+    private final XmlRootSniffer mSniffer = new XmlRootSniffer();
+
+    /** Whether the AST may be skipped for streaming checks */
+    private boolean mStreaming;
+
+    /** Whether whitespace-only text may be left out of the AST */
+    private boolean mDropWhitespace;
+
+    /** Whether the external DTDs and entities of the documents are read */
+    private boolean mExternalEntities = true;
+
+    /** Size from which files are only streamed, 0 if none */
+    private long mLargeFileThreshold;
+
+    /** Names of the path at which documents are split, null if none */
+    private String[] mShardPath;
+
+    /** Maximum number of records per shard */
+    private int mShardSize = DEFAULT_SHARD_SIZE;
+
+    /** Results of the shards of the current document */
+    private final XmlShardResults mShardResults = new XmlShardResults();
+
+    /** Handler reused for every file parsed by this walker */
+    private XmlContentHandler mContentHandler;
+
+    /**
+     * Names of the documents of the current run, shared with the workers
+     * and the checks. A new table is used for each run, so that a walker
+     * kept between runs does not accumulate the names of all the documents
+     * it has ever seen.
+     */
+    private XmlSymbolTable mSymbols = new XmlSymbolTable();
+
+    /** Streamable expressions of the checks, shared with the workers */
+    private XmlPathAutomaton mPathAutomaton = new XmlPathAutomaton();
 
     /** A factory for creating submodules (i.e. the Checks) */
     private ModuleFactory mModuleFactory;
@@ -75,8 +155,64 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
      */
     private final boolean mRecursive;
 	
-    /** Cache file **/
-    private PropertyCacheFile mCache = new PropertyCacheFile(null, null);
+    /** Cache of the files which passed the checks **/
+    private XmlContentCache mCache = new XmlContentCache("", null);
+
+    /** Saxon tree of the current file, shared by the expression checks */
+    private final XmlDocumentService mDocumentService =
+        new XmlDocumentService();
+
+    /**
+     * Configurations the checks were configured with, once stripped of their
+     * filter, used to set up the workers. The workers share them so that the
+     * shard results, keyed by configuration, add up across the copies of a
+     * check.
+     */
+    private final List<Configuration> mChildConfigurations =
+        Lists.newArrayList();
+
+    /** Number of threads processing the files */
+    private int mThreads = 1;
+
+    /** Executes the file tasks in parallel mode */
+    private ExecutorService mExecutor;
+
+    /** Idle workers, each one owning its own checks */
+    private BlockingQueue<XmlTreeWalker> mWorkers;
+
+    /** The workers, in the order of their shares of the checks */
+    private List<XmlTreeWalker> mWorkerList;
+
+    /** Checks run by each worker, the check i going to the worker i % n */
+    private List<BitSet> mShares;
+
+    /** Bounds the number of tasks submitted but not yet processed */
+    private Semaphore mSubmitted;
+
+    /** Whether the walker reports a timing profile when destroyed */
+    private boolean mProfiling;
+
+    /** File receiving the profile in CSV, null if none */
+    private String mProfileFile;
+
+    /** Number of checks and files listed by the profile report */
+    private int mProfileTop = DEFAULT_PROFILE_TOP;
+
+    /** Time and allocations of the run, null unless profiling */
+    private XmlProfile mProfile;
+
+    /** Labels of the checks in the profile */
+    private final Map<Check, String> mCheckLabels = Maps.newHashMap();
+
+    /** Bundle of the messages of the walker */
+    private static final String MESSAGE_BUNDLE =
+        "com.puppycrawl.tools.checkstyle.checks.messages";
+
+    /** Default maximum number of records per shard */
+    private static final int DEFAULT_SHARD_SIZE = 1000;
+
+    /** Default number of checks and files listed by the profile report */
+    private static final int DEFAULT_PROFILE_TOP = 10;
 
     /** Logger for debug purpose */
     private static final Log LOG =
@@ -102,31 +238,166 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
         }
     }
 	
-    /** @param aFileName the cache file */
+    /**
+     * Sets the file caching the hashes of the files which passed the
+     * checks. The cache is invalidated when the configuration of the
+     * walker or of its checks changes.
+     * @param aFileName the cache file
+     */
     public void setCacheFile(String aFileName)
     {
         final Configuration configuration = getConfiguration();
-        mCache = new PropertyCacheFile(configuration, aFileName);
+        mCache = new XmlContentCache(XmlContentCache.fingerprint(
+            configuration, "cacheFile", "threads", "profile", "profileFile",
+            "profileTop"), aFileName);
+    }
+
+    /**
+     * Sets the number of threads processing the files, files being
+     * processed on the caller thread when lower than two.
+     * @param aThreads the number of threads
+     */
+    public void setThreads(int aThreads)
+    {
+        mThreads = aThreads;
+    }
+
+    /**
+     * Sets whether parser events are forwarded to the checks instead of
+     * walking an AST, which requires every check to be a streaming one.
+     * @param aStreaming true to stream the documents
+     */
+    public void setStreaming(boolean aStreaming)
+    {
+        mStreaming = aStreaming;
+    }
+
+    /**
+     * Sets the size from which files are handled without building an AST:
+     * only the streaming checks are run on them, the other checks being
+     * reported as skipped.
+     * @param aBytes the size in bytes, 0 or less to build every AST
+     */
+    public void setLargeFileThreshold(long aBytes)
+    {
+        mLargeFileThreshold = aBytes;
+    }
+
+    /**
+     * Sets the path of the records at which documents are split into
+     * shards checked concurrently, such as <code>/export/record</code>.
+     * @param aPath the absolute path of the records
+     */
+    public void setShardElement(String aPath)
+    {
+        mShardPath = XmlShardSplitter.parsePath(aPath);
+    }
+
+    /**
+     * Sets the maximum number of records per shard.
+     * @param aSize the number of records
+     */
+    public void setShardSize(int aSize)
+    {
+        mShardSize = aSize;
+    }
+
+    /**
+     * Sets whether whitespace-only text is left out of the AST, only being
+     * counted, when no check subscribes to text nodes.
+     * @param aDropWhitespace true to drop whitespace-only text
+     */
+    public void setDropWhitespace(boolean aDropWhitespace)
+    {
+        mDropWhitespace = aDropWhitespace;
+    }
+
+    /**
+     * Sets whether the external DTDs and the external entities of the
+     * documents are read, expanding their entities and adding their default
+     * attributes. They are read by default, false opting into a parser
+     * which never reads them, faster and safe against hostile documents.
+     * @param aExternalEntities true to read the external DTDs and entities
+     */
+    public void setExternalEntities(boolean aExternalEntities)
+    {
+        mExternalEntities = aExternalEntities;
+        mSniffer.setExternalEntities(aExternalEntities);
+        mDocumentService.setExternalEntities(aExternalEntities);
+    }
+
+    /**
+     * Sets whether the time and bytes allocated by the parsing and by each
+     * check are measured and reported at the end of the run.
+     * @param aProfiling true to profile the run
+     */
+    public void setProfile(boolean aProfiling)
+    {
+        mProfiling = aProfiling;
+    }
+
+    /**
+     * Sets the file receiving the profile in CSV, which enables profiling.
+     * @param aFileName the profile file
+     */
+    public void setProfileFile(String aFileName)
+    {
+        mProfileFile = aFileName;
+        mProfiling = true;
+    }
+
+    /**
+     * Sets the number of checks and files listed by the profile report.
+     * @param aTop the number of slowest checks and files to list
+     */
+    public void setProfileTop(int aTop)
+    {
+        mProfileTop = aTop;
     }
 
     /** {@inheritDoc} */
     @Override
     public void finishLocalSetup()
+    {
+        if (mProfiling) {
+            mProfile = new XmlProfile();
+        }
+        mChildContext = createChildContext();
+    }
+
+    /** @return the context of the checks */
+    private Context createChildContext()
     {
         final DefaultContext checkContext = new DefaultContext();
         checkContext.add("messages", getMessageCollector());
         checkContext.add("severity", getSeverity());
-
-        mChildContext = checkContext;
+        checkContext.add("documentService", mDocumentService);
+        checkContext.add("symbolTable", mSymbols);
+        checkContext.add("pathAutomaton", mPathAutomaton);
+        return checkContext;
     }
 
     /** {@inheritDoc} */
     @Override
     public void setupChild(Configuration aChildConf)
         throws CheckstyleException
+    {
+        final XmlCheckFilter filter = XmlCheckFilter.create(aChildConf);
+        setupCheck((filter == null)
+            ? aChildConf : XmlCheckFilter.strip(aChildConf), filter);
+    }
+
+    /**
+     * Creates and registers a check.
+     * @param aCheckConf the configuration of the check, without its filter
+     * @param aFilter the filter of the check, null if it applies to any file
+     * @throws CheckstyleException if the check cannot be set up
+     */
+    private void setupCheck(Configuration aCheckConf, XmlCheckFilter aFilter)
+        throws CheckstyleException
     {
         // TODO: improve the error handing
-        final String name = aChildConf.getName();
+        final String name = aCheckConf.getName();
         final Object module = mModuleFactory.createModule(name);
         if (!(module instanceof Check)) {
             throw new CheckstyleException(
@@ -134,10 +405,48 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
         }
         final Check c = (Check) module;
         c.contextualize(mChildContext);
-        c.configure(aChildConf);
+        c.configure(aCheckConf);
         c.init();
 
         registerCheck(c);
+        mFilters.add(aFilter);
+        mFiltered |= (aFilter != null);
+        mSniffing |= (aFilter != null) && aFilter.needsRoot();
+        mChildConfigurations.add(aCheckConf);
+        mCheckLabels.put(c, createLabel(aCheckConf));
+    }
+
+    /**
+     * Builds the label of a check in the profile from its unqualified module
+     * name and its id or expression, a suffix telling apart identical checks.
+     * @param aConf the configuration of the check
+     * @return a label unique in this walker
+     */
+    private String createLabel(Configuration aConf)
+    {
+        final String name = aConf.getName();
+        final StringBuilder buf =
+            new StringBuilder(name.substring(name.lastIndexOf('.') + 1));
+        final List<String> attributes =
+            Arrays.asList(aConf.getAttributeNames());
+        try {
+            if (attributes.contains("id")) {
+                buf.append('[').append(aConf.getAttribute("id")).append(']');
+            }
+            else if (attributes.contains("expression")) {
+                buf.append('[').append(aConf.getAttribute("expression"))
+                    .append(']');
+            }
+        }
+        catch (final CheckstyleException ex) {
+            // the attribute was listed, cannot happen
+        }
+        final String label = buf.toString();
+        String unique = label;
+        for (int i = 2; mCheckLabels.containsValue(unique); i++) {
+            unique = label + " #" + i;
+        }
+        return unique;
     }
 
 	
@@ -150,44 +459,564 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
         mModuleFactory = aModuleFactory;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void beginProcessing(String aCharset)
+    {
+        super.beginProcessing(aCharset);
+        if (mSymbols.getSize() > 0) {
+            useSymbols(new XmlSymbolTable());
+        }
+        if (mStreaming && !useStreaming()) {
+            LOG.warn("XmlTreeWalker builds the AST: not all of its checks"
+                + " support streaming");
+        }
+        if ((mThreads > 1) && (mExecutor == null)) {
+            startWorkers();
+        }
+    }
+
+    /**
+     * Makes this walker, its workers and their checks use a new symbol
+     * table.
+     * @param aSymbols the symbol table
+     */
+    private void useSymbols(XmlSymbolTable aSymbols)
+    {
+        mSymbols = aSymbols;
+        mContentHandler = null;
+        final DefaultContext context = new DefaultContext();
+        context.add("symbolTable", aSymbols);
+        try {
+            for (Check ch : mChecks.mAllChecks) {
+                ch.contextualize(context);
+            }
+        }
+        catch (final CheckstyleException ex) {
+            throw new IllegalStateException(
+                "Unable to set the symbol table of the checks", ex);
+        }
+        mChildContext = createChildContext();
+        if (mWorkerList != null) {
+            for (XmlTreeWalker worker : mWorkerList) {
+                worker.useSymbols(aSymbols);
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void processFiltered(File aFile, List<String> aLines)
     {
-        // check if already checked and passed the file
-        final String fileName = aFile.getPath();
-        final long timestamp = aFile.lastModified();
-        if (mCache.alreadyChecked(fileName, timestamp)) {
+        // check if already checked and passed the same contents
+        final String hash = mCache.hash(aFile);
+        if (mCache.alreadyChecked(hash)) {
+            return;
+        }
+
+        final BitSet checks = selectChecks(aFile);
+        if ((checks != null) && checks.isEmpty()) {
+            // no check applies to the file
+            return;
+        }
+        useRoute(checks);
+
+        if ((mShardPath != null) && processShards(aFile, aLines, checks)) {
+            if (getMessageCollector().size() == 0) {
+                mCache.checkedOk(hash, aFile.length());
+            }
             return;
         }
 
+        processFile(aFile, aLines, checks);
+
+        if (getMessageCollector().size() == 0) {
+            mCache.checkedOk(hash, aFile.length());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void finishProcessing()
+    {
+        // stored after each audit, not only when the walker is destroyed
+        mCache.store();
+        super.finishProcessing();
+    }
+
+    /**
+     * Parses and walks a file, logging an error if this fails. With
+     * workers, the file is parsed by the calling thread and the workers run
+     * the checks.
+     * @param aFile the file to process
+     * @param aLines the lines of the file
+     * @param aChecks the checks applying to the file, null for all
+     */
+    private void processFile(File aFile, List<String> aLines, BitSet aChecks)
+    {
+        final long startNanos = (mProfile != null) ? System.nanoTime() : 0;
+        final long startBytes =
+            (mProfile != null) ? mProfile.allocatedBytes() : 0;
+        InputSource document = null;
         try {
             final FileText text = FileText.fromLines(aFile, aLines);
             final FileContents contents = new FileContents(text);
               
-            final String fullText = contents.getText().getFullText().toString();
-            InputSource document = new InputSource();
-            document.setCharacterStream(new StringReader(fullText));
+            document = XmlFileSource.open(text);
             
-            final DetailAST rootAST = XmlTreeWalker.parse(document, aFile);
-            walk(rootAST, contents);
+            if (useStreaming() || isLarge(aFile)) {
+                stream(document, aFile, contents, aChecks);
+                if (mProfile != null) {
+                    mProfile.record(XmlProfile.Phase.PARSE, startNanos,
+                        startBytes);
+                }
+            }
+            else {
+                final XmlDocument nodes = parseDocument(document,
+                    recycleHandler(aFile, contents, true), mExternalEntities);
+                if (mProfile != null) {
+                    mProfile.record(XmlProfile.Phase.PARSE, startNanos,
+                        startBytes);
+                    mProfile.recordInput(aFile.length());
+                }
+                if (mExecutor == null) {
+                    walk(nodes, contents);
+                }
+                else {
+                    walkOnWorkers(nodes, contents, aChecks);
+                }
+            }
         }
         catch (final Throwable err) {
             err.printStackTrace();
             Utils.getExceptionLogger().debug("Throwable occured.", err);
-            getMessageCollector().add(
-                new LocalizedMessage(
+            getMessageCollector().add(createExceptionMessage(err));
+        }
+        finally {
+            XmlFileSource.close(document);
+            if (mProfile != null) {
+                mProfile.recordFile(aFile.getPath(), startNanos, startBytes);
+            }
+        }
+    }
+
+    /**
+     * Splits a document into shards of records and the remainder, checks
+     * them with the workers, or in turn without workers, and gathers
+     * their messages with the violations of the rules over the whole
+     * document.
+     * @param aFile the file to process
+     * @param aLines the lines of the file
+     * @param aChecks the checks applying to the file, null for all
+     * @return false if the document has a single shard of records and
+     *         should be processed as a whole
+     */
+    private boolean processShards(File aFile, List<String> aLines,
+        BitSet aChecks)
+    {
+        final XmlShardSplitter splitter =
+            new XmlShardSplitter(mShardPath, aLines, mShardSize);
+        InputSource source = null;
+        XMLReader reader = null;
+        try {
+            reader = XmlReaderPool.acquire(mExternalEntities);
+            source = XmlFileSource.open(aFile);
+            reader.setContentHandler(splitter);
+            reader.parse(source);
+        }
+        catch (final Exception ex) {
+            // the error is reported when processing the whole document
+            LOG.debug("Unable to split " + aFile, ex);
+            return false;
+        }
+        finally {
+            XmlReaderPool.release(reader);
+            XmlFileSource.close(source);
+        }
+        final List<XmlShard> shards = splitter.getShards();
+        if (shards.size() <= 2) {
+            return false;
+        }
+
+        final FileContents contents =
+            new FileContents(FileText.fromLines(aFile, aLines));
+        final TreeSet<LocalizedMessage> messages = Sets.newTreeSet();
+        mShardResults.clear();
+        if (mExecutor == null) {
+            for (XmlShard shard : shards) {
+                messages.addAll(
+                    processShard(aFile, contents, shard, mShardResults));
+            }
+        }
+        else {
+            final List<Future<TreeSet<LocalizedMessage>>> results =
+                Lists.newArrayList();
+            for (XmlShard shard : shards) {
+                results.add(submitShard(aFile, contents, shard, aChecks));
+            }
+            messages.addAll(collect(results));
+        }
+
+        getMessageCollector().reset();
+        for (Check ch : mRoute.mAllChecks) {
+            if (ch instanceof XmlShardedCheck) {
+                ch.setFileContents(contents);
+                ((XmlShardedCheck) ch).finishShards(mShardResults);
+            }
+        }
+        mShardResults.clear();
+        for (LocalizedMessage message : messages) {
+            getMessageCollector().add(message);
+        }
+        return true;
+    }
+
+    /**
+     * Submits a shard to the workers, waiting if too many shards or files
+     * are already queued.
+     * @param aFile the file of the document
+     * @param aContents the contents of the document
+     * @param aShard the shard
+     * @param aChecks the checks applying to the document, null for all
+     * @return the messages of the shard, once checked
+     */
+    private Future<TreeSet<LocalizedMessage>> submitShard(final File aFile,
+        final FileContents aContents, final XmlShard aShard,
+        final BitSet aChecks)
+    {
+        mSubmitted.acquireUninterruptibly();
+        try {
+            return mExecutor.submit(
+                new Callable<TreeSet<LocalizedMessage>>() {
+                    public TreeSet<LocalizedMessage> call()
+                        throws InterruptedException
+                    {
+                        final XmlTreeWalker worker = mWorkers.take();
+                        try {
+                            worker.useRoute(aChecks);
+                            return worker.processShard(aFile, aContents,
+                                aShard, mShardResults);
+                        }
+                        finally {
+                            mWorkers.add(worker);
+                            mSubmitted.release();
+                        }
+                    }
+                });
+        }
+        catch (final RejectedExecutionException ex) {
+            mSubmitted.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Parses and walks a shard, the rules over the whole document adding
+     * their counts to the results of the shards.
+     * @param aFile the file of the document
+     * @param aContents the contents of the document
+     * @param aShard the shard
+     * @param aResults the results of the shards of the document
+     * @return the messages of the shard
+     */
+    private TreeSet<LocalizedMessage> processShard(File aFile,
+        FileContents aContents, XmlShard aShard, XmlShardResults aResults)
+    {
+        getMessageCollector().reset();
+        mDocumentService.beginShard(aShard, aResults);
+        XMLReader reader = null;
+        try {
+            reader = XmlReaderPool.acquire(mExternalEntities);
+            final XmlContentHandler handler =
+                recycleHandler(aFile, aContents, false);
+            final XMLReader filter = aShard.createFilter(reader);
+            filter.setContentHandler(handler);
+            filter.parse(aShard.createSource(aFile));
+            walk(handler.getDocument(), aContents);
+        }
+        catch (final Throwable err) {
+            Utils.getExceptionLogger().debug("Throwable occured.", err);
+            getMessageCollector().add(createExceptionMessage(err));
+        }
+        finally {
+            XmlReaderPool.release(reader);
+            mDocumentService.endShard();
+        }
+        return Sets.newTreeSet(getMessageCollector().getMessages());
+    }
+
+    /**
+     * Finds the checks applying to a file from their filters, reading the
+     * root of the document if a check is filtered on it. The root is
+     * deemed to match when it cannot be read, so that the error is
+     * reported by the parse of the document.
+     * @param aFile the file
+     * @return the indexes of the checks applying to the file in
+     *         registration order, null if no check is filtered
+     */
+    private BitSet selectChecks(File aFile)
+    {
+        if (!mFiltered) {
+            return null;
+        }
+        final XmlRootSniffer root =
+            (mSniffing && mSniffer.sniff(aFile)) ? mSniffer : null;
+        final BitSet checks = new BitSet(mFilters.size());
+        for (int i = 0; i < mFilters.size(); i++) {
+            final XmlCheckFilter filter = mFilters.get(i);
+            if ((filter == null) || filter.accepts(aFile, root)) {
+                checks.set(i);
+            }
+        }
+        return (checks.cardinality() == mFilters.size()) ? null : checks;
+    }
+
+    /**
+     * Dispatches the next files to some of the checks, the dispatch of
+     * each subset being built once.
+     * @param aChecks the indexes of the checks in registration order, null
+     *        for all
+     */
+    private void useRoute(BitSet aChecks)
+    {
+        if (aChecks == null) {
+            mRoute = mChecks;
+            return;
+        }
+        mRoute = mRoutes.get(aChecks);
+        if (mRoute == null) {
+            final Set<Check> checks = Sets.newHashSet();
+            int i = 0;
+            for (Check ch : mChecks.mAllChecks) {
+                if (aChecks.get(i++)) {
+                    checks.add(ch);
+                }
+            }
+            mRoute = new Route(mChecks, checks);
+            mRoutes.put(aChecks, mRoute);
+        }
+    }
+
+    /**
+     * @param aFile a file
+     * @return true if the file is too large for its AST to be built
+     */
+    private boolean isLarge(File aFile)
+    {
+        return (mLargeFileThreshold > 0)
+            && (aFile.length() > mLargeFileThreshold);
+    }
+
+    /**
+     * Reports the checks which cannot be run on a file too large for its
+     * AST to be built.
+     * @param aFile the file
+     */
+    private void reportSkippedChecks(File aFile)
+    {
+        for (Check ch : mRoute.mAllChecks) {
+            if (!(ch instanceof XmlStreamingCheck)) {
+                getMessageCollector().add(new LocalizedMessage(
                     0,
-                    Defn.CHECKSTYLE_BUNDLE,
-                    "general.exception",
-                    new String[] {"" + err},
+                    MESSAGE_BUNDLE,
+                    "xml.tooLarge",
+                    new Object[] {mCheckLabels.get(ch), aFile.length(),
+                        mLargeFileThreshold},
+                    SeverityLevel.WARNING,
                     getId(),
                     this.getClass(), null));
+            }
         }
+    }
 
-        if (getMessageCollector().size() == 0) {
-            mCache.checkedOk(fileName, timestamp);
+    /**
+     * Creates the message reporting an unexpected error.
+     * @param aErr the error
+     * @return the message
+     */
+    private LocalizedMessage createExceptionMessage(Throwable aErr)
+    {
+        return new LocalizedMessage(
+            0,
+            Defn.CHECKSTYLE_BUNDLE,
+            "general.exception",
+            new String[] {"" + aErr},
+            getId(),
+            this.getClass(), null);
+    }
+
+    /**
+     * Creates the executor and the workers of the parallel mode. The walker
+     * falls back to sequential processing if the workers cannot be set up.
+     */
+    private void startWorkers()
+    {
+        final List<XmlTreeWalker> workers = Lists.newArrayList();
+        try {
+            for (int i = 0; i < mThreads; i++) {
+                workers.add(createWorker());
+            }
+        }
+        catch (final CheckstyleException ex) {
+            Utils.getExceptionLogger().debug(
+                "Unable to set up the workers, processing sequentially.", ex);
+            return;
+        }
+        mWorkerList = workers;
+        mWorkers = new ArrayBlockingQueue<XmlTreeWalker>(mThreads, false,
+            workers);
+        mShares = Lists.newArrayList();
+        for (int i = 0; i < mThreads; i++) {
+            mShares.add(new BitSet(mChildConfigurations.size()));
+        }
+        for (int i = 0; i < mChildConfigurations.size(); i++) {
+            mShares.get(i % mThreads).set(i);
+        }
+        mSubmitted = new Semaphore(2 * mThreads);
+        mExecutor = Executors.newFixedThreadPool(mThreads,
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                public Thread newThread(Runnable aRunnable)
+                {
+                    final Thread thread = new Thread(aRunnable,
+                        "XmlTreeWalker-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        LOG.debug("XmlTreeWalker uses " + mThreads + " threads");
+    }
+
+    /**
+     * Creates a sequential walker configured with the same checks.
+     * @return the worker
+     * @throws CheckstyleException if a check cannot be set up
+     */
+    private XmlTreeWalker createWorker() throws CheckstyleException
+    {
+        final XmlTreeWalker worker = new XmlTreeWalker();
+        worker.setId(getId());
+        worker.setSeverity(getSeverity());
+        worker.setModuleFactory(mModuleFactory);
+        worker.setStreaming(mStreaming);
+        worker.setDropWhitespace(mDropWhitespace);
+        worker.setExternalEntities(mExternalEntities);
+        worker.setLargeFileThreshold(mLargeFileThreshold);
+        worker.mSymbols = mSymbols;
+        worker.mPathAutomaton = mPathAutomaton;
+        worker.mDocumentService.setShared(mDocumentService);
+        worker.finishLocalSetup();
+        if (mProfile != null) {
+            worker.mProfile = new XmlProfile();
+        }
+        for (int i = 0; i < mChildConfigurations.size(); i++) {
+            worker.setupCheck(mChildConfigurations.get(i), mFilters.get(i));
+        }
+        return worker;
+    }
+
+    /**
+     * Gives the checks a worker runs on a file.
+     * @param aWorker the index of the worker
+     * @param aChecks the checks applying to the file, null for all
+     * @return the checks of the worker applying to the file
+     */
+    private BitSet getShare(int aWorker, BitSet aChecks)
+    {
+        final BitSet share = (BitSet) mShares.get(aWorker).clone();
+        if (aChecks != null) {
+            share.and(aChecks);
+        }
+        return share;
+    }
+
+    /**
+     * Walks a parsed document with the workers, each one running its share
+     * of the checks, and gathers their messages. The views of the nodes are
+     * created beforehand and the Saxon tree is built once by the document
+     * service of this walker, so the workers only read the document.
+     * @param aDocument the nodes of the document
+     * @param aContents the contents of the file
+     * @param aChecks the checks applying to the file, null for all
+     */
+    private void walkOnWorkers(final XmlDocument aDocument,
+        final FileContents aContents, BitSet aChecks)
+    {
+        aDocument.createViews();
+        final List<Future<TreeSet<LocalizedMessage>>> results =
+            Lists.newArrayList();
+        try {
+            for (int i = 0; i < mThreads; i++) {
+                final BitSet share = getShare(i, aChecks);
+                if (share.isEmpty()) {
+                    continue;
+                }
+                final XmlTreeWalker worker = mWorkerList.get(i);
+                results.add(mExecutor.submit(
+                    new Callable<TreeSet<LocalizedMessage>>() {
+                        public TreeSet<LocalizedMessage> call()
+                        {
+                            return worker.walkShared(aDocument, aContents,
+                                share);
+                        }
+                    }));
+            }
+        }
+        finally {
+            for (LocalizedMessage message : collect(results)) {
+                getMessageCollector().add(message);
+            }
+            aDocument.releaseViews();
+            mDocumentService.release();
+        }
+    }
+
+    /**
+     * Walks a document shared with other workers, leaving its views.
+     * @param aDocument the nodes of the document
+     * @param aContents the contents of the file
+     * @param aChecks the checks to run
+     * @return the messages of the checks
+     */
+    private TreeSet<LocalizedMessage> walkShared(XmlDocument aDocument,
+        FileContents aContents, BitSet aChecks)
+    {
+        useRoute(aChecks);
+        getMessageCollector().reset();
+        try {
+            walkTree(aDocument, aContents);
+        }
+        catch (final Throwable err) {
+            Utils.getExceptionLogger().debug("Throwable occured.", err);
+            getMessageCollector().add(createExceptionMessage(err));
+        }
+        return Sets.newTreeSet(getMessageCollector().getMessages());
+    }
+
+    /**
+     * Waits for tasks of the workers and gathers their messages, a failed
+     * task being reported by a message.
+     * @param aResults the messages of the tasks
+     * @return the messages of all the tasks
+     */
+    private TreeSet<LocalizedMessage> collect(
+        List<Future<TreeSet<LocalizedMessage>>> aResults)
+    {
+        final TreeSet<LocalizedMessage> messages = Sets.newTreeSet();
+        for (Future<TreeSet<LocalizedMessage>> result : aResults) {
+            try {
+                messages.addAll(result.get());
+            }
+            catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                messages.add(createExceptionMessage(ex));
+            }
+            catch (final ExecutionException ex) {
+                messages.add(createExceptionMessage(ex.getCause()));
+            }
         }
+        return messages;
     }
 
     /**
@@ -210,7 +1039,7 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
                 try {
                     final int tokenId = TokenTypes.getTokenId(token);
                     if (Arrays.binarySearch(acceptableTokens, tokenId) >= 0) {
-                        registerCheck(token, aCheck);
+                        registerCheck(tokenId, aCheck);
                     }
                     // TODO: else log warning
                 }
@@ -226,7 +1055,34 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
         for (int element : tokens) {
             registerCheck(element, aCheck);
         }
-        mAllChecks.add(aCheck);
+        mChecks.mAllChecks.add(aCheck);
+        if (overrides(aCheck, "beginTree")) {
+            mChecks.mBeginTreeChecks.add(aCheck);
+        }
+        if (overrides(aCheck, "finishTree")) {
+            mChecks.mFinishTreeChecks.add(aCheck);
+        }
+        if (aCheck instanceof XmlStreamingCheck) {
+            mChecks.mStreamingChecks.add((XmlStreamingCheck) aCheck);
+        }
+    }
+
+    /**
+     * Tells whether a check overrides one of the tree notifications of
+     * {@link Check}, which do nothing.
+     * @param aCheck the check
+     * @param aMethod the name of the notification
+     * @return true unless the method is the one of {@link Check}
+     */
+    private static boolean overrides(Check aCheck, String aMethod)
+    {
+        try {
+            return aCheck.getClass().getMethod(aMethod, DetailAST.class)
+                .getDeclaringClass() != Check.class;
+        }
+        catch (final NoSuchMethodException ex) {
+            return true;
+        }
     }
 
     /**
@@ -236,121 +1092,329 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
      */
     private void registerCheck(int aTokenID, Check aCheck)
     {
-        registerCheck(TokenTypes.getTokenName(aTokenID), aCheck);
+        if (aTokenID >= mChecks.mTokenToChecks.length) {
+            mChecks.mTokenToChecks =
+                Arrays.copyOf(mChecks.mTokenToChecks, aTokenID + 1);
+        }
+        final Check[] visitors = mChecks.mTokenToChecks[aTokenID];
+        if (visitors == null) {
+            mChecks.mTokenToChecks[aTokenID] = new Check[] {aCheck};
+            mChecks.mSubscribedTypes = null;
+        }
+        else if (!Arrays.asList(visitors).contains(aCheck)) {
+            final Check[] newVisitors =
+                Arrays.copyOf(visitors, visitors.length + 1);
+            newVisitors[visitors.length] = aCheck;
+            mChecks.mTokenToChecks[aTokenID] = newVisitors;
+        }
     }
 
     /**
-     * Register a check for a specified token name
-     * @param aToken the name of the token
-     * @param aCheck the check to register
+     * Initiates the walk of a document. Package visible for the benchmarks.
+     * @param aDocument the nodes of the document
+     * @param aContents the contents of the file the AST was generated from
      */
-    private void registerCheck(String aToken, Check aCheck)
+    void walk(XmlDocument aDocument, FileContents aContents)
+        throws CheckstyleException
     {
-        mTokenToChecks.put(aToken, aCheck);
+        walkTree(aDocument, aContents);
+        aDocument.releaseViews();
     }
 
     /**
-     * Initiates the walk of an AST.
-     * @param aAST the root AST
+     * Walks a document, leaving the views of its nodes.
+     * @param aDocument the nodes of the document
      * @param aContents the contents of the file the AST was generated from
+     * @throws CheckstyleException if a check fails
      */
-    private void walk(DetailAST aAST, FileContents aContents) throws CheckstyleException
+    private void walkTree(XmlDocument aDocument, FileContents aContents)
+        throws CheckstyleException
     {
         getMessageCollector().reset();
-        notifyBegin(aAST, aContents);
+        notifyBegin(aDocument, aContents);
 
-        // empty files are not flagged by sax, will yield aAST == null
-        if (aAST != null) {
+        // empty files are not flagged by sax, will yield no root
+        final int root = aDocument.getRoot();
+        if (root != XmlDocument.NONE) {
             if (useRecursiveAlgorithm()) {
-                processRec(aAST);
+                processRec(aDocument, root);
             }
             else {
-                processIter(aAST);
+                processIter(aDocument, root);
             }
         }
 
-        notifyEnd(aAST);
+        notifyEnd(aDocument);
     }
 
+    /**
+     * Prepares the handler of this walker to parse a file, the arrays of
+     * the previous file being reused, and the streamable expressions of the
+     * checks to be evaluated along.
+     * @param aFile the file to parse
+     * @param aContents the contents of the file
+     * @param aStreamPaths whether the simple paths are evaluated
+     * @return the handler
+     */
+    private XmlContentHandler recycleHandler(File aFile,
+        FileContents aContents, boolean aStreamPaths)
+    {
+        if (mContentHandler == null) {
+            mContentHandler = new XmlContentHandler(aFile, mSymbols);
+        }
+        else {
+            mContentHandler.reset(aFile);
+        }
+        mContentHandler.setDropWhitespace(dropsWhitespace());
+        mContentHandler.setBuiltTypes(mRoute.getSubscribedTypes());
+        if (aStreamPaths && (mPathAutomaton.getSize() > 0)) {
+            mPathAutomaton.beginDocument(aContents);
+            mContentHandler.setPathAutomaton(mPathAutomaton);
+        }
+        return mContentHandler;
+    }
+
+    /**
+     * @return true if whitespace-only text is left out of the AST, which
+     *         requires that no check subscribes to text nodes
+     */
+    private boolean dropsWhitespace()
+    {
+        return mDropWhitespace
+            && !isSubscribed(XmlTokenTypes.PCDATA)
+            && !isSubscribed(XmlTokenTypes.WHITE_SPACE);
+    }
+
+    /**
+     * @param aType a token type
+     * @return true if a check subscribes to the token type
+     */
+    private boolean isSubscribed(int aType)
+    {
+        return (aType < mRoute.mTokenToChecks.length)
+            && (mRoute.mTokenToChecks[aType] != null);
+    }
+
+    /**
+     * @return true if the parser events are forwarded to the checks
+     *         instead of walking an AST
+     */
+    private boolean useStreaming()
+    {
+        return mStreaming && !mRoute.mAllChecks.isEmpty()
+            && (mRoute.mStreamingChecks.size()
+                == mRoute.mAllChecks.size());
+    }
 
     /**
-     * Notify interested checks that about to begin walking a tree.
-     * @param aRootAST the root of the tree
+     * Forwards the parser events of a document to the streaming checks,
+     * the other checks being reported as skipped. With workers, the
+     * document is parsed once by the calling thread for the checks of all
+     * the workers, which are idle meanwhile.
+     * @param aSource the document
+     * @param aFile the file of the document
+     * @param aContents the contents of the file
+     * @param aChecks the checks applying to the file, null for all
+     * @throws IOException if the document cannot be read
+     * @throws SAXException if the document is not well formed
+     */
+    private void stream(InputSource aSource, File aFile,
+        FileContents aContents, BitSet aChecks)
+        throws IOException, SAXException
+    {
+        final List<XmlStreamingCheck> checks = Lists.newArrayList();
+        final List<XmlTreeWalker> walkers = Lists.newArrayList();
+        if (mExecutor == null) {
+            walkers.add(this);
+        }
+        else {
+            for (int i = 0; i < mThreads; i++) {
+                final BitSet share = getShare(i, aChecks);
+                if (!share.isEmpty()) {
+                    final XmlTreeWalker worker = mWorkerList.get(i);
+                    worker.useRoute(share);
+                    walkers.add(worker);
+                }
+            }
+        }
+        for (XmlTreeWalker walker : walkers) {
+            checks.addAll(walker.prepareStreaming(aFile, aContents));
+        }
+        try {
+            if (!checks.isEmpty()) {
+                final XMLReader reader =
+                    XmlReaderPool.acquire(mExternalEntities);
+                try {
+                    reader.setContentHandler(new XmlStreamingHandler(aFile,
+                        checks.toArray(new XmlStreamingCheck[checks.size()])));
+                    reader.parse(aSource);
+                }
+                finally {
+                    XmlReaderPool.release(reader);
+                }
+            }
+        }
+        finally {
+            if (mExecutor != null) {
+                for (XmlTreeWalker worker : walkers) {
+                    for (LocalizedMessage message
+                        : worker.getMessageCollector().getMessages())
+                    {
+                        getMessageCollector().add(message);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepares the checks of the current route to receive the parser events
+     * of a document, reporting the checks which cannot.
+     * @param aFile the file of the document
+     * @param aContents the contents of the file
+     * @return the streaming checks
+     */
+    private List<XmlStreamingCheck> prepareStreaming(File aFile,
+        FileContents aContents)
+    {
+        getMessageCollector().reset();
+        for (Check ch : mRoute.mAllChecks) {
+            ch.setFileContents(aContents);
+        }
+        if (mRoute.mStreamingChecks.size() < mRoute.mAllChecks.size()) {
+            reportSkippedChecks(aFile);
+        }
+        return mRoute.mStreamingChecks;
+    }
+
+    /**
+     * Notify interested checks that about to begin walking a tree. Only the
+     * checks overriding <code>beginTree</code> are called, so that the views
+     * are not created for checks which would ignore the root.
+     * @param aDocument the nodes of the document
      * @param aContents the contents of the file the AST was generated from
      */
-    private void notifyBegin(DetailAST aRootAST, FileContents aContents) throws CheckstyleException
+    private void notifyBegin(XmlDocument aDocument, FileContents aContents)
+        throws CheckstyleException
     {
-        for (Check ch : mAllChecks) {
+        for (Check ch : mRoute.mAllChecks) {
             ch.setFileContents(aContents);
-            ch.beginTree(aRootAST);
+        }
+        if (mRoute.mBeginTreeChecks.isEmpty()) {
+            return;
+        }
+        final DetailAST rootAST = getRootAST(aDocument);
+        if (mProfile != null) {
+            profiledDispatch(mRoute.mBeginTreeChecks,
+                XmlProfile.Phase.BEGIN_TREE, rootAST);
+            return;
+        }
+        for (Check ch : mRoute.mBeginTreeChecks) {
+            ch.beginTree(rootAST);
         }
     }
 
     /**
-     * Notify checks that finished walking a tree.
-     * @param aRootAST the root of the tree
+     * Notify checks that finished walking a tree. Only the checks
+     * overriding <code>finishTree</code> are called.
+     * @param aDocument the nodes of the document
      */
-    private void notifyEnd(DetailAST aRootAST)
+    private void notifyEnd(XmlDocument aDocument)
     {
-        for (Check ch : mAllChecks) {
-            ch.finishTree(aRootAST);
+        if (!mRoute.mFinishTreeChecks.isEmpty()) {
+            final DetailAST rootAST = getRootAST(aDocument);
+            if (mProfile != null) {
+                profiledDispatch(mRoute.mFinishTreeChecks,
+                    XmlProfile.Phase.FINISH_TREE, rootAST);
+            }
+            else {
+                for (Check ch : mRoute.mFinishTreeChecks) {
+                    ch.finishTree(rootAST);
+                }
+            }
         }
+        mDocumentService.release();
+    }
+
+    /**
+     * @param aDocument the nodes of the document
+     * @return the view of the root, null if the document is empty
+     */
+    private static DetailAST getRootAST(XmlDocument aDocument)
+    {
+        final int root = aDocument.getRoot();
+        return (root == XmlDocument.NONE) ? null : aDocument.getAST(root);
     }
 
     /**
      * Recursively processes a node calling interested checks at each node.
      * Uses recursive algorithm.
-     * @param aAST the node to start from
+     * @param aDocument the nodes of the document
+     * @param aNode the node to start from
      */
-    private void processRec(DetailAST aAST)
+    private void processRec(XmlDocument aDocument, int aNode)
     {
-        if (aAST == null) {
-            return;
-        }
+        notifyVisit(aDocument, aNode);
 
-        notifyVisit(aAST);
-
-        final DetailAST child = aAST.getFirstChild();
-        if (child != null) {
-            processRec(child);
+        final int child = aDocument.getFirstChild(aNode);
+        if (child != XmlDocument.NONE) {
+            processRec(aDocument, child);
         }
 
-        notifyLeave(aAST);
+        notifyLeave(aDocument, aNode);
 
-        final DetailAST sibling = aAST.getNextSibling();
-        if (sibling != null) {
-            processRec(sibling);
+        final int sibling = aDocument.getNextSibling(aNode);
+        if (sibling != XmlDocument.NONE) {
+            processRec(aDocument, sibling);
         }
     }
 
     /**
      * Notify interested checks that visiting a node.
-     * @param aAST the node to notify for
+     * @param aDocument the nodes of the document
+     * @param aNode the node to notify for
      */
-    private void notifyVisit(DetailAST aAST)
+    private void notifyVisit(XmlDocument aDocument, int aNode)
     {
-        if(aAST.getType() != 0){
-            final Collection<Check> visitors =
-                mTokenToChecks.get(TokenTypes.getTokenName(aAST.getType()));
+        final int type = aDocument.getType(aNode);
+        if (type < mRoute.mTokenToChecks.length) {
+            final Check[] visitors = mRoute.mTokenToChecks[type];
+            if (visitors == null) {
+                return;
+            }
+            final DetailAST ast = aDocument.getAST(aNode);
+            if (mProfile != null) {
+                profiledDispatch(Arrays.asList(visitors),
+                    XmlProfile.Phase.VISIT, ast);
+                return;
+            }
             for (Check c : visitors) {
-                c.visitToken(aAST);
+                c.visitToken(ast);
             }
         }
     }
 
     /**
      * Notify interested checks that leaving a node.
-     *
-     * @param aAST
-     *                the node to notify for
+     * @param aDocument the nodes of the document
+     * @param aNode the node to notify for
      */
-    private void notifyLeave(DetailAST aAST)
+    private void notifyLeave(XmlDocument aDocument, int aNode)
     {
-        if(aAST.getType() != 0){
-            final Collection<Check> visitors =
-                mTokenToChecks.get(TokenTypes.getTokenName(aAST.getType()));
+        final int type = aDocument.getType(aNode);
+        if (type < mRoute.mTokenToChecks.length) {
+            final Check[] visitors = mRoute.mTokenToChecks[type];
+            if (visitors == null) {
+                return;
+            }
+            final DetailAST ast = aDocument.getAST(aNode);
+            if (mProfile != null) {
+                profiledDispatch(Arrays.asList(visitors),
+                    XmlProfile.Phase.LEAVE, ast);
+                return;
+            }
             for (Check ch : visitors) {
-                ch.leaveToken(aAST);
+                ch.leaveToken(ast);
             }
         }
     }
@@ -369,28 +1433,161 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
     public static DetailAST parse(InputSource source, File file)
         throws IOException, XMLStreamException, SAXException
     {
-       
-       
-        XMLReader reader = XMLReaderFactory.createXMLReader();
-        XmlContentHandler contentHandler = new XmlContentHandler(file);
-        reader.setContentHandler(contentHandler);
-        
-        reader.parse(source);
- 
-        return contentHandler.getAST();
+        final XmlDocument document = parseDocument(source, file);
+        final int root = document.getRoot();
+        return (root == XmlDocument.NONE) ? null : document.getAST(root);
+    }
+
+    /**
+     * Parses a document to its compact tree, without creating the views.
+     * @param aSource contains the contents of the file
+     * @param aFile the file of the document
+     * @return the nodes of the document
+     * @throws IOException if the document cannot be read
+     * @throws SAXException if the document is not well formed
+     */
+    public static XmlDocument parseDocument(InputSource aSource, File aFile)
+        throws IOException, SAXException
+    {
+        return parseDocument(aSource, aFile, false);
+    }
+
+    /**
+     * Parses a document to its compact tree, without creating the views.
+     * @param aSource contains the contents of the file
+     * @param aFile the file of the document
+     * @param aDropWhitespace whether whitespace-only text is left out
+     * @return the nodes of the document
+     * @throws IOException if the document cannot be read
+     * @throws SAXException if the document is not well formed
+     */
+    public static XmlDocument parseDocument(InputSource aSource, File aFile,
+        boolean aDropWhitespace) throws IOException, SAXException
+    {
+        final XmlContentHandler contentHandler = new XmlContentHandler(aFile);
+        contentHandler.setDropWhitespace(aDropWhitespace);
+        return parseDocument(aSource, contentHandler);
+    }
+
+    /**
+     * Parses a document with a given handler, which may be recycled.
+     * @param aSource contains the contents of the file
+     * @param aHandler the handler receiving the nodes
+     * @return the nodes of the document, owned by the handler
+     * @throws IOException if the document cannot be read
+     * @throws SAXException if the document is not well formed
+     */
+    static XmlDocument parseDocument(InputSource aSource,
+        XmlContentHandler aHandler) throws IOException, SAXException
+    {
+        return parseDocument(aSource, aHandler, true);
+    }
+
+    /**
+     * Parses a document with a given handler, which may be recycled.
+     * @param aSource contains the contents of the file
+     * @param aHandler the handler receiving the nodes
+     * @param aExternalEntities whether the external DTD and entities of
+     *        the document are read
+     * @return the nodes of the document, owned by the handler
+     * @throws IOException if the document cannot be read
+     * @throws SAXException if the document is not well formed
+     */
+    static XmlDocument parseDocument(InputSource aSource,
+        XmlContentHandler aHandler, boolean aExternalEntities)
+        throws IOException, SAXException
+    {
+        final XMLReader reader = XmlReaderPool.acquire(aExternalEntities);
+        try {
+            reader.setContentHandler(aHandler);
+
+            reader.parse(aSource);
+
+            return aHandler.getDocument();
+        }
+        finally {
+            XmlReaderPool.release(reader);
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void destroy()
     {
-        for (Check c : mAllChecks) {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            for (XmlTreeWalker worker : mWorkers) {
+                if (mProfile != null) {
+                    mProfile.merge(worker.mProfile);
+                }
+                worker.destroy();
+            }
+            mExecutor = null;
+            mWorkers = null;
+        }
+        for (Check c : mChecks.mAllChecks) {
             c.destroy();
         }
         mCache.destroy();
+        LOG.debug("Expression cache: " + XmlExpressionCache.getInstance());
+        LOG.debug("Content cache: " + mCache);
+        if (mProfiling && (mProfile != null)) {
+            reportProfile();
+        }
         super.destroy();
     }
 
+    /**
+     * Prints the profile on the standard error, which keeps it apart from
+     * the audit output, and writes the profile file if any.
+     */
+    private void reportProfile()
+    {
+        mProfile.report(System.err, mProfileTop);
+        if (mProfileFile != null) {
+            try {
+                mProfile.write(new File(mProfileFile));
+            }
+            catch (final IOException ex) {
+                LOG.warn("Unable to write the profile to " + mProfileFile,
+                    ex);
+            }
+        }
+    }
+
+    /**
+     * Calls checks for a phase, measuring each call.
+     * @param aChecks the checks to call
+     * @param aPhase the phase, telling which method is called
+     * @param aAST the node or root passed to the checks
+     */
+    private void profiledDispatch(Iterable<Check> aChecks,
+        XmlProfile.Phase aPhase, DetailAST aAST)
+    {
+        for (Check ch : aChecks) {
+            final long startNanos = System.nanoTime();
+            final long startBytes = mProfile.allocatedBytes();
+            switch (aPhase) {
+            case BEGIN_TREE:
+                ch.beginTree(aAST);
+                break;
+            case VISIT:
+                ch.visitToken(aAST);
+                break;
+            case LEAVE:
+                ch.leaveToken(aAST);
+                break;
+            case FINISH_TREE:
+                ch.finishTree(aAST);
+                break;
+            default:
+                throw new IllegalArgumentException(aPhase.getLabel());
+            }
+            mProfile.record(mCheckLabels.get(ch), aPhase, startNanos,
+                startBytes);
+        }
+    }
+
     /**
      * @return true if we should use recursive algorithm
      *         for tree processing, false for iterative one.
@@ -403,23 +1600,97 @@ public class XmlTreeWalker extends AbstractFileSetCheck {
     /**
      * Processes a node calling interested checks at each node.
      * Uses iterative algorithm.
+     * @param aDocument the nodes of the document
      * @param aRoot the root of tree for process
      */
-    private void processIter(DetailAST aRoot) throws CheckstyleException
-    {
-        DetailAST curNode = aRoot;
-        while (curNode != null) {
-            notifyVisit(curNode);
-            DetailAST toVisit = curNode.getFirstChild();
-            while ((curNode != null) && (toVisit == null)) {
-                notifyLeave(curNode);
-                toVisit = curNode.getNextSibling();
-                if (toVisit == null) {
-                    curNode = curNode.getParent();
+    private void processIter(XmlDocument aDocument, int aRoot)
+    {
+        int curNode = aRoot;
+        while (curNode != XmlDocument.NONE) {
+            notifyVisit(aDocument, curNode);
+            int toVisit = aDocument.getFirstChild(curNode);
+            while ((curNode != XmlDocument.NONE)
+                && (toVisit == XmlDocument.NONE))
+            {
+                notifyLeave(aDocument, curNode);
+                toVisit = aDocument.getNextSibling(curNode);
+                if (toVisit == XmlDocument.NONE) {
+                    curNode = aDocument.getParent(curNode);
                 }
             }
             curNode = toVisit;
         }
     }
 
+    /**
+     * The checks to notify for each token type and tree event.
+     */
+    private static final class Route
+    {
+        /** Maps from token id to checks, in registration order */
+        private Check[][] mTokenToChecks = new Check[0][];
+        /** All the checks, in registration order */
+        private final Set<Check> mAllChecks = Sets.newLinkedHashSet();
+        /** The checks overriding beginTree */
+        private final List<Check> mBeginTreeChecks = Lists.newArrayList();
+        /** The checks overriding finishTree */
+        private final List<Check> mFinishTreeChecks = Lists.newArrayList();
+        /** The checks able to work on parser events */
+        private final List<XmlStreamingCheck> mStreamingChecks =
+            Lists.newArrayList();
+        /** The token types with checks, computed on first use */
+        private BitSet mSubscribedTypes;
+
+        /** Creates an empty dispatch, filled by the registration. */
+        Route()
+        {
+        }
+
+        /**
+         * Creates the dispatch of some of the registered checks.
+         * @param aRoute the dispatch of the registered checks
+         * @param aChecks the checks to keep
+         */
+        Route(Route aRoute, Set<Check> aChecks)
+        {
+            mTokenToChecks = new Check[aRoute.mTokenToChecks.length][];
+            for (int type = 0; type < mTokenToChecks.length; type++) {
+                if (aRoute.mTokenToChecks[type] != null) {
+                    final List<Check> visitors = Lists.newArrayList(
+                        Arrays.asList(aRoute.mTokenToChecks[type]));
+                    visitors.retainAll(aChecks);
+                    if (!visitors.isEmpty()) {
+                        mTokenToChecks[type] =
+                            visitors.toArray(new Check[visitors.size()]);
+                    }
+                }
+            }
+            mAllChecks.addAll(aRoute.mAllChecks);
+            mAllChecks.retainAll(aChecks);
+            mBeginTreeChecks.addAll(aRoute.mBeginTreeChecks);
+            mBeginTreeChecks.retainAll(aChecks);
+            mFinishTreeChecks.addAll(aRoute.mFinishTreeChecks);
+            mFinishTreeChecks.retainAll(aChecks);
+            mStreamingChecks.addAll(aRoute.mStreamingChecks);
+            mStreamingChecks.retainAll(aChecks);
+        }
+
+        /**
+         * @return the token types the checks subscribe to, which are the
+         *         only nodes built by the walker besides their structure
+         */
+        BitSet getSubscribedTypes()
+        {
+            if (mSubscribedTypes == null) {
+                final BitSet types = new BitSet(mTokenToChecks.length);
+                for (int type = 0; type < mTokenToChecks.length; type++) {
+                    if (mTokenToChecks[type] != null) {
+                        types.set(type);
+                    }
+                }
+                mSubscribedTypes = types;
+            }
+            return mSubscribedTypes;
+        }
+    }
 }
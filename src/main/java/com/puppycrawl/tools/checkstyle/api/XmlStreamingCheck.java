@@ -0,0 +1,94 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+package com.puppycrawl.tools.checkstyle.api;
+
+import java.io.File;
+
+/**
+ * Contract of the checks able to work on the parser events instead of the
+ * AST.
+ *
+ * When every check of a XmlTreeWalker implements this interface and the
+ * walker <code>streaming</code> property is set, the walker does not build
+ * any AST: the checks receive the events straight from the parser, so the
+ * memory used stays proportional to the depth of the document rather than
+ * to its size. Lines and columns are the ones reported by the parser for
+ * the event.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public interface XmlStreamingCheck {
+
+    /**
+     * Called before the first event of a document.
+     * @param aFile the document
+     */
+    void beginDocument(File aFile);
+
+    /**
+     * Called when an element starts, before its attributes.
+     * @param aNamespaceURI namespace of the element, empty if none
+     * @param aLocalName local name of the element
+     * @param aQName qualified name of the element
+     * @param aLine line of the event
+     * @param aColumn column of the event
+     */
+    void startElement(String aNamespaceURI, String aLocalName, String aQName,
+        int aLine, int aColumn);
+
+    /**
+     * Called for each attribute of the element just started.
+     * @param aNamespaceURI namespace of the attribute, empty if none
+     * @param aLocalName local name of the attribute
+     * @param aQName qualified name of the attribute
+     * @param aValue value of the attribute
+     * @param aLine line of the event
+     * @param aColumn column of the event
+     */
+    void attribute(String aNamespaceURI, String aLocalName, String aQName,
+        String aValue, int aLine, int aColumn);
+
+    /**
+     * Called for a chunk of text. The array is owned by the parser and must
+     * not be kept after the call.
+     * @param aCh the characters
+     * @param aStart start of the chunk in the array
+     * @param aLength length of the chunk
+     * @param aLine line of the event
+     * @param aColumn column of the event
+     */
+    void characters(char[] aCh, int aStart, int aLength, int aLine,
+        int aColumn);
+
+    /**
+     * Called when an element ends.
+     * @param aNamespaceURI namespace of the element, empty if none
+     * @param aLocalName local name of the element
+     * @param aQName qualified name of the element
+     * @param aLine line of the event
+     * @param aColumn column of the event
+     */
+    void endElement(String aNamespaceURI, String aLocalName, String aQName,
+        int aLine, int aColumn);
+
+    /**
+     * Called after the last event of a document.
+     */
+    void endDocument();
+}
@@ -0,0 +1,478 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle.checks;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.saxon.om.DocumentInfo;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.om.SequenceIterator;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.value.BooleanValue;
+import net.sf.saxon.value.NumericValue;
+
+import com.puppycrawl.tools.checkstyle.XmlDocumentService;
+import com.puppycrawl.tools.checkstyle.XmlShardResults;
+import com.puppycrawl.tools.checkstyle.XmlShardedCheck;
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
+
+/**
+ * <p>
+ * Base of the checks counting the items returned by an expression.
+ * </p>
+ * <p>
+ * The results are read through an iterator, without building their list:
+ * the matches are counted, and only the location of the ones past
+ * <code>max</code> is kept for the report. When <code>max</code> is
+ * negative, meaning no maximum, the evaluation stops as soon as
+ * <code>min</code> matches are found.
+ * </p>
+ * <p>
+ * When the expression can be wrapped in <code>count()</code>, or in
+ * <code>exists()</code> when a single match is required and there is no
+ * maximum, this cheaper form is evaluated first, and the results are only
+ * iterated to locate the violations when <code>max</code> is exceeded.
+ * </p>
+ * <p>
+ * When <code>maxReported</code> is set, only that many matches past
+ * <code>max</code> are logged one by one, the others being logged as a
+ * single message at the first of them. The matches are then no longer
+ * iterated once the reported ones and the first suppressed one are
+ * located, unless the expression has no counting form.
+ * </p>
+ * <p>
+ * When the walker splits a document into shards, the matches of the
+ * evaluations from the document node are added up over the shards, every
+ * match being located when there is a maximum, and <code>min</code> and
+ * <code>max</code> apply to the whole document.
+ * </p>
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public abstract class AbstractExpressionCheck extends Check
+        implements XmlShardedCheck {
+
+    /** Default value for min and max. */
+    private static final int DEFAULT_VALUE = 0;
+
+    /** Prefix of the message keys. */
+    private final String messagePrefix;
+
+    /** Maximum number occurencies of the expression, negative for none. */
+    private int max = DEFAULT_VALUE;
+
+    /** Minimum number occurencies of the expression. */
+    private int min = DEFAULT_VALUE;
+
+    /** Number of matches past max logged one by one, negative for all. */
+    private int maxReported = -1;
+
+    /** String value of the expression. */
+    private String expression;
+
+    /** Prefix and namespace pairs. */
+    private String[] namespaces;
+
+    /** Provides the Saxon tree of the checked document. */
+    private XmlDocumentService documentService;
+
+    /** Line of the matches past max, reused between the evaluations. */
+    private int[] lines = new int[16];
+
+    /** Column of the matches past max, reused between the evaluations. */
+    private int[] columns = new int[16];
+
+    /**
+     * Creates a new check.
+     * @param messagePrefix the prefix of the message keys
+     */
+    protected AbstractExpressionCheck(String messagePrefix) {
+        this.messagePrefix = messagePrefix;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int[] getDefaultTokens() {
+        return new int[]{XmlTokenTypes.DOCUMENT};
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void init() {
+        super.init();
+
+        if (documentService == null) {
+            documentService = new XmlDocumentService();
+        }
+    }
+
+    /**
+     * Evaluates the expression from a context item and logs the
+     * violations, counting the matches without iterating them when
+     * possible.
+     * @param aAST the node the check is visiting
+     * @param context the context item of the evaluation
+     * @throws XPathException if the evaluation fails
+     */
+    protected final void evaluate(DetailAST aAST, Item context)
+            throws XPathException {
+        if ((max < 0) && (min <= 0)) {
+            return;
+        }
+        final XmlShardResults shards = (context instanceof DocumentInfo)
+            ? documentService.getShardResults() : null;
+        if (shards != null) {
+            evaluateShard(aAST, context, shards);
+            return;
+        }
+        final long count = count(context);
+        if (count < 0) {
+            countMatches(aAST, iterate(context));
+        }
+        else if ((max >= 0) && (count > max)) {
+            // only now are the matches needed, to be located
+            countMatches(aAST, iterate(context), count);
+        }
+        else {
+            report(aAST, (int) count);
+        }
+    }
+
+    /**
+     * Evaluates the expression on a shard of a document, adding the matches
+     * to the results of the shards. The copies of the ancestors of the
+     * records are not counted, and when there is a maximum the matches are
+     * located up to the last one which may be reported, as which of them
+     * are past max is only known at the end.
+     * @param aAST the node the check is visiting
+     * @param context the document node of the shard
+     * @param shards the results of the shards
+     * @throws XPathException if the evaluation fails
+     */
+    private void evaluateShard(DetailAST aAST, Item context,
+            XmlShardResults shards) throws XPathException {
+        final long locatedTo = (max < 0) ? 0 : (long) max + getLocatedPastMax();
+        int nbMatches = 0;
+        final SequenceIterator results = iterate(context);
+        try {
+            for (Item item = results.next(); item != null;
+                    item = results.next()) {
+                if ((item instanceof NodeInfo)
+                        && !documentService.isInShard(
+                            ((NodeInfo) item).getLineNumber(),
+                            ((NodeInfo) item).getColumnNumber() - 1)) {
+                    continue;
+                }
+                if (nbMatches < locatedTo) {
+                    locate(aAST, nbMatches, item);
+                }
+                nbMatches++;
+            }
+        }
+        finally {
+            results.close();
+        }
+        shards.add(getConfiguration(), nbMatches, lines, columns,
+            (int) Math.min(nbMatches, locatedTo));
+    }
+
+    /** {@inheritDoc} */
+    public void finishShards(XmlShardResults aResults) {
+        final Object key = getConfiguration();
+        if (!aResults.contains(key)) {
+            return;
+        }
+        final int nbMatches = aResults.getCount(key);
+        final int located = aResults.getLocated(key);
+        for (int i = max; (max >= 0) && (i < located)
+                && (i - max < getLocatedPastMax()); i++) {
+            locate(i - max, aResults.getLine(key, i),
+                aResults.getColumn(key, i));
+        }
+        report(new File(getFileContents().getFilename()).getName(),
+            nbMatches);
+    }
+
+    /**
+     * Returns the form of the expression evaluated instead of iterating
+     * the matches: their count, or their existence when there is no
+     * maximum and a single match is required.
+     * @return the counting form, null if the matches must be iterated
+     */
+    protected final String getCountingExpression() {
+        if (max >= 0) {
+            return "count((" + expression + "))";
+        }
+        if (min == 1) {
+            return "exists((" + expression + "))";
+        }
+        return null;
+    }
+
+    /**
+     * Converts the result of the counting form of the expression.
+     * @param result the single item returned by the counting form
+     * @return the number of matches, 0 or 1 for an existence test
+     * @throws XPathException if the result is not a count
+     */
+    protected static long toCount(Item result) throws XPathException {
+        if (result instanceof BooleanValue) {
+            return ((BooleanValue) result).getBooleanValue() ? 1 : 0;
+        }
+        if (result instanceof NumericValue) {
+            return ((NumericValue) result).longValue();
+        }
+        throw new XPathException("Unexpected count: " + result);
+    }
+
+    /**
+     * Iterates the matches of the expression.
+     * @param context the context item of the evaluation
+     * @return the matches
+     * @throws XPathException if the evaluation fails
+     */
+    protected abstract SequenceIterator iterate(Item context)
+        throws XPathException;
+
+    /**
+     * Evaluates the counting form of the expression.
+     * @param context the context item of the evaluation
+     * @return the number of matches, -1 if the expression has no counting
+     *         form
+     * @throws XPathException if the evaluation fails
+     * @see #getCountingExpression()
+     */
+    protected abstract long count(Item context) throws XPathException;
+
+    /**
+     * Counts the results of an evaluation and logs the violations.
+     * @param aAST the node the check is visiting
+     * @param results the results of the evaluation
+     * @throws XPathException if the evaluation fails
+     */
+    protected final void countMatches(DetailAST aAST,
+            SequenceIterator results) throws XPathException {
+        countMatches(aAST, results, -1);
+    }
+
+    /**
+     * Logs the violations of the results of an evaluation whose number is
+     * known, iterating them only as far as the reported ones.
+     * @param aAST the node the check is visiting
+     * @param results the results of the evaluation
+     * @param count the number of results, -1 if they must be counted
+     * @throws XPathException if the evaluation fails
+     */
+    private void countMatches(DetailAST aAST, SequenceIterator results,
+            long count) throws XPathException {
+        final int located = getLocatedPastMax();
+        final long stopAt = ((count >= 0) && (max >= 0))
+            ? (long) max + located : Long.MAX_VALUE;
+        int nbMatches = 0;
+        try {
+            while ((max >= 0) || (nbMatches < min)) {
+                if (nbMatches >= stopAt) {
+                    // the matches left are neither reported nor counted
+                    nbMatches = (int) count;
+                    break;
+                }
+                final Item item = results.next();
+                if (item == null) {
+                    break;
+                }
+                if ((max >= 0) && (nbMatches >= max)
+                        && (nbMatches - max < located)) {
+                    locate(aAST, nbMatches - max, item);
+                }
+                nbMatches++;
+            }
+        }
+        finally {
+            results.close();
+        }
+        report(aAST, nbMatches);
+    }
+
+    /**
+     * Keeps the location of a matched item, the one of the visited node
+     * when the item is not a node.
+     * @param aAST the node the check is visiting
+     * @param index the index of the located match
+     * @param item the matched item
+     */
+    private void locate(DetailAST aAST, int index, Item item) {
+        if (item instanceof NodeInfo) {
+            locate(index, ((NodeInfo) item).getLineNumber(),
+                ((NodeInfo) item).getColumnNumber() - 1);
+        }
+        else {
+            locate(index, aAST.getLineNo(), aAST.getColumnNo());
+        }
+    }
+
+    /**
+     * @return the number of matches past max whose location is needed: the
+     *         reported ones, and the first suppressed one when they are
+     *         capped by maxReported
+     */
+    protected final int getLocatedPastMax() {
+        return (maxReported < 0) ? Integer.MAX_VALUE : maxReported + 1;
+    }
+
+    /**
+     * Keeps the location of a match past max.
+     * @param index the index of the match past max
+     * @param line the line of the match
+     * @param col the column of the match
+     */
+    protected final void locate(int index, int line, int col) {
+        if (index == lines.length) {
+            lines = Arrays.copyOf(lines, index * 2);
+            columns = Arrays.copyOf(columns, index * 2);
+        }
+        lines[index] = line;
+        columns[index] = col;
+    }
+
+    /**
+     * Logs the violations of a number of matches, the matches past max
+     * having been located.
+     * @param aAST the node the check is visiting
+     * @param nbMatches the number of matches
+     */
+    protected final void report(DetailAST aAST, int nbMatches) {
+        report(aAST.getText(), nbMatches);
+    }
+
+    /**
+     * Logs the violations of a number of matches, the matches past max
+     * having been located.
+     * @param documentName the name of the checked document
+     * @param nbMatches the number of matches
+     */
+    private void report(String documentName, int nbMatches) {
+        if (nbMatches < min) {
+            log(0, messagePrefix + ".lessMatches", expression, nbMatches, min);
+        }
+        else if ((max >= 0) && (nbMatches > max)) {
+            final int surplus = nbMatches - max;
+            final int reported = (maxReported < 0)
+                ? surplus : Math.min(surplus, maxReported);
+            for (int i = 0; i < reported; i++) {
+                log(lines[i], columns[i], messagePrefix + ".invalidPath",
+                    documentName, expression, nbMatches, min, max);
+            }
+            if (reported < surplus) {
+                log(lines[reported], columns[reported],
+                    messagePrefix + ".suppressed", surplus - reported,
+                    expression, lines[reported]);
+            }
+        }
+    }
+
+    /**
+     * @return the prefix to namespace URI bindings, null if none
+     */
+    protected final Map<String, String> getNamespaceMap() {
+        if (namespaces == null) {
+            return null;
+        }
+        final Map<String, String> ns = new HashMap<String, String>();
+        for (int index = 0; index < namespaces.length; index += 2) {
+            ns.put(namespaces[index], namespaces[index + 1]);
+        }
+        return ns;
+    }
+
+    /** @return the expression */
+    protected final String getExpression() {
+        return expression;
+    }
+
+    /** @return the maximum number of matches, negative for none */
+    protected final int getMax() {
+        return max;
+    }
+
+    /** @return the service providing the Saxon tree of the document */
+    protected final XmlDocumentService getDocumentService() {
+        return documentService;
+    }
+
+    /**
+     * Setter of max.
+     * @param max the max value, negative for no maximum
+     */
+    public void setMax(int max) {
+        this.max = max;
+    }
+
+    /**
+     * Setter of maxReported. The matches past max beyond this number are
+     * logged as a single message.
+     * @param maxReported the number of matches past max logged one by one,
+     *        negative for all
+     */
+    public void setMaxReported(int maxReported) {
+        this.maxReported = maxReported;
+    }
+
+    /**
+     * Setter of min.
+     * @param min the min value
+     */
+    public void setMin(int min) {
+        this.min = min;
+    }
+
+    /**
+     * Setter of expression.
+     * @param expression the expression value
+     */
+    public void setExpression(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Setter of namespaces.
+     * For instance: 
+     * <pre>
+     *   &lt;property name="namespaces" value="bk, urn:xmlns:25hoursaday-com:bookstore, inv, urn:xmlns:25hoursaday-com:inventory-tracking"/&gt;
+     * </pre>
+     * 
+     * @param namespaces an array containing a prefix + namespace pair
+     */
+    public void setNamespaces(String[] namespaces) {
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Setter of the document service, provided by the XmlTreeWalker.
+     * @param documentService the service sharing the document tree
+     */
+    public void setDocumentService(XmlDocumentService documentService) {
+        this.documentService = documentService;
+    }
+}
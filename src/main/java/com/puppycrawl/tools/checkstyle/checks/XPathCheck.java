@@ -19,29 +19,20 @@
 
 package com.puppycrawl.tools.checkstyle.checks;
 
-import java.io.StringReader;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import javax.xml.xpath.XPathFactoryConfigurationException;
 
-import net.sf.saxon.om.NamespaceConstant;
-import net.sf.saxon.om.NodeInfo;
-import net.sf.saxon.xpath.XPathFactoryImpl;
+import net.sf.saxon.om.DocumentInfo;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.SequenceIterator;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.xpath.XPathExpressionImpl;
 
-import org.xml.sax.InputSource;
-
-import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.XmlExpressionCache;
+import com.puppycrawl.tools.checkstyle.XmlPathAutomaton;
+import com.puppycrawl.tools.checkstyle.XmlPathPattern;
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
-import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
 
 /**
  * <p>
@@ -61,96 +52,82 @@ import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
  *    &lt;property name="max" value="1500"/&gt;
  * &lt;/module&gt;
  * </pre>
+ * <p>
+ * When the expression is a simple path from the document, such as
+ * <code>//ELT/NAME[@value]</code> or <code>/DATA/X/@value</code>, and the
+ * check runs in a XmlTreeWalker, it is evaluated while the document is
+ * parsed, together with the other simple paths of the walker, and no Saxon
+ * tree is needed. See {@link XmlPathPattern} for the supported subset.
+ * Other expressions are evaluated by Saxon, their results being read
+ * through an iterator.
+ * </p>
  * @author Yoann Ciabaud<y.ciabaud@gmail.com>
  */
-public class XPathCheck extends Check{
+public class XPathCheck extends AbstractExpressionCheck {
 
-    /** Default value for min and max. */
-    private static final int DEFAULT_VALUE = 0;
-    
-    /** Maximum number occurencies of the expression. */
-    private int max = DEFAULT_VALUE;
-    
-    /** Minimum number occurencies of the expression. */
-    private int min = DEFAULT_VALUE;
-    
     /** The starting context, a node for example */
     private String item = "/";
     
-    private XPathExpression itemExpression;
-    
-    /** String value of XPath expression*/
-    private String expression;
+    private XPathExpressionImpl itemExpression;
     
     /** XPath expression*/
-    private XPathExpression xPathExpression;
-    
-    /** */
-    private String[] namespaces;
-        
-    /** {@inheritDoc} */
-    @Override
-    public int[] getDefaultTokens() {
-        return new int[]{XmlTokenTypes.DOCUMENT};
+    private XPathExpressionImpl xPathExpression;
+
+    /** Counting form of the expression, null if none. */
+    private XPathExpressionImpl countExpression;
+
+    /** Evaluates the simple paths while parsing, null if unavailable. */
+    private XmlPathAutomaton pathAutomaton;
+
+    /** Index of the expression in the automaton, -1 if not streamed. */
+    private int pathIndex = -1;
+
+    /**
+     * Creates a new check.
+     */
+    public XPathCheck() {
+        super("xpath");
     }
 
     /** {@inheritDoc} */
     @Override
     public void init() {
         super.init();
-                
-        //création du XPath 
-        XPathFactory fabrique = null;
-        try {
-            System.setProperty("javax.xml.xpath.XPathFactory:"+NamespaceConstant.OBJECT_MODEL_SAXON, "net.sf.saxon.xpath.XPathFactoryImpl");
-            fabrique = XPathFactory.newInstance(NamespaceConstant.OBJECT_MODEL_SAXON);
-            ((XPathFactoryImpl)fabrique).getConfiguration().setLineNumbering(true);
-        } catch (XPathFactoryConfigurationException ex) {
-            log(0, "XPath engine error" + ex.getMessage());
-            ex.printStackTrace();
-            return;
-        }
-        XPath xpath = fabrique.newXPath();
-        
-        if( namespaces != null )
-        {
-        	final Map<String, String> ns = new HashMap<String, String>();
-        	
-        	for( int index = 0; index < namespaces.length; index+=2)
-        	{
-        		ns.put(namespaces[index], namespaces[index+1]);
-        	}
-        	
-        	xpath.setNamespaceContext(new NamespaceContext() {
-        		
-        		private Map<String, String> namespaceMap = ns;
-				
-				@Override
-				public Iterator getPrefixes(String arg0) {
-					return null; //not used
-				}
-				
-				@Override
-				public String getPrefix(String arg0) {
-					return null; //not used
-				}
-				
-				@Override
-				public String getNamespaceURI(String prefix) {
-					return namespaceMap.get(prefix);
-				}
-			});
-        	
-        }
-        
+
+        final Map<String, String> ns = getNamespaceMap();
+        final String expression = getExpression();
         try {
-        	itemExpression = xpath.compile(item);
-            xPathExpression = xpath.compile(expression);
+            final XmlExpressionCache cache = XmlExpressionCache.getInstance();
+            itemExpression = (XPathExpressionImpl) cache.getXPath(item, ns);
+            xPathExpression =
+                (XPathExpressionImpl) cache.getXPath(expression, ns);
+            if ((pathAutomaton != null) && "/".equals(item)) {
+                final XmlPathPattern pattern =
+                    XmlPathPattern.compile(expression, ns);
+                if (pattern != null) {
+                    final int max = getMax();
+                    pathIndex = pathAutomaton.add(pattern,
+                        (max < 0) ? Integer.MAX_VALUE : max,
+                        (max < 0) ? 0 : (int) Math.min(Integer.MAX_VALUE,
+                            (long) max + getLocatedPastMax()));
+                }
+            }
         } catch (XPathExpressionException ex) {
             log(0, "Invalid XPath expression: " + expression);
             ex.printStackTrace();
+            return;
+        }
+
+        final String counting = getCountingExpression();
+        if (counting != null) {
+            try {
+                countExpression = (XPathExpressionImpl)
+                    XmlExpressionCache.getInstance().getXPath(counting, ns);
+            } catch (XPathExpressionException ex) {
+                // the matches are iterated
+                countExpression = null;
+            }
         }
-        
     }
 
     /** {@inheritDoc} */
@@ -170,46 +147,45 @@ public class XPathCheck extends Check{
             
             return;
         }
-       
-        List contexts = null;
+
+        if ((pathIndex >= 0)
+            && pathAutomaton.hasResults(getFileContents()))
+        {
+            final int nbMatches = pathAutomaton.getMatchCount(pathIndex);
+            final int max = getMax();
+            for (int i = max; (max >= 0) && (i < nbMatches)
+                && (i - max < getLocatedPastMax()); i++)
+            {
+                locate(i - max, pathAutomaton.getMatchLine(pathIndex, i),
+                    pathAutomaton.getMatchColumn(pathIndex, i) - 1);
+            }
+            report(aAST, nbMatches);
+            return;
+        }
+
+        final DocumentInfo document;
         try {
-            final String fullText = getFileContents().getText().getFullText().toString();
-            InputSource document = new InputSource();
-            document.setCharacterStream(new StringReader(fullText));
-            contexts = (List) itemExpression.evaluate(document, XPathConstants.NODESET);
+            document = getDocumentService().getDocument(getFileContents());
+        } catch (XPathException ex) {
+            log(aAST.getLineNo(),
+                "XML document could not be built: " + ex.getMessage());
+            ex.printStackTrace();
+            return;
+        }
 
-	        int contextsMatches = contexts != null ? contexts.size() : 0;
-	        
-	        if( contextsMatches > 0 )
-	        {
-	        	for ( int contentsIndex = 0 ; contentsIndex < contextsMatches; contentsIndex++)
-	        	{
-	        		List resultat = (List) xPathExpression.evaluate(contexts.get(contentsIndex), XPathConstants.NODESET);
-	                int nbMatches = resultat != null ? resultat.size() : 0;
-	                if( nbMatches < min ) {
-	                	log(0, "xpath.lessMatches", expression, nbMatches, min);
-	                }
-	                else if ( nbMatches > max)
-	                {
-	                    for(int i=max; i<resultat.size(); i++){
-	                        int line = aAST.getLineNo();
-	                        int col = aAST.getColumnNo();
-	
-	                        if(resultat.get(i) instanceof NodeInfo){
-	                            line = ((NodeInfo)resultat.get(i)).getLineNumber();
-	                            col = ((NodeInfo)resultat.get(i)).getColumnNumber() - 1;
-	                        }
-	                        log(line,
-	                            col,
-	                            "xpath.invalidPath",
-	                            aAST.getText(),
-	                            expression, nbMatches, min, max);
-	                    }
-	                }
-	        	}
-	        	
-	        }
-        } catch (XPathExpressionException ex) {
+        try {
+            final SequenceIterator contexts =
+                itemExpression.rawIterator(document);
+            try {
+                for (Item context = contexts.next(); context != null;
+                        context = contexts.next()) {
+                    evaluate(aAST, context);
+                }
+            }
+            finally {
+                contexts.close();
+            }
+        } catch (XPathException ex) {
             log(aAST.getLineNo(),
                 "XPath evaluation failed: " + ex.getMessage());
             ex.printStackTrace();
@@ -218,44 +194,31 @@ public class XPathCheck extends Check{
 
     }
 
-    /**
-     * Setter of max.
-     * @param max the max value
-     */
-    public void setMax(int max) {
-        this.max = max;
+    /** {@inheritDoc} */
+    @Override
+    protected SequenceIterator iterate(Item context) throws XPathException {
+        return xPathExpression.rawIterator(context);
     }
 
-    /**
-     * Setter of min.
-     * @param min the min value
-     */
-    public void setMin(int min) {
-        this.min = min;
+    /** {@inheritDoc} */
+    @Override
+    protected long count(Item context) throws XPathException {
+        if (countExpression == null) {
+            return -1;
+        }
+        return toCount(countExpression.rawIterator(context).next());
     }
 
-    /**
-     * Setter of expression.
-     * @param expression the XPath expression value
-     */
-    public void setExpression(String expression) {
-        this.expression = expression;
-    }
-    
-    /**
-     * Setter of namespaces.
-     * For instance: 
-     * <pre>
-     *   &lt;property name="namespaces" value="bk, urn:xmlns:25hoursaday-com:bookstore, inv, urn:xmlns:25hoursaday-com:inventory-tracking"/&gt;
-     * </pre>
-     * 
-     * @param namespaces an array containing a prefix + namespace pair
-     */
-    public void setNamespaces(String[] namespaces) {
-		this.namespaces = namespaces;
-	}
-    
     public void setItem(String item) {
 		this.item = item;
 	}
+
+    /**
+     * Setter of the automaton evaluating the simple paths while parsing,
+     * provided by the XmlTreeWalker.
+     * @param pathAutomaton the automaton of the walker
+     */
+    public void setPathAutomaton(XmlPathAutomaton pathAutomaton) {
+        this.pathAutomaton = pathAutomaton;
+    }
 }
@@ -19,25 +19,15 @@
 
 package com.puppycrawl.tools.checkstyle.checks;
 
-import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
-import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.XmlExpressionCache;
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
-import java.io.StringReader;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.transform.sax.SAXSource;
-import net.sf.saxon.Configuration;
+
 import net.sf.saxon.om.DocumentInfo;
-import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.SequenceIterator;
 import net.sf.saxon.query.DynamicQueryContext;
-import net.sf.saxon.query.StaticQueryContext;
 import net.sf.saxon.query.XQueryExpression;
 import net.sf.saxon.trans.XPathException;
-import org.xml.sax.InputSource;
 
 /**
  * <p>
@@ -65,37 +55,28 @@ import org.xml.sax.InputSource;
  *    &lt;property name="max" value="0"/&gt;
  * &lt;/module&gt;
  * </pre>
+ * <p>
+ * The results are read through an iterator, so they are never gathered in
+ * a list.
+ * </p>
  * @author Yoann Ciabaud<y.ciabaud@gmail.com>
  */
-public class XQueryCheck extends Check {
+public class XQueryCheck extends AbstractExpressionCheck {
 
-    /** Default value for min and max. */
-    private static final int DEFAULT_VALUE = 0;
-    
-    /** Maximum number occurencies of the expression. */
-    private int max = DEFAULT_VALUE;
-    
-    /** Minimum number occurencies of the expression. */
-    private int min = DEFAULT_VALUE;
-    
-    /** String value of XQuery expression*/
-    private String expression;
-    
     /** XQuery expression. */
     private XQueryExpression xQueryExpression;
-    
-    private String[] namespaces;
-    
-    /** Static query context */
-    private StaticQueryContext sqc;
+
+    /** Counting form of the expression, null if none. */
+    private XQueryExpression countExpression;
     
     /** Dynamic query context */
     private DynamicQueryContext env;
 
-    /** {@inheritDoc} */
-    @Override
-    public int[] getDefaultTokens() {
-        return new int[]{XmlTokenTypes.DOCUMENT};
+    /**
+     * Creates a new check.
+     */
+    public XQueryCheck() {
+        super("xquery");
     }
 
     /** {@inheritDoc} */
@@ -103,27 +84,27 @@ public class XQueryCheck extends Check {
     public void init() {
         super.init();
 
-        Configuration c = new Configuration();
-        c.setLineNumbering(true);
-        
         try {
-            sqc = new StaticQueryContext(c);
-            if( namespaces != null )
-            {
-            	for( int index = 0; index < namespaces.length; index+=2)
-            	{
-            		sqc.declareNamespace(namespaces[index], namespaces[index+1]);
-            	}
-            }
-            
-            env = new DynamicQueryContext(c);
-            xQueryExpression = sqc.compileQuery(expression);
+            env = new DynamicQueryContext(
+                getDocumentService().getConfiguration());
+            xQueryExpression = XmlExpressionCache.getInstance().getXQuery(
+                getExpression(), getNamespaceMap());
         } catch (XPathException ex) {
             log(0, "Invalid XQuery request: " + ex.getMessage());
             ex.printStackTrace();
             return;
         }
 
+        final String counting = getCountingExpression();
+        if (counting != null) {
+            try {
+                countExpression = XmlExpressionCache.getInstance().getXQuery(
+                    counting, getNamespaceMap());
+            } catch (XPathException ex) {
+                // a query with a prolog cannot be wrapped, it is iterated
+                countExpression = null;
+            }
+        }
     }
 
     /** {@inheritDoc} */
@@ -144,81 +125,32 @@ public class XQueryCheck extends Check {
             return;
         }
 
-        List resultat = null;
-        
         try{
-            final String fullText = getFileContents().getText().getFullText().toString();
-            InputSource document = new InputSource();
-            document.setCharacterStream(new StringReader(fullText));
-
-            DocumentInfo di = sqc.buildDocument(new SAXSource(document));
-            env.setContextItem(di.getRoot());
-
-            resultat = xQueryExpression.evaluate(env);   
+            final DocumentInfo di =
+                getDocumentService().getDocument(getFileContents());
+            evaluate(aAST, di.getRoot());
         } catch (XPathException ex) {
-            log(0, "Invalid XQuery expression: " + expression);
+            log(0, "Invalid XQuery expression: " + getExpression());
             ex.printStackTrace();
+            report(aAST, 0);
         }
 
-
-        int nbMatches = resultat != null ? resultat.size() : 0;
-        if (nbMatches < min ) {
-        	log(0, "xquery.lessMatches", expression, nbMatches, min);
-        } 
-        else if( nbMatches > max) 
-        {
-             for(int i=max; i<resultat.size(); i++){
-                int line = aAST.getLineNo();
-                int col = aAST.getColumnNo();
-
-                if(resultat.get(i) instanceof NodeInfo){
-                    line = ((NodeInfo)resultat.get(i)).getLineNumber();
-                    col = ((NodeInfo)resultat.get(i)).getColumnNumber() - 1;
-                }
-                log(line,
-                    col,
-                    "xquery.invalidPath",
-                    aAST.getText(),
-                    expression, nbMatches, min, max);
-            }
-        }
-
-    }
-
-    /**
-     * Setter of max.
-     * @param max the max value
-     */
-    public void setMax(int max) {
-        this.max = max;
     }
 
-    /**
-     * Setter of min.
-     * @param min the min value
-     */
-    public void setMin(int min) {
-        this.min = min;
+    /** {@inheritDoc} */
+    @Override
+    protected SequenceIterator iterate(Item context) throws XPathException {
+        env.setContextItem(context);
+        return xQueryExpression.iterator(env);
     }
 
-    /**
-     * Setter of expression.
-     * @param expression the XQuery expression value
-     */
-    public void setExpression(String expression) {
-        this.expression = expression;
+    /** {@inheritDoc} */
+    @Override
+    protected long count(Item context) throws XPathException {
+        if (countExpression == null) {
+            return -1;
+        }
+        env.setContextItem(context);
+        return toCount(countExpression.iterator(env).next());
     }
-    
-    /**
-     * Setter of namespaces.
-     * For instance: 
-     * <pre>
-     *   &lt;property name="namespaces" value="bk, urn:xmlns:25hoursaday-com:bookstore, inv, urn:xmlns:25hoursaday-com:inventory-tracking"/&gt;
-     * </pre>
-     * 
-     * @param namespaces an array containing a prefix + namespace pair
-     */
-    public void setNamespaces(String[] namespaces) {
-		this.namespaces = namespaces;
-	}
 }
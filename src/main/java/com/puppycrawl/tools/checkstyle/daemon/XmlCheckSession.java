@@ -0,0 +1,179 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle.daemon;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.ConfigurationLoader;
+import com.puppycrawl.tools.checkstyle.DefaultLogger;
+import com.puppycrawl.tools.checkstyle.PropertiesExpander;
+import com.puppycrawl.tools.checkstyle.XMLLogger;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A Checker kept configured between audits.
+ *
+ * The configuration is loaded once, so that the walkers, their compiled
+ * expressions and their caches are reused by every audit. Before each
+ * audit, the timestamp and the length of the configuration file are
+ * compared to the ones of the last load, and the Checker is rebuilt when
+ * the file changed on disk. Audits are serialized.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public class XmlCheckSession
+{
+    /** Name of the XML output format. */
+    public static final String XML_FORMAT = "xml";
+
+    /** Name of the plain output format. */
+    public static final String PLAIN_FORMAT = "plain";
+
+    /** Logger. */
+    private static final Log LOG = LogFactory.getLog(XmlCheckSession.class);
+
+    /** The configuration file. */
+    private final File mConfigFile;
+
+    /** Properties expanded in the configuration. */
+    private final Properties mProperties;
+
+    /** The configured Checker, null until the first audit. */
+    private Checker mChecker;
+
+    /** Timestamp of the configuration file when loaded. */
+    private long mLoadedTimestamp;
+
+    /** Length of the configuration file when loaded. */
+    private long mLoadedLength;
+
+    /** Number of times the configuration was loaded. */
+    private int mLoadCount;
+
+    /**
+     * Creates a session.
+     * @param aConfigFile the configuration file
+     * @param aProperties the properties expanded in the configuration
+     */
+    public XmlCheckSession(File aConfigFile, Properties aProperties)
+    {
+        mConfigFile = aConfigFile;
+        mProperties = aProperties;
+    }
+
+    /**
+     * Audits files, reloading the configuration first if it changed.
+     * @param aFiles the files to audit
+     * @param aFormat the output format, {@link #XML_FORMAT} or
+     *        {@link #PLAIN_FORMAT}
+     * @param aOut the stream receiving the audit output, left open
+     * @return the number of errors found
+     * @throws CheckstyleException if the configuration cannot be loaded
+     */
+    public synchronized int audit(List<File> aFiles, String aFormat,
+        OutputStream aOut) throws CheckstyleException
+    {
+        final AuditListener listener = XML_FORMAT.equals(aFormat)
+            ? new XMLLogger(aOut, false)
+            : new DefaultLogger(aOut, false);
+        return audit(aFiles, listener);
+    }
+
+    /**
+     * Audits files, reloading the configuration first if it changed.
+     * @param aFiles the files to audit
+     * @param aListener the listener notified of the audit events
+     * @return the number of errors found
+     * @throws CheckstyleException if the configuration cannot be loaded
+     */
+    public synchronized int audit(List<File> aFiles, AuditListener aListener)
+        throws CheckstyleException
+    {
+        reloadIfChanged();
+        mChecker.addListener(aListener);
+        try {
+            return mChecker.process(aFiles);
+        }
+        finally {
+            mChecker.removeListener(aListener);
+        }
+    }
+
+    /** @return the configuration file */
+    public File getConfigFile()
+    {
+        return mConfigFile;
+    }
+
+    /** @return the number of times the configuration was loaded */
+    public synchronized int getLoadCount()
+    {
+        return mLoadCount;
+    }
+
+    /**
+     * Destroys the Checker, letting the walkers store their caches.
+     */
+    public synchronized void destroy()
+    {
+        if (mChecker != null) {
+            mChecker.destroy();
+            mChecker = null;
+        }
+    }
+
+    /**
+     * Builds the Checker if none was built or if the configuration file
+     * changed since.
+     * @throws CheckstyleException if the configuration cannot be loaded
+     */
+    private void reloadIfChanged() throws CheckstyleException
+    {
+        final long timestamp = mConfigFile.lastModified();
+        final long length = mConfigFile.length();
+        if ((mChecker != null) && (timestamp == mLoadedTimestamp)
+            && (length == mLoadedLength))
+        {
+            return;
+        }
+
+        final Configuration config = ConfigurationLoader.loadConfiguration(
+            mConfigFile.getAbsolutePath(), new PropertiesExpander(mProperties));
+        final Checker checker = new Checker();
+        checker.setModuleClassLoader(Checker.class.getClassLoader());
+        checker.configure(config);
+
+        if (mChecker != null) {
+            LOG.info("Reloading configuration " + mConfigFile);
+            mChecker.destroy();
+        }
+        mChecker = checker;
+        mLoadedTimestamp = timestamp;
+        mLoadedLength = length;
+        mLoadCount++;
+    }
+}
@@ -0,0 +1,237 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle.daemon;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin client sending files to audit to an {@link XmlDaemonMain}.
+ *
+ * Usage: <code>XmlDaemonClient [-port port] [-token file] [-f plain|xml]
+ * [-stop] [file...]</code>. Without files on the command line, the files
+ * are read from the standard input, one per line. Each request starts with
+ * the token written by the daemon, read from the default file of the port
+ * unless given. The audit output is printed on
+ * the standard output and the exit status is the number of errors, as the
+ * one of the Checkstyle command line.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public final class XmlDaemonClient
+{
+    /** Prevents instantiation. */
+    private XmlDaemonClient()
+    {
+    }
+
+    /**
+     * Asks a daemon to audit files, reading its token from the default file
+     * of its port.
+     * @param aPort the port of the daemon
+     * @param aFormat the output format, plain or xml
+     * @param aFiles the files or directories to audit
+     * @param aOut the stream receiving the audit output
+     * @return the number of errors found
+     * @throws IOException if the daemon is unreachable or the audit fails
+     */
+    public static int audit(int aPort, String aFormat, List<File> aFiles,
+        OutputStream aOut) throws IOException
+    {
+        return audit(aPort, XmlDaemonMain.getDefaultTokenFile(aPort), aFormat,
+            aFiles, aOut);
+    }
+
+    /**
+     * Asks a daemon to audit files.
+     * @param aPort the port of the daemon
+     * @param aTokenFile the file holding the token of the daemon
+     * @param aFormat the output format, plain or xml
+     * @param aFiles the files or directories to audit
+     * @param aOut the stream receiving the audit output
+     * @return the number of errors found
+     * @throws IOException if the daemon is unreachable or the audit fails
+     */
+    public static int audit(int aPort, File aTokenFile, String aFormat,
+        List<File> aFiles, OutputStream aOut) throws IOException
+    {
+        final StringBuilder request = new StringBuilder(readToken(aTokenFile));
+        request.append('\n').append(XmlDaemonMain.AUDIT).append(' ').append(aFormat)
+            .append('\n');
+        for (File file : aFiles) {
+            request.append(file.getAbsolutePath()).append('\n');
+        }
+        request.append('\n');
+        return send(aPort, request.toString(), aOut);
+    }
+
+    /**
+     * Asks a daemon to stop once the request in progress is served, reading
+     * its token from the default file of its port.
+     * @param aPort the port of the daemon
+     * @throws IOException if the daemon is unreachable
+     */
+    public static void stop(int aPort) throws IOException
+    {
+        stop(aPort, XmlDaemonMain.getDefaultTokenFile(aPort));
+    }
+
+    /**
+     * Asks a daemon to stop once the request in progress is served.
+     * @param aPort the port of the daemon
+     * @param aTokenFile the file holding the token of the daemon
+     * @throws IOException if the daemon is unreachable or the token wrong
+     */
+    public static void stop(int aPort, File aTokenFile) throws IOException
+    {
+        send(aPort, readToken(aTokenFile) + "\n" + XmlDaemonMain.STOP + "\n",
+            new ByteArrayOutputStream());
+    }
+
+    /**
+     * Reads the token of a daemon.
+     * @param aTokenFile the file holding the token
+     * @return the token
+     * @throws IOException if the file cannot be read
+     */
+    private static String readToken(File aTokenFile) throws IOException
+    {
+        final InputStream in = new FileInputStream(aTokenFile);
+        try {
+            return readHeader(in).trim();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Sends a request and copies the response.
+     * @param aPort the port of the daemon
+     * @param aRequest the request
+     * @param aOut the stream receiving the response body
+     * @return the number of errors of the response header
+     * @throws IOException if the daemon is unreachable or the request failed
+     */
+    private static int send(int aPort, String aRequest, OutputStream aOut)
+        throws IOException
+    {
+        final Socket socket = new Socket(InetAddress.getByName(null), aPort);
+        try {
+            socket.getOutputStream().write(
+                aRequest.getBytes(XmlDaemonMain.ENCODING));
+            socket.getOutputStream().flush();
+
+            final InputStream in = socket.getInputStream();
+            final String header = readHeader(in);
+            if (!header.startsWith(XmlDaemonMain.ERRORS + " ")) {
+                throw new IOException("Daemon request failed: " + header);
+            }
+
+            final byte[] buf = new byte[8192];
+            for (int read = in.read(buf); read >= 0; read = in.read(buf)) {
+                aOut.write(buf, 0, read);
+            }
+            aOut.flush();
+            return Integer.parseInt(
+                header.substring(XmlDaemonMain.ERRORS.length() + 1).trim());
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Reads the header line of a response, leaving the body in the stream.
+     * @param aIn the response
+     * @return the header, without its line feed or the whole stream if none
+     * @throws IOException if the connection fails
+     */
+    private static String readHeader(InputStream aIn) throws IOException
+    {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        for (int b = aIn.read(); (b >= 0) && (b != '\n'); b = aIn.read()) {
+            header.write(b);
+        }
+        return header.toString(XmlDaemonMain.ENCODING);
+    }
+
+    /**
+     * Sends the files of the command line, or of the standard input, to a
+     * daemon.
+     * @param aArgs the command line arguments
+     * @throws IOException if the daemon is unreachable or the audit fails
+     */
+    public static void main(String[] aArgs) throws IOException
+    {
+        int port = XmlDaemonMain.DEFAULT_PORT;
+        File tokenFile = null;
+        String format = XmlCheckSession.PLAIN_FORMAT;
+        boolean stop = false;
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < aArgs.length; i++) {
+            if ("-port".equals(aArgs[i]) && (i + 1 < aArgs.length)) {
+                port = Integer.parseInt(aArgs[++i]);
+            }
+            else if ("-token".equals(aArgs[i]) && (i + 1 < aArgs.length)) {
+                tokenFile = new File(aArgs[++i]);
+            }
+            else if ("-f".equals(aArgs[i]) && (i + 1 < aArgs.length)) {
+                format = aArgs[++i];
+            }
+            else if ("-stop".equals(aArgs[i])) {
+                stop = true;
+            }
+            else {
+                files.add(new File(aArgs[i]));
+            }
+        }
+
+        if (tokenFile == null) {
+            tokenFile = XmlDaemonMain.getDefaultTokenFile(port);
+        }
+        if (stop) {
+            stop(port, tokenFile);
+            return;
+        }
+        if (files.isEmpty()) {
+            final BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in));
+            for (String line = in.readLine(); line != null;
+                line = in.readLine())
+            {
+                if (line.trim().length() > 0) {
+                    files.add(new File(line.trim()));
+                }
+            }
+        }
+        System.exit(audit(port, tokenFile, format, files, System.out));
+    }
+}
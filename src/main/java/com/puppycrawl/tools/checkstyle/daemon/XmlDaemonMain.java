@@ -0,0 +1,449 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle.daemon;
+
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Resident process auditing the files sent by {@link XmlDaemonClient}.
+ *
+ * The daemon listens on a port of the loopback interface and keeps an
+ * {@link XmlCheckSession} between the requests, so that the configuration
+ * is loaded and the expressions are compiled once. Requests are served one
+ * at a time.
+ *
+ * Any local process can connect to the port, so the daemon writes a random
+ * token at startup to a file only its user can read, and serves only the
+ * requests starting with it: other users can neither audit files, reading
+ * them with the rights of the daemon, nor stop it. Each request is the
+ * token, a line of text naming the command, followed for an audit by the
+ * absolute paths of the files, one per line, and an empty line:
+ * <pre>
+ * token
+ * audit plain|xml
+ * /path/to/file.xml
+ * /path/to/directory
+ *
+ * </pre>
+ * Directories are audited recursively. The response starts with a line
+ * <code>errors N</code> followed by the audit output, or with a line
+ * <code>failed message</code>. The command <code>stop</code> makes the
+ * daemon exit. A failed request is logged and the daemon goes on serving
+ * the next ones, a client sending nothing being dropped after a timeout.
+ *
+ * Usage: <code>XmlDaemonMain -c config.xml [-p checkstyle.properties]
+ * [-port port] [-token file]</code>. The token file defaults to
+ * {@link #getDefaultTokenFile(int)}.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public class XmlDaemonMain
+{
+    /** Port listened to by default. */
+    public static final int DEFAULT_PORT = 8754;
+
+    /** Encoding of the requests and responses. */
+    static final String ENCODING = "UTF-8";
+
+    /** Command auditing files. */
+    static final String AUDIT = "audit";
+
+    /** Command stopping the daemon. */
+    static final String STOP = "stop";
+
+    /** Header of a successful response. */
+    static final String ERRORS = "errors";
+
+    /** Header of a failed response. */
+    static final String FAILED = "failed";
+
+    /** Milliseconds to wait for a request before dropping the client. */
+    static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    /** Number of random bytes of a token. */
+    private static final int TOKEN_BYTES = 16;
+
+    /** Logger. */
+    private static final Log LOG = LogFactory.getLog(XmlDaemonMain.class);
+
+    /** The session auditing the files. */
+    private final XmlCheckSession mSession;
+
+    /** The listening socket. */
+    private final ServerSocket mServer;
+
+    /** File holding the token, deleted when the daemon stops. */
+    private final File mTokenFile;
+
+    /** Token the requests must start with. */
+    private final byte[] mToken;
+
+    /** Whether the daemon was asked to stop. */
+    private volatile boolean mStopped;
+
+    /** Milliseconds to wait for a request before dropping the client. */
+    private int mReadTimeout = DEFAULT_READ_TIMEOUT;
+
+    /**
+     * Creates a daemon listening on the loopback interface, writing its
+     * token to the default file of its port.
+     * @param aSession the session auditing the files
+     * @param aPort the port, 0 for any free port
+     * @throws IOException if the port cannot be listened to or the token
+     *         cannot be written
+     */
+    public XmlDaemonMain(XmlCheckSession aSession, int aPort)
+        throws IOException
+    {
+        this(aSession, aPort, null);
+    }
+
+    /**
+     * Creates a daemon listening on the loopback interface.
+     * @param aSession the session auditing the files
+     * @param aPort the port, 0 for any free port
+     * @param aTokenFile the file receiving the token, null for the default
+     *        file of the port
+     * @throws IOException if the port cannot be listened to or the token
+     *         cannot be written
+     */
+    public XmlDaemonMain(XmlCheckSession aSession, int aPort, File aTokenFile)
+        throws IOException
+    {
+        mSession = aSession;
+        mServer = new ServerSocket(aPort, 0, InetAddress.getByName(null));
+        mTokenFile = (aTokenFile != null)
+            ? aTokenFile : getDefaultTokenFile(mServer.getLocalPort());
+        final byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        final StringBuilder token = new StringBuilder();
+        for (byte b : random) {
+            token.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        mToken = token.toString().getBytes(ENCODING);
+        try {
+            writeToken(mTokenFile, mToken);
+        }
+        catch (final IOException ex) {
+            mServer.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gives the default file of the token of a daemon, in the home
+     * directory of the user.
+     * @param aPort the port of the daemon
+     * @return the token file
+     */
+    public static File getDefaultTokenFile(int aPort)
+    {
+        return new File(System.getProperty("user.home"),
+            ".checkstyle-xml-daemon-" + aPort);
+    }
+
+    /**
+     * Writes a token to a new file only its owner can read and write.
+     * @param aFile the file
+     * @param aToken the token
+     * @throws IOException if the file cannot be written or restricted
+     */
+    private static void writeToken(File aFile, byte[] aToken)
+        throws IOException
+    {
+        if (aFile.exists() && !aFile.delete()) {
+            throw new IOException("Unable to replace " + aFile);
+        }
+        if (!aFile.createNewFile()
+            || !aFile.setReadable(false, false)
+            || !aFile.setWritable(false, false)
+            || !aFile.setReadable(true, true)
+            || !aFile.setWritable(true, true))
+        {
+            throw new IOException("Unable to create " + aFile
+                + " readable by its owner only");
+        }
+        final OutputStream out = new FileOutputStream(aFile);
+        try {
+            out.write(aToken);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /** @return the file holding the token */
+    public File getTokenFile()
+    {
+        return mTokenFile;
+    }
+
+    /**
+     * Sets the time to wait for a request before dropping the client.
+     * @param aReadTimeout the timeout in milliseconds, 0 for none
+     */
+    public void setReadTimeout(int aReadTimeout)
+    {
+        mReadTimeout = aReadTimeout;
+    }
+
+    /** @return the port listened to */
+    public int getPort()
+    {
+        return mServer.getLocalPort();
+    }
+
+    /**
+     * Serves the requests until the daemon is stopped, then destroys the
+     * session.
+     */
+    public void run()
+    {
+        try {
+            while (!mStopped) {
+                final Socket socket;
+                try {
+                    socket = mServer.accept();
+                }
+                catch (final SocketException ex) {
+                    // Closed by stop()
+                    break;
+                }
+                try {
+                    socket.setSoTimeout(mReadTimeout);
+                    serve(socket);
+                }
+                catch (final IOException ex) {
+                    LOG.warn("Request failed", ex);
+                }
+                catch (final RuntimeException ex) {
+                    LOG.error("Request failed", ex);
+                }
+                finally {
+                    close(socket);
+                }
+            }
+        }
+        catch (final IOException ex) {
+            LOG.error("Daemon stopped on an I/O error", ex);
+        }
+        finally {
+            stop();
+            if (!mTokenFile.delete()) {
+                LOG.debug("Unable to delete " + mTokenFile);
+            }
+            mSession.destroy();
+        }
+    }
+
+    /**
+     * Closes the connection of a client.
+     * @param aSocket the connection
+     */
+    private static void close(Socket aSocket)
+    {
+        try {
+            aSocket.close();
+        }
+        catch (final IOException ex) {
+            LOG.debug("Unable to close the connection", ex);
+        }
+    }
+
+    /**
+     * Stops the daemon, interrupting the wait for a request.
+     */
+    public void stop()
+    {
+        mStopped = true;
+        try {
+            mServer.close();
+        }
+        catch (final IOException ex) {
+            LOG.debug("Unable to close the daemon socket", ex);
+        }
+    }
+
+    /**
+     * Serves one request.
+     * @param aSocket the connection of the client
+     * @throws IOException if the connection fails
+     */
+    private void serve(Socket aSocket) throws IOException
+    {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(
+            aSocket.getInputStream(), ENCODING));
+        final OutputStream out = aSocket.getOutputStream();
+
+        final String token = in.readLine();
+        if (token == null) {
+            return;
+        }
+        if (!MessageDigest.isEqual(mToken, token.trim().getBytes(ENCODING))) {
+            LOG.warn("Request rejected, wrong token");
+            writeHeader(out, FAILED + " wrong token");
+            return;
+        }
+
+        final String command = in.readLine();
+        if (command == null) {
+            return;
+        }
+        if (STOP.equals(command.trim())) {
+            mStopped = true;
+            writeHeader(out, ERRORS + " 0");
+            return;
+        }
+
+        final String[] words = command.trim().split("\\s+");
+        if (!AUDIT.equals(words[0])) {
+            writeHeader(out, FAILED + " unknown command " + words[0]);
+            return;
+        }
+        final String format = (words.length > 1)
+            ? words[1] : XmlCheckSession.PLAIN_FORMAT;
+
+        final List<File> files = new ArrayList<File>();
+        for (String line = in.readLine(); (line != null) && (line.length() > 0);
+            line = in.readLine())
+        {
+            traverse(new File(line), files);
+        }
+
+        // The header carries the error count, the output is sent after
+        final ByteArrayOutputStream report = new ByteArrayOutputStream();
+        try {
+            final int errors = mSession.audit(files, format, report);
+            writeHeader(out, ERRORS + " " + errors);
+            report.writeTo(out);
+        }
+        catch (final CheckstyleException ex) {
+            LOG.debug("Audit failed", ex);
+            writeHeader(out, FAILED + " " + ex.getMessage());
+        }
+        catch (final RuntimeException ex) {
+            LOG.error("Audit failed", ex);
+            writeHeader(out, FAILED + " " + ex);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the header line of a response.
+     * @param aOut the response
+     * @param aHeader the header
+     * @throws IOException if the connection fails
+     */
+    private static void writeHeader(OutputStream aOut, String aHeader)
+        throws IOException
+    {
+        aOut.write((aHeader.replace('\n', ' ') + "\n").getBytes(ENCODING));
+    }
+
+    /**
+     * Adds a file, or the files of a directory and its subdirectories.
+     * @param aNode the file or directory
+     * @param aFiles the files to audit
+     */
+    private static void traverse(File aNode, List<File> aFiles)
+    {
+        if (aNode.isDirectory()) {
+            final File[] children = aNode.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    traverse(child, aFiles);
+                }
+            }
+        }
+        else {
+            aFiles.add(aNode);
+        }
+    }
+
+    /**
+     * Starts a daemon and serves the requests until it is stopped.
+     * @param aArgs the command line arguments
+     * @throws Exception if the daemon cannot be started
+     */
+    public static void main(String[] aArgs) throws Exception
+    {
+        String config = null;
+        String propertiesFile = null;
+        int port = DEFAULT_PORT;
+        File tokenFile = null;
+        for (int i = 0; i + 1 < aArgs.length; i += 2) {
+            if ("-c".equals(aArgs[i])) {
+                config = aArgs[i + 1];
+            }
+            else if ("-p".equals(aArgs[i])) {
+                propertiesFile = aArgs[i + 1];
+            }
+            else if ("-port".equals(aArgs[i])) {
+                port = Integer.parseInt(aArgs[i + 1]);
+            }
+            else if ("-token".equals(aArgs[i])) {
+                tokenFile = new File(aArgs[i + 1]);
+            }
+        }
+        if (config == null) {
+            System.err.println("Usage: XmlDaemonMain -c config.xml"
+                + " [-p checkstyle.properties] [-port port] [-token file]");
+            System.exit(1);
+        }
+
+        final Properties properties = new Properties(System.getProperties());
+        if (propertiesFile != null) {
+            final InputStream in = new FileInputStream(propertiesFile);
+            try {
+                properties.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        final XmlDaemonMain daemon = new XmlDaemonMain(
+            new XmlCheckSession(new File(config), properties), port,
+            tokenFile);
+        System.out.println("Listening on port " + daemon.getPort()
+            + ", token in " + daemon.getTokenFile());
+        daemon.run();
+    }
+}
@@ -19,9 +19,9 @@
 
 package com.puppycrawl.tools.checkstyle.gui;
 
+import com.puppycrawl.tools.checkstyle.XmlFileSource;
 import com.puppycrawl.tools.checkstyle.XmlTreeWalker;
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
-import com.puppycrawl.tools.checkstyle.api.FileContents;
 import com.puppycrawl.tools.checkstyle.api.FileText;
 import java.awt.BorderLayout;
 import java.awt.Component;
@@ -30,7 +30,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.TooManyListenersException;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -211,11 +210,13 @@ public class XmlParseTreeInfoPanel extends JPanel {
      */
     public static DetailAST parseFile(FileText aText, File aFile) throws IOException, XMLStreamException, SAXException
     {
-        final FileContents contents = new FileContents(aText);
-        final String fullText = contents.getText().getFullText().toString();
-        InputSource document = new InputSource();
-        document.setCharacterStream(new StringReader(fullText));
-        return XmlTreeWalker.parse(document, aFile);
+        final InputSource document = XmlFileSource.open(aText);
+        try {
+            return XmlTreeWalker.parse(document, aFile);
+        }
+        finally {
+            XmlFileSource.close(document);
+        }
     }
 
     /**
@@ -0,0 +1,115 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle.watch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the files created, modified or deleted under a set of files and
+ * directories since the previous scan.
+ *
+ * A file is considered modified when its timestamp or its length changed.
+ * The contents of the files are not read, a scan costing a listing per
+ * directory and a lookup of the attributes of every file.
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public class XmlFileWatcher
+{
+    /** The watched files and directories. */
+    private final List<File> mRoots;
+
+    /** Timestamp and length of the files found by the previous scan. */
+    private Map<File, long[]> mStates = new HashMap<File, long[]>();
+
+    /**
+     * Creates a watcher. Its first scan returns every file.
+     * @param aRoots the watched files and directories
+     */
+    public XmlFileWatcher(List<File> aRoots)
+    {
+        mRoots = new ArrayList<File>(aRoots);
+    }
+
+    /**
+     * Scans the watched files.
+     * @return the files created, modified or deleted since the previous
+     *         scan, deleted files no longer existing
+     */
+    public List<File> scan()
+    {
+        final Map<File, long[]> states = new HashMap<File, long[]>();
+        for (File root : mRoots) {
+            traverse(root.getAbsoluteFile(), states);
+        }
+
+        final List<File> changed = new ArrayList<File>();
+        for (Map.Entry<File, long[]> entry : states.entrySet()) {
+            final long[] previous = mStates.get(entry.getKey());
+            final long[] current = entry.getValue();
+            if ((previous == null) || (previous[0] != current[0])
+                || (previous[1] != current[1]))
+            {
+                changed.add(entry.getKey());
+            }
+        }
+        for (File file : mStates.keySet()) {
+            if (!states.containsKey(file)) {
+                changed.add(file);
+            }
+        }
+        mStates = states;
+        return changed;
+    }
+
+    /** @return the files found by the last scan */
+    public Set<File> getFiles()
+    {
+        return new HashSet<File>(mStates.keySet());
+    }
+
+    /**
+     * Records the state of a file, or of the files of a directory and its
+     * subdirectories.
+     * @param aNode the file or directory
+     * @param aStates the states of the files
+     */
+    private static void traverse(File aNode, Map<File, long[]> aStates)
+    {
+        if (aNode.isDirectory()) {
+            final File[] children = aNode.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    traverse(child, aStates);
+                }
+            }
+        }
+        else if (aNode.isFile()) {
+            aStates.put(aNode,
+                new long[] {aNode.lastModified(), aNode.length()});
+        }
+    }
+}
@@ -0,0 +1,435 @@
+////////////////////////////////////////////////////////////////////////////////
+// checkstyle: Checks Java source code for adherence to a set of rules.
+// Copyright (C) 2001-2011  Oliver Burn
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+////////////////////////////////////////////////////////////////////////////////
+
+package com.puppycrawl.tools.checkstyle.watch;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.daemon.XmlCheckSession;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Watches files and directories, auditing the files as they change and
+ * printing the violations found and fixed since their previous audit.
+ *
+ * The Checker, and so the walkers with their compiled expressions, is kept
+ * between the audits by an {@link XmlCheckSession}, and only the changed
+ * files are audited, so that the time taken by an audit depends on the
+ * edit rather than on the number of watched files. Changes are gathered
+ * until a scan finds no more of them, so that a burst of saves leads to a
+ * single audit. A change of the configuration file audits every file.
+ *
+ * A violation is told apart from the others of its file by its source and
+ * its message, its line and column being only displayed, so that editing
+ * the top of a file does not report all the violations below as fixed and
+ * found again.
+ *
+ * Usage: <code>XmlWatchMain -c config.xml [-p checkstyle.properties]
+ * [-i interval] file|directory...</code>
+ *
+ * @author Yoann Ciabaud<y.ciabaud@gmail.com>
+ */
+public class XmlWatchMain
+{
+    /** Milliseconds between two scans by default. */
+    public static final long DEFAULT_INTERVAL = 500;
+
+    /** The session auditing the files. */
+    private final XmlCheckSession mSession;
+
+    /** The configuration file, absolute. */
+    private final File mConfigFile;
+
+    /** Scans the watched files and the configuration file. */
+    private final XmlFileWatcher mWatcher;
+
+    /** Receives the violations found and fixed. */
+    private final PrintStream mOut;
+
+    /** Violations of the audited files, by file name. */
+    private final Map<String, List<Violation>> mViolations =
+        new HashMap<String, List<Violation>>();
+
+    /** Whether the watch was asked to stop. */
+    private volatile boolean mStopped;
+
+    /**
+     * Creates a watch.
+     * @param aSession the session auditing the files
+     * @param aRoots the watched files and directories
+     * @param aOut the stream receiving the violations found and fixed
+     */
+    public XmlWatchMain(XmlCheckSession aSession, List<File> aRoots,
+        PrintStream aOut)
+    {
+        mSession = aSession;
+        mConfigFile = aSession.getConfigFile().getAbsoluteFile();
+        final List<File> roots = new ArrayList<File>(aRoots);
+        roots.add(mConfigFile);
+        mWatcher = new XmlFileWatcher(roots);
+        mOut = aOut;
+    }
+
+    /**
+     * Scans the watched files once and audits the changed ones. The first
+     * call audits every file.
+     * @return the number of changed files
+     * @throws CheckstyleException if the configuration cannot be loaded
+     */
+    public int check() throws CheckstyleException
+    {
+        final List<File> changed = mWatcher.scan();
+        if (!changed.isEmpty()) {
+            check(changed);
+        }
+        return changed.size();
+    }
+
+    /**
+     * Audits the changed files each time a burst of changes is over, until
+     * the watch is stopped.
+     * @param aInterval the milliseconds between two scans
+     * @throws CheckstyleException if the configuration cannot be loaded
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void run(long aInterval)
+        throws CheckstyleException, InterruptedException
+    {
+        while (!mStopped) {
+            final Set<File> changed = new LinkedHashSet<File>(mWatcher.scan());
+            if (changed.isEmpty()) {
+                Thread.sleep(aInterval);
+                continue;
+            }
+            // Debounce: wait for a scan without new changes
+            Thread.sleep(aInterval);
+            List<File> more = mWatcher.scan();
+            while (!more.isEmpty() && !mStopped) {
+                changed.addAll(more);
+                Thread.sleep(aInterval);
+                more = mWatcher.scan();
+            }
+            check(new ArrayList<File>(changed));
+        }
+    }
+
+    /**
+     * Stops the watch after the audit in progress.
+     */
+    public void stop()
+    {
+        mStopped = true;
+    }
+
+    /**
+     * Audits changed files and prints the differences with their previous
+     * violations.
+     * @param aChanged the changed files, deleted ones no longer existing
+     * @throws CheckstyleException if the configuration cannot be loaded
+     */
+    private void check(List<File> aChanged) throws CheckstyleException
+    {
+        final List<File> audited = new ArrayList<File>();
+        final List<String> deleted = new ArrayList<String>();
+        for (File file : aChanged) {
+            if (file.isFile()) {
+                audited.add(file);
+            }
+            else {
+                deleted.add(file.getAbsolutePath());
+            }
+        }
+        if (audited.remove(mConfigFile)) {
+            audited.clear();
+            audited.addAll(mWatcher.getFiles());
+            audited.remove(mConfigFile);
+            Collections.sort(audited);
+        }
+
+        final ViolationListener listener = new ViolationListener();
+        for (File file : audited) {
+            listener.mViolations.put(file.getAbsolutePath(),
+                new ArrayList<Violation>());
+        }
+        mSession.audit(audited, listener);
+        for (String fileName : deleted) {
+            listener.mViolations.put(fileName, new ArrayList<Violation>());
+        }
+
+        int found = 0;
+        int fixed = 0;
+        for (Map.Entry<String, List<Violation>> entry
+            : listener.mViolations.entrySet())
+        {
+            final List<Violation> current = entry.getValue();
+            final List<Violation> added = new ArrayList<Violation>(current);
+            final List<Violation> removed = new ArrayList<Violation>();
+            final List<Violation> previous = mViolations.get(entry.getKey());
+            if (previous != null) {
+                removed.addAll(previous);
+                // same violation at the same place first, then anywhere
+                match(added, removed, true);
+                match(added, removed, false);
+            }
+            for (Violation violation : added) {
+                mOut.println("+ " + violation);
+                found++;
+            }
+            for (Violation violation : removed) {
+                mOut.println("- " + violation);
+                fixed++;
+            }
+            if (current.isEmpty()) {
+                mViolations.remove(entry.getKey());
+            }
+            else {
+                mViolations.put(entry.getKey(), current);
+            }
+        }
+
+        int remaining = 0;
+        for (List<Violation> violations : mViolations.values()) {
+            remaining += violations.size();
+        }
+        mOut.println(audited.size() + " files audited: " + found + " new, "
+            + fixed + " fixed, " + remaining + " remaining");
+        mOut.flush();
+    }
+
+    /**
+     * Removes the violations found both in the current and in the previous
+     * audit of a file, in order.
+     * @param aCurrent the violations of the current audit
+     * @param aPrevious the violations of the previous audit
+     * @param aSamePlace whether the violations must also be at the same
+     *        line and column
+     */
+    private static void match(List<Violation> aCurrent,
+        List<Violation> aPrevious, boolean aSamePlace)
+    {
+        final Iterator<Violation> it = aCurrent.iterator();
+        while (it.hasNext()) {
+            final Violation violation = it.next();
+            for (int i = 0; i < aPrevious.size(); i++) {
+                final Violation other = aPrevious.get(i);
+                if (violation.isSame(other)
+                    && (!aSamePlace || violation.isSamePlace(other)))
+                {
+                    aPrevious.remove(i);
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A violation of a file, identified by its source and message.
+     */
+    private static final class Violation
+    {
+        /** The name of the file. */
+        private final String mFileName;
+
+        /** The line, 0 if none. */
+        private final int mLine;
+
+        /** The column, 0 if none. */
+        private final int mColumn;
+
+        /** The source of the violation. */
+        private final String mSource;
+
+        /** The message. */
+        private final String mMessage;
+
+        /**
+         * Creates a violation.
+         * @param aFileName the name of the file
+         * @param aLine the line, 0 if none
+         * @param aColumn the column, 0 if none
+         * @param aSource the source of the violation
+         * @param aMessage the message
+         */
+        Violation(String aFileName, int aLine, int aColumn, String aSource,
+            String aMessage)
+        {
+            mFileName = aFileName;
+            mLine = aLine;
+            mColumn = aColumn;
+            mSource = aSource;
+            mMessage = aMessage;
+        }
+
+        /**
+         * Tells whether another violation has the same source and message.
+         * @param aOther the other violation
+         * @return whether both are the same violation
+         */
+        boolean isSame(Violation aOther)
+        {
+            return mSource.equals(aOther.mSource)
+                && mMessage.equals(aOther.mMessage);
+        }
+
+        /**
+         * Tells whether another violation is at the same line and column.
+         * @param aOther the other violation
+         * @return whether both are at the same place
+         */
+        boolean isSamePlace(Violation aOther)
+        {
+            return (mLine == aOther.mLine) && (mColumn == aOther.mColumn);
+        }
+
+        @Override
+        public String toString()
+        {
+            final StringBuilder buf = new StringBuilder(mFileName);
+            if (mLine > 0) {
+                buf.append(':').append(mLine);
+                if (mColumn > 0) {
+                    buf.append(':').append(mColumn);
+                }
+            }
+            return buf.append(": ").append(mMessage).toString();
+        }
+    }
+
+    /**
+     * Records the violations of the audited files.
+     */
+    private static class ViolationListener implements AuditListener
+    {
+        /** Violations by file name. */
+        private final Map<String, List<Violation>> mViolations =
+            new TreeMap<String, List<Violation>>();
+
+        /** {@inheritDoc} */
+        public void addError(AuditEvent aEvt)
+        {
+            add(new Violation(aEvt.getFileName(), aEvt.getLine(),
+                aEvt.getColumn(), String.valueOf(aEvt.getSourceName()),
+                aEvt.getMessage()));
+        }
+
+        /** {@inheritDoc} */
+        public void addException(AuditEvent aEvt, Throwable aThrowable)
+        {
+            add(new Violation(aEvt.getFileName(), 0, 0, "exception",
+                "exception " + aThrowable));
+        }
+
+        /**
+         * Records a violation.
+         * @param aViolation the violation
+         */
+        private void add(Violation aViolation)
+        {
+            List<Violation> violations =
+                mViolations.get(aViolation.mFileName);
+            if (violations == null) {
+                violations = new ArrayList<Violation>();
+                mViolations.put(aViolation.mFileName, violations);
+            }
+            violations.add(aViolation);
+        }
+
+        /** {@inheritDoc} */
+        public void auditStarted(AuditEvent aEvt)
+        {
+        }
+
+        /** {@inheritDoc} */
+        public void auditFinished(AuditEvent aEvt)
+        {
+        }
+
+        /** {@inheritDoc} */
+        public void fileStarted(AuditEvent aEvt)
+        {
+        }
+
+        /** {@inheritDoc} */
+        public void fileFinished(AuditEvent aEvt)
+        {
+        }
+    }
+
+    /**
+     * Watches the files of the command line until the process is killed.
+     * @param aArgs the command line arguments
+     * @throws Exception if the configuration cannot be loaded
+     */
+    public static void main(String[] aArgs) throws Exception
+    {
+        String config = null;
+        String propertiesFile = null;
+        long interval = DEFAULT_INTERVAL;
+        final List<File> roots = new ArrayList<File>();
+        for (int i = 0; i < aArgs.length; i++) {
+            if ("-c".equals(aArgs[i]) && (i + 1 < aArgs.length)) {
+                config = aArgs[++i];
+            }
+            else if ("-p".equals(aArgs[i]) && (i + 1 < aArgs.length)) {
+                propertiesFile = aArgs[++i];
+            }
+            else if ("-i".equals(aArgs[i]) && (i + 1 < aArgs.length)) {
+                interval = Long.parseLong(aArgs[++i]);
+            }
+            else {
+                roots.add(new File(aArgs[i]));
+            }
+        }
+        if ((config == null) || roots.isEmpty()) {
+            System.err.println("Usage: XmlWatchMain -c config.xml"
+                + " [-p checkstyle.properties] [-i interval]"
+                + " file|directory...");
+            System.exit(1);
+        }
+
+        final Properties properties = new Properties(System.getProperties());
+        if (propertiesFile != null) {
+            final InputStream in = new FileInputStream(propertiesFile);
+            try {
+                properties.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        new XmlWatchMain(new XmlCheckSession(new File(config), properties),
+            roots, System.out).run(interval);
+    }
+}
@@ -0,0 +1,156 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
+
+public class XmlCheckFilterTest {
+
+	private static final File DIR = new File("src/test/resources/xmlfilter");
+
+	private static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<String>());
+
+	private static final List<File> FILES = Arrays.asList(new File(DIR, "beans.xml"),
+		new File(DIR, "pom.xml"), new File(DIR, "nap/network.xml"));
+
+	@Test
+	public void testRouting() throws Exception {
+		List<String> errors = process(FILES, null,
+			check("all", null, null, null),
+			check("spring", "beans", null, null),
+			check("maven", null, "http://maven.apache.org/POM/4.0.0", null),
+			check("nap", null, null, "**/nap/*.xml"),
+			check("none", "beans", "http://maven.apache.org/POM/4.0.0", null));
+
+		assertEquals(Collections.emptyList(), errors);
+		assertEquals(Arrays.asList(
+			"all beans.xml", "spring beans.xml",
+			"all pom.xml", "maven pom.xml",
+			"all network.xml", "nap network.xml"), EVENTS);
+	}
+
+	@Test
+	public void testRoutingWithWorkers() throws Exception {
+		process(FILES, "2",
+			check("spring", "project, beans", null, null),
+			check("xml", null, null, "*.xml"),
+			check("pom", null, null, "pom.xml, *.xsd"));
+
+		List<String> events = new ArrayList<String>(EVENTS);
+		Collections.sort(events);
+		assertEquals(Arrays.asList(
+			"pom pom.xml", "spring beans.xml", "spring pom.xml",
+			"xml beans.xml", "xml network.xml", "xml pom.xml"), events);
+	}
+
+	@Test
+	public void testSkippedFileIsNotParsed() throws Exception {
+		File broken = new File(DIR, "broken.xml");
+
+		List<String> errors = process(Collections.singletonList(broken), null,
+			check("spring", "beans", null, null));
+		assertEquals(Collections.emptyList(), errors);
+		assertEquals(Collections.emptyList(), EVENTS);
+
+		errors = process(Collections.singletonList(broken), null,
+			check("spring", "beans", null, null),
+			check("nap", null, null, "nap/**"));
+		assertEquals(Collections.emptyList(), errors);
+
+		errors = process(Collections.singletonList(broken), null,
+			check("spring", "beans", null, null),
+			check("all", null, null, null));
+		assertEquals(1, errors.size());
+	}
+
+	private static DefaultConfiguration check(String label, String rootElement,
+			String rootNamespace, String files) {
+		DefaultConfiguration check = new DefaultConfiguration(RecordingCheck.class.getName());
+		check.addAttribute("label", label);
+		if (rootElement != null) {
+			check.addAttribute("rootElement", rootElement);
+		}
+		if (rootNamespace != null) {
+			check.addAttribute("rootNamespace", rootNamespace);
+		}
+		if (files != null) {
+			check.addAttribute("files", files);
+		}
+		return check;
+	}
+
+	private static List<String> process(List<File> files, String threads,
+			DefaultConfiguration... checks) throws Exception {
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		if (threads != null) {
+			walker.addAttribute("threads", threads);
+		}
+		for (DefaultConfiguration check : checks) {
+			walker.addChild(check);
+		}
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlCheckFilterTest.class.getClassLoader());
+		checker.configure(config);
+		final List<String> errors = new ArrayList<String>();
+		checker.addListener(new AuditListener() {
+			public void addError(AuditEvent evt) {
+				errors.add(evt.getMessage());
+			}
+
+			public void addException(AuditEvent evt, Throwable throwable) {
+				errors.add(throwable.toString());
+			}
+
+			public void auditStarted(AuditEvent evt) {
+			}
+
+			public void auditFinished(AuditEvent evt) {
+			}
+
+			public void fileStarted(AuditEvent evt) {
+			}
+
+			public void fileFinished(AuditEvent evt) {
+			}
+		});
+
+		EVENTS.clear();
+		checker.process(files);
+		checker.destroy();
+		return errors;
+	}
+
+	public static class RecordingCheck extends Check {
+
+		private String label;
+
+		public void setLabel(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public int[] getDefaultTokens() {
+			return new int[] {XmlTokenTypes.DOCUMENT};
+		}
+
+		@Override
+		public void visitToken(DetailAST ast) {
+			EVENTS.add(label + " " + ast.getText());
+		}
+	}
+}
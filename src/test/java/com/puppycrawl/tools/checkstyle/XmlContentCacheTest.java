@@ -0,0 +1,149 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class XmlContentCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSkipsSameContents() throws Exception {
+		File original = write("a.xml", "<root/>");
+		String cacheFile = new File(folder.getRoot(), "cache.properties").getPath();
+
+		XmlContentCache cache = new XmlContentCache("config", cacheFile);
+		String hash = cache.hash(original);
+		assertNotNull(hash);
+		assertFalse(cache.alreadyChecked(hash));
+		cache.checkedOk(hash, original.length());
+		cache.destroy();
+
+		File rewritten = write("a.xml", "<root/>");
+		rewritten.setLastModified(rewritten.lastModified() + 60000);
+		XmlContentCache reloaded = new XmlContentCache("config", cacheFile);
+		assertTrue(reloaded.alreadyChecked(reloaded.hash(rewritten)));
+		assertEquals(1, reloaded.getSkippedFiles());
+		assertEquals(rewritten.length(), reloaded.getSkippedBytes());
+
+		assertFalse(reloaded.alreadyChecked(reloaded.hash(write("a.xml", "<other/>"))));
+	}
+
+	@Test
+	public void testKeyedByPath() throws Exception {
+		File original = write("a.xml", "<root/>");
+		File copy = write("b.xml", "<root/>");
+		folder.newFolder("sub");
+		File moved = write("sub/a.xml", "<root/>");
+
+		String cacheFile = new File(folder.getRoot(), "cache.properties").getPath();
+
+		XmlContentCache cache = new XmlContentCache("config", cacheFile);
+		String hash = cache.hash(original);
+		assertEquals(hash, cache.hash(original));
+		assertFalse(hash.equals(cache.hash(copy)));
+		assertFalse(hash.equals(cache.hash(moved)));
+	}
+
+	@Test
+	public void testStoredAfterEachAudit() throws Exception {
+		File file = write("a.xml", "<root/>");
+		File cacheFile = new File(folder.getRoot(), "cache.properties");
+
+		XmlContentCache cache = new XmlContentCache("config", cacheFile.getPath());
+		cache.checkedOk(cache.hash(file), file.length());
+		cache.store();
+
+		// not destroyed, as when the process is killed
+		XmlContentCache reloaded = new XmlContentCache("config", cacheFile.getPath());
+		assertTrue(reloaded.alreadyChecked(reloaded.hash(file)));
+		assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		String cacheFile = new File(folder.getRoot(), "cache.properties").getPath();
+
+		XmlContentCache cache = new XmlContentCache("config", cacheFile);
+		for (int i = 0; i <= XmlContentCache.MAX_ENTRIES; i++) {
+			cache.checkedOk("hash" + i, i);
+			if (i == 0) {
+				cache.checkedOk("used", 1);
+			}
+			else if (i == 10) {
+				assertTrue(cache.alreadyChecked("used"));
+			}
+		}
+		cache.destroy();
+
+		XmlContentCache reloaded = new XmlContentCache("config", cacheFile);
+		assertFalse(reloaded.alreadyChecked("hash0"));
+		assertFalse(reloaded.alreadyChecked("hash1"));
+		assertTrue(reloaded.alreadyChecked("used"));
+		assertTrue(reloaded.alreadyChecked("hash2"));
+		assertTrue(reloaded.alreadyChecked("hash" + XmlContentCache.MAX_ENTRIES));
+	}
+
+	@Test
+	public void testConfigurationChange() throws Exception {
+		File file = write("a.xml", "<root/>");
+		String cacheFile = new File(folder.getRoot(), "cache.properties").getPath();
+
+		XmlContentCache cache = new XmlContentCache("config", cacheFile);
+		cache.checkedOk(cache.hash(file), file.length());
+		cache.destroy();
+
+		XmlContentCache changed = new XmlContentCache("other", cacheFile);
+		assertFalse(changed.alreadyChecked(changed.hash(file)));
+	}
+
+	@Test
+	public void testFingerprint() throws Exception {
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		walker.addAttribute("cacheFile", "first.properties");
+		DefaultConfiguration check = new DefaultConfiguration("XPathCheck");
+		check.addAttribute("expression", "//a");
+		walker.addChild(check);
+		String fingerprint = XmlContentCache.fingerprint(walker, "cacheFile");
+
+		DefaultConfiguration moved = new DefaultConfiguration("XmlTreeWalker");
+		moved.addAttribute("cacheFile", "second.properties");
+		moved.addChild(check);
+		assertEquals(fingerprint, XmlContentCache.fingerprint(moved, "cacheFile"));
+
+		check.addAttribute("maximum", "0");
+		assertFalse(fingerprint.equals(XmlContentCache.fingerprint(walker, "cacheFile")));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		XmlContentCache cache = new XmlContentCache("", null);
+		assertFalse(cache.isEnabled());
+		assertNull(cache.hash(write("a.xml", "<root/>")));
+		assertFalse(cache.alreadyChecked(null));
+	}
+
+	private File write(String aName, String aContents) throws IOException {
+		File file = new File(folder.getRoot(), aName);
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(aContents);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+}
@@ -2,13 +2,17 @@ package com.puppycrawl.tools.checkstyle;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.StringReader;
+import java.util.BitSet;
 
 import org.junit.Test;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 
 import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
@@ -43,4 +47,64 @@ public class XmlContentHandlerTest {
 		assertEquals("attrValue",  attr.findFirstToken(XmlTokenTypes.STRING_LITERAL).getText());
 	}
 
+	@Test
+	public void testBuiltTypes() throws Exception {
+		String xml = "<?xml version='1.0'?><?pi data?><root xmlns:x='urn:x' a='1'>"
+			+ "<x:child b='2'>text</x:child> <empty/></root>";
+
+		XmlDocument all = parse(xml, null);
+		assertEquals(1, count(all, XmlTokenTypes.PATH));
+		assertEquals(2, count(all, XmlTokenTypes.PCDATA));
+
+		XmlDocument document = parse(xml, types(XmlTokenTypes.DOCUMENT));
+		assertEquals(6, document.getSize());
+		assertEquals("built.xml", document.getAST(document.getRoot())
+			.findFirstToken(XmlTokenTypes.IDENT).getText());
+
+		XmlDocument elements = parse(xml, types(XmlTokenTypes.ELEMENT));
+		assertEquals(3, count(elements, XmlTokenTypes.ELEMENT));
+		assertEquals(count(all, XmlTokenTypes.ATTRIBUTE), count(elements, XmlTokenTypes.ATTRIBUTE));
+		assertEquals(0, count(elements, XmlTokenTypes.PCDATA));
+		assertEquals(0, count(elements, XmlTokenTypes.PREFIX_MAPPING));
+		assertEquals(0, count(elements, XmlTokenTypes.PROCESSING_INSTRUCTION));
+		assertEquals(1, count(elements, XmlTokenTypes.PATH));
+
+		XmlDocument text = parse(xml, types(XmlTokenTypes.PCDATA));
+		assertEquals(3, count(text, XmlTokenTypes.ELEMENT));
+		assertEquals(count(all, XmlTokenTypes.PCDATA), count(text, XmlTokenTypes.PCDATA));
+		assertEquals(0, count(text, XmlTokenTypes.ATTRIBUTES));
+		DetailAST child = text.getAST(text.getRoot()).findFirstToken(XmlTokenTypes.ELEMENT)
+			.findFirstToken(XmlTokenTypes.ELEMENT);
+		assertEquals("x:child", child.getText());
+		assertEquals("text", child.findFirstToken(XmlTokenTypes.PCDATA).getText());
+		assertNull(child.findFirstToken(XmlTokenTypes.IDENT));
+
+		XmlDocument instructions = parse(xml, types(XmlTokenTypes.PROCESSING_DATA));
+		assertEquals(3, count(instructions, XmlTokenTypes.PROCESSING_INSTRUCTION)
+			+ count(instructions, XmlTokenTypes.PROCESSING_TARGET)
+			+ count(instructions, XmlTokenTypes.PROCESSING_DATA));
+		assertEquals(0, count(instructions, XmlTokenTypes.PCDATA));
+	}
+
+	private static BitSet types(int type) {
+		BitSet types = new BitSet();
+		types.set(type);
+		return types;
+	}
+
+	private static XmlDocument parse(String xml, BitSet types) throws Exception {
+		XmlContentHandler handler = new XmlContentHandler(new File("built.xml"));
+		handler.setBuiltTypes(types);
+		return XmlTreeWalker.parseDocument(new InputSource(new StringReader(xml)), handler);
+	}
+
+	private static int count(XmlDocument document, int type) {
+		int count = 0;
+		for (int node = 0; node < document.getSize(); node++) {
+			if (document.getType(node) == type) {
+				count++;
+			}
+		}
+		return count;
+	}
 }
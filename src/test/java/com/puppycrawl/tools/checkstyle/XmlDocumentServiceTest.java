@@ -0,0 +1,45 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import net.sf.saxon.om.DocumentInfo;
+
+import org.junit.Test;
+
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+
+public class XmlDocumentServiceTest {
+
+	@Test
+	public void testSharedDocument() throws Exception {
+		File file = new File(XmlDocumentServiceTest.class.getResource("/test.xml").toURI());
+		FileContents contents = new FileContents(new FileText(file, "UTF-8"));
+
+		XmlDocumentService service = new XmlDocumentService();
+		DocumentInfo first = service.getDocument(contents);
+		DocumentInfo second = service.getDocument(contents);
+
+		assertSame(first, second);
+		assertSame(service.getConfiguration(), first.getConfiguration());
+	}
+
+	@Test
+	public void testRelease() throws Exception {
+		File file = new File(XmlDocumentServiceTest.class.getResource("/test.xml").toURI());
+		FileContents contents = new FileContents(new FileText(file, "UTF-8"));
+
+		XmlDocumentService service = new XmlDocumentService();
+		DocumentInfo first = service.getDocument(contents);
+		service.release();
+		DocumentInfo second = service.getDocument(contents);
+
+		assertNotSame(first, second);
+		assertEquals(first.getStringValue(), second.getStringValue());
+	}
+
+}
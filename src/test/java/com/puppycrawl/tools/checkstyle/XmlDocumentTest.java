@@ -0,0 +1,157 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
+
+public class XmlDocumentTest {
+
+	@Test
+	public void testNodes() throws Exception {
+		XmlDocument document = new XmlDocument();
+		int root = document.add(XmlDocument.NONE, XmlTokenTypes.DOCUMENT, "doc.xml", 1, 0);
+		int first = document.add(root, XmlTokenTypes.ELEMENT, "first", 2, 3);
+		int second = document.add(root, XmlTokenTypes.ELEMENT, "second", 4, 5);
+		int text = document.add(first, XmlTokenTypes.PCDATA, "text", 2, 10);
+
+		assertEquals(4, document.getSize());
+		assertEquals(root, document.getRoot());
+		assertEquals(first, document.getFirstChild(root));
+		assertEquals(second, document.getNextSibling(first));
+		assertEquals(XmlDocument.NONE, document.getNextSibling(second));
+		assertEquals(first, document.getParent(text));
+		assertEquals(XmlTokenTypes.PCDATA, document.getType(text));
+		assertEquals("second", document.getText(second));
+		assertEquals(4, document.getLine(second));
+		assertEquals(5, document.getColumn(second));
+		assertFalse(document.hasViews());
+	}
+
+	@Test
+	public void testViews() throws Exception {
+		XmlDocument document = new XmlDocument();
+		int root = document.add(XmlDocument.NONE, XmlTokenTypes.DOCUMENT, "doc.xml", 1, 0);
+		int first = document.add(root, XmlTokenTypes.ELEMENT, "first", 2, 3);
+		int second = document.add(root, XmlTokenTypes.ELEMENT, "second", 4, 5);
+		int text = document.add(first, XmlTokenTypes.PCDATA, "text", 2, 10);
+
+		DetailAST secondAST = document.getAST(second);
+		assertTrue(document.hasViews());
+		assertEquals("second", secondAST.getText());
+		assertEquals(XmlTokenTypes.ELEMENT, secondAST.getType());
+		assertEquals(4, secondAST.getLineNo());
+		// DetailAST columns are zero based
+		assertEquals(4, secondAST.getColumnNo());
+
+		DetailAST rootAST = document.getAST(root);
+		assertSame(rootAST, secondAST.getParent());
+		assertSame(document.getAST(first), secondAST.getPreviousSibling());
+		assertSame(document.getAST(first), rootAST.getFirstChild());
+		assertSame(secondAST, rootAST.getLastChild());
+		assertEquals(2, rootAST.getChildCount());
+		assertSame(document.getAST(first), document.getAST(text).getParent());
+		assertNull(rootAST.getParent());
+		assertTrue(rootAST.branchContains(XmlTokenTypes.PCDATA));
+	}
+
+	@Test
+	public void testPooledText() throws Exception {
+		XmlDocument document = new XmlDocument();
+		int root = document.add(XmlDocument.NONE, XmlTokenTypes.DOCUMENT, "doc.xml", 1, 0);
+		char[] chars = "<a>some text</a>".toCharArray();
+		int text = document.add(root, XmlTokenTypes.PCDATA, chars, 3, 9, 1, 4);
+		chars[3] = 'S';
+
+		assertEquals(9, document.getPooledLength());
+		assertEquals(9, document.getTextLength(text));
+		assertEquals(7, document.getTextLength(root));
+		assertEquals("some text", document.getText(text));
+		assertSame(document.getText(text), document.getText(text));
+		assertEquals("some text", document.getAST(text).getText());
+	}
+
+	@Test
+	public void testWideDocument() throws Exception {
+		StringBuilder xml = new StringBuilder("<root>");
+		for (int i = 0; i < 100000; i++) {
+			xml.append("<item/>");
+		}
+		xml.append("</root>");
+
+		XmlDocument document = XmlTreeWalker.parseDocument(
+				new InputSource(new StringReader(xml.toString())), new File("wide.xml"));
+		DetailAST root = document.getAST(document.getRoot());
+		DetailAST element = root.findFirstToken(XmlTokenTypes.ELEMENT);
+
+		assertEquals(100000, element.getChildCount(XmlTokenTypes.ELEMENT));
+		assertSame(element, element.getLastChild().getParent());
+	}
+
+	@Test
+	public void testSplitCharacters() throws Exception {
+		XmlContentHandler handler = new XmlContentHandler(new File("split.xml"));
+		handler.startDocument();
+		handler.startElement("", "a", "a", new AttributesImpl());
+		handler.characters("some ".toCharArray(), 0, 5);
+		handler.characters("text".toCharArray(), 0, 4);
+		handler.endElement("", "a", "a");
+		handler.endDocument();
+
+		DetailAST element = handler.getAST().findFirstToken(XmlTokenTypes.ELEMENT);
+		assertEquals(1, element.getChildCount(XmlTokenTypes.PCDATA));
+		assertEquals("some text", element.findFirstToken(XmlTokenTypes.PCDATA).getText());
+	}
+
+	@Test
+	public void testDropWhitespace() throws Exception {
+		String xml = "<root>\n  <a>text</a>\n  <b> </b>\n</root>";
+
+		XmlDocument kept = XmlTreeWalker.parseDocument(
+				new InputSource(new StringReader(xml)), new File("kept.xml"), false);
+		XmlDocument dropped = XmlTreeWalker.parseDocument(
+				new InputSource(new StringReader(xml)), new File("dropped.xml"), true);
+
+		assertEquals(0, kept.getDroppedTextCount());
+		assertEquals(4, dropped.getDroppedTextCount());
+		assertEquals(kept.getSize() - 4, dropped.getSize());
+		for (int node = 0; node < dropped.getSize(); node++) {
+			if (dropped.getType(node) == XmlTokenTypes.PCDATA) {
+				assertEquals("text", dropped.getText(node));
+			}
+		}
+	}
+
+	@Test
+	public void testRecycledHandler() throws Exception {
+		XmlContentHandler handler = new XmlContentHandler(new File("first.xml"));
+		XmlDocument first = XmlTreeWalker.parseDocument(
+				new InputSource(new StringReader("<a><b>first</b><c/></a>")), handler);
+		int firstSize = first.getSize();
+		first.getAST(first.getRoot());
+
+		handler.reset(new File("second.xml"));
+		XmlDocument second = XmlTreeWalker.parseDocument(
+				new InputSource(new StringReader("<a>second</a>")), handler);
+
+		assertSame(first, second);
+		assertFalse(second.hasViews());
+		assertTrue(second.getSize() < firstSize);
+		assertEquals(0, second.getPooledLength() - "second".length());
+		assertEquals("second.xml", second.getAST(second.getRoot()).getText());
+		DetailAST element = second.getAST(second.getRoot()).findFirstToken(XmlTokenTypes.ELEMENT);
+		assertEquals("second", element.findFirstToken(XmlTokenTypes.PCDATA).getText());
+	}
+
+}
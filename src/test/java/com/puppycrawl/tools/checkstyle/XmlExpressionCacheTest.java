@@ -0,0 +1,67 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.xpath.XPathExpression;
+
+import net.sf.saxon.query.XQueryExpression;
+
+import org.junit.Test;
+
+public class XmlExpressionCacheTest {
+
+	@Test
+	public void testXPathShared() throws Exception {
+		XmlExpressionCache cache = new XmlExpressionCache(10);
+
+		XPathExpression first = cache.getXPath("//book", null);
+		XPathExpression second = cache.getXPath("//book", null);
+
+		assertSame(first, second);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testNamespacesInKey() throws Exception {
+		XmlExpressionCache cache = new XmlExpressionCache(10);
+		Map<String, String> bk = Collections.singletonMap("bk", "urn:bookstore");
+		Map<String, String> inv = Collections.singletonMap("bk", "urn:inventory");
+
+		XPathExpression first = cache.getXPath("//bk:book", bk);
+		XPathExpression second = cache.getXPath("//bk:book", inv);
+
+		assertNotSame(first, second);
+		assertSame(first, cache.getXPath("//bk:book", bk));
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testXQueryShared() throws Exception {
+		XmlExpressionCache cache = new XmlExpressionCache(10);
+
+		XQueryExpression first = cache.getXQuery("for $b in //book return $b", null);
+		XQueryExpression second = cache.getXQuery("for $b in //book return $b", null);
+
+		assertSame(first, second);
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		XmlExpressionCache cache = new XmlExpressionCache(1);
+
+		XPathExpression first = cache.getXPath("//book", null);
+		cache.getXPath("//title", null);
+
+		assertEquals(1, cache.size());
+		assertNotSame(first, cache.getXPath("//book", null));
+		assertEquals(3, cache.getMisses());
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+
+public class XmlFileSourceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testOpenFile() throws Exception {
+		File file = new File(XmlFileSourceTest.class.getResource("/test.xml").toURI());
+		InputSource source = XmlFileSource.open(new FileText(file, "UTF-8"));
+		try {
+			assertNotNull(source.getByteStream());
+			assertNull(source.getCharacterStream());
+			assertEquals(file.toURI().toString(), source.getSystemId());
+			assertNotNull(XmlTreeWalker.parse(source, file));
+		} finally {
+			XmlFileSource.close(source);
+		}
+	}
+
+	@Test
+	public void testFallbackOnText() throws Exception {
+		File file = new File("missing.xml");
+		FileText text = FileText.fromLines(file, Arrays.asList("<root>", "<child/>", "</root>"));
+		InputSource source = XmlFileSource.open(text);
+		try {
+			assertNull(source.getByteStream());
+			assertNotNull(source.getCharacterStream());
+			DetailAST root = XmlTreeWalker.parse(source, file);
+			assertNotNull(root);
+		} finally {
+			XmlFileSource.close(source);
+		}
+	}
+
+	@Test
+	public void testStreamLargeFile() throws Exception {
+		File file = folder.newFile("large.xml");
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write("<root>\n");
+			while (file.length() <= XmlFileSource.STREAMING_THRESHOLD) {
+				for (int i = 0; i < 1000; i++) {
+					writer.write("  <record id=\"" + i + "\">some text</record>\n");
+				}
+				writer.flush();
+			}
+			writer.write("</root>\n");
+		} finally {
+			writer.close();
+		}
+
+		InputSource source = XmlFileSource.open(file);
+		try {
+			assertTrue(source.getByteStream() instanceof BufferedInputStream);
+			DetailAST root = XmlTreeWalker.parse(source, file);
+			assertNotNull(root);
+		} finally {
+			XmlFileSource.close(source);
+		}
+	}
+
+	@Test
+	public void testOpenFileOverTwoGigabytes() throws Exception {
+		File file = folder.newFile("huge.xml");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.write("<root>".getBytes("UTF-8"));
+			// sparse, no disk space is used
+			raf.setLength(Integer.MAX_VALUE + 1024L);
+		} finally {
+			raf.close();
+		}
+
+		InputStream in = XmlFileSource.openStream(file);
+		try {
+			byte[] start = new byte[6];
+			assertEquals(6, in.read(start));
+			assertEquals("<root>", new String(start, "UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+}
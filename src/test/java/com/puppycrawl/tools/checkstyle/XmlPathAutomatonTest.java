@@ -0,0 +1,133 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.xpath.XPathConstants;
+
+import net.sf.saxon.om.DocumentInfo;
+import net.sf.saxon.om.NodeInfo;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+
+public class XmlPathAutomatonTest {
+
+	private static final Map<String, String> NAMESPACES =
+			Collections.singletonMap("bk", "urn:xmlns:25hoursaday-com:bookstore");
+
+	private static final String[] EXPRESSIONS = {
+		"/bookstore", "bookstore/book", "//book", "//book/title", "//*", "/*/*",
+		"//book[@style]", "//book[@style][@id]", "//book/@style", "//@*", "/bookstore//@id",
+		"//bk:book", "//bk:*/@style", "//title//*", "//book//title", "//missing",
+	};
+
+	@Test
+	public void testCompile() throws Exception {
+		assertNotNull(XmlPathPattern.compile("//ELT/NAP_NAME[@value]", null));
+		assertNotNull(XmlPathPattern.compile("/CTL_DATA/X/@value", null));
+		assertNotNull(XmlPathPattern.compile(" a.b-c/_d ", null));
+		assertNull(XmlPathPattern.compile("/", null));
+		assertNull(XmlPathPattern.compile("/@a", null));
+		assertNull(XmlPathPattern.compile("//a[1]", null));
+		assertNull(XmlPathPattern.compile("//a[b]", null));
+		assertNull(XmlPathPattern.compile("//a/@b/c", null));
+		assertNull(XmlPathPattern.compile("//a/text()", null));
+		assertNull(XmlPathPattern.compile("count(//a)", null));
+		assertNull(XmlPathPattern.compile("//a | //b", null));
+		assertNull(XmlPathPattern.compile("child::a", null));
+		assertNull(XmlPathPattern.compile("//x:a", null));
+		assertNull(XmlPathPattern.compile("../a", null));
+		assertEquals("//{urn:x}a/@*", XmlPathPattern.compile("//x:a/@*",
+				Collections.singletonMap("x", "urn:x")).toString());
+	}
+
+	@Test
+	public void testSameAsSaxon() throws Exception {
+		File file = new File("src/test/resources/issues/xpath-streamed/input.xml");
+		FileContents contents = new FileContents(new FileText(file, "UTF-8"));
+		DocumentInfo document = new XmlDocumentService().getDocument(contents);
+
+		XmlPathAutomaton automaton = new XmlPathAutomaton();
+		int[] indexes = new int[EXPRESSIONS.length];
+		for (int i = 0; i < EXPRESSIONS.length; i++) {
+			indexes[i] = automaton.add(XmlPathPattern.compile(EXPRESSIONS[i], NAMESPACES), 0);
+		}
+		assertFalse(automaton.hasResults(contents));
+		parse(file, contents, automaton);
+		assertTrue(automaton.hasResults(contents));
+
+		for (int i = 0; i < EXPRESSIONS.length; i++) {
+			List<?> nodes = (List<?>) XmlExpressionCache.getInstance()
+					.getXPath(EXPRESSIONS[i], NAMESPACES).evaluate(document, XPathConstants.NODESET);
+			assertEquals(EXPRESSIONS[i], nodes.size(), automaton.getMatchCount(indexes[i]));
+			for (int match = 0; match < nodes.size(); match++) {
+				NodeInfo node = (NodeInfo) nodes.get(match);
+				assertEquals(EXPRESSIONS[i], node.getLineNumber(), automaton.getMatchLine(indexes[i], match));
+				assertEquals(EXPRESSIONS[i], node.getColumnNumber(), automaton.getMatchColumn(indexes[i], match));
+			}
+		}
+	}
+
+	@Test
+	public void testSharedPatterns() throws Exception {
+		File file = new File("src/test/resources/issues/xpath-streamed/input.xml");
+		FileContents contents = new FileContents(new FileText(file, "UTF-8"));
+
+		XmlPathAutomaton automaton = new XmlPathAutomaton();
+		int first = automaton.add(XmlPathPattern.compile("//book", null), 2);
+		int second = automaton.add(XmlPathPattern.compile(" //book ", null), 1);
+		assertEquals(first, second);
+		assertEquals(1, automaton.getSize());
+
+		parse(file, contents, automaton);
+		assertTrue(automaton.getMatchCount(first) > 1);
+		assertTrue(automaton.getMatchLine(first, 1) > 0);
+		assertFalse(automaton.hasResults(new FileContents(new FileText(file, "UTF-8"))));
+	}
+
+	@Test
+	public void testLocatedRange() throws Exception {
+		File file = new File("src/test/resources/issues/xpath-streamed/input.xml");
+		FileContents contents = new FileContents(new FileText(file, "UTF-8"));
+
+		XmlPathAutomaton reference = new XmlPathAutomaton();
+		int all = reference.add(XmlPathPattern.compile("//*", null), 0);
+		parse(file, contents, reference);
+
+		XmlPathAutomaton automaton = new XmlPathAutomaton();
+		int some = automaton.add(XmlPathPattern.compile("//*", null), 1, 3);
+		parse(file, new FileContents(new FileText(file, "UTF-8")), automaton);
+
+		assertEquals(reference.getMatchCount(all), automaton.getMatchCount(some));
+		assertTrue(automaton.getMatchCount(some) > 3);
+		assertEquals(reference.getMatchLine(all, 1), automaton.getMatchLine(some, 1));
+		assertEquals(reference.getMatchLine(all, 2), automaton.getMatchLine(some, 2));
+		assertEquals(0, automaton.getMatchLine(some, 3));
+	}
+
+	private static void parse(File file, FileContents contents, XmlPathAutomaton automaton)
+			throws Exception {
+		XmlContentHandler handler = new XmlContentHandler(file);
+		automaton.beginDocument(contents);
+		handler.setPathAutomaton(automaton);
+		InputSource source = XmlFileSource.open(file);
+		try {
+			XmlTreeWalker.parseDocument(source, handler);
+		} finally {
+			XmlFileSource.close(source);
+		}
+	}
+
+}
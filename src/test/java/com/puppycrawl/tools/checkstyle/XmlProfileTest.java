@@ -0,0 +1,90 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.checks.XPathCheck;
+
+public class XmlProfileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testProfileFile() throws Exception {
+		List<String> rows = profile(null);
+
+		assertTrue(rows.contains("phase,\"parse\",parse,2"));
+		assertTrue(rows.contains("check,\"XPathCheck[//*[@*]]\",visit,2"));
+		assertTrue(rows.contains("check,\"XPathCheck[required]\",visit,2"));
+		assertTrue(rows.contains("file,\"" + new File("src/test/resources/test.xml").getPath() + "\","));
+		assertTrue(rows.contains("input,\"\",parse,2"));
+	}
+
+	@Test
+	public void testProfileMergesWorkers() throws Exception {
+		List<String> rows = profile("2");
+
+		assertTrue(rows.contains("phase,\"parse\",parse,2"));
+		assertTrue(rows.contains("check,\"XPathCheck[//*[@*]]\",visit,2"));
+	}
+
+	private List<String> profile(String threads) throws Exception {
+		File profileFile = new File(folder.getRoot(), "profile.csv");
+
+		DefaultConfiguration byExpression = new DefaultConfiguration(XPathCheck.class.getName());
+		byExpression.addAttribute("expression", "//*[@*]");
+		DefaultConfiguration byId = new DefaultConfiguration(XPathCheck.class.getName());
+		byId.addAttribute("id", "required");
+		byId.addAttribute("expression", "/*");
+		byId.addAttribute("min", "1");
+		byId.addAttribute("max", "1");
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		walker.addAttribute("profileFile", profileFile.getPath());
+		if (threads != null) {
+			walker.addAttribute("threads", threads);
+		}
+		walker.addChild(byExpression);
+		walker.addChild(byId);
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlProfileTest.class.getClassLoader());
+		checker.configure(config);
+		checker.addListener(mock(AuditListener.class));
+
+		List<File> files = new ArrayList<File>();
+		files.add(new File("src/test/resources/test.xml"));
+		files.add(new File("src/test/resources/xmltree/test.xml"));
+		checker.process(files);
+		checker.destroy();
+
+		List<String> rows = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(profileFile));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				// drop the nanos and bytes which vary between runs
+				rows.add(line.replaceAll(",-?\\d+,-?\\d+$", ""));
+				if (line.startsWith("file,")) {
+					rows.add(line.substring(0, line.indexOf("\",") + 2));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return rows;
+	}
+
+}
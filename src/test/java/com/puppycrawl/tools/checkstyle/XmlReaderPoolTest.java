@@ -0,0 +1,186 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.checks.XPathCheck;
+
+public class XmlReaderPoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReuse() throws Exception {
+		XMLReader first = XmlReaderPool.acquire();
+		XmlReaderPool.release(first);
+		XMLReader second = XmlReaderPool.acquire();
+		try {
+			assertSame(first, second);
+		} finally {
+			XmlReaderPool.release(second);
+		}
+	}
+
+	@Test
+	public void testNestedAcquire() throws Exception {
+		XMLReader outer = XmlReaderPool.acquire();
+		XMLReader inner = XmlReaderPool.acquire();
+		try {
+			assertNotSame(outer, inner);
+		} finally {
+			XmlReaderPool.release(inner);
+			XmlReaderPool.release(outer);
+		}
+	}
+
+	@Test
+	public void testThreadConfinement() throws Exception {
+		final XMLReader local = XmlReaderPool.acquire();
+		XmlReaderPool.release(local);
+
+		final AtomicReference<XMLReader> other = new AtomicReference<XMLReader>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					XMLReader reader = XmlReaderPool.acquire();
+					other.set(reader);
+					XmlReaderPool.release(reader);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertNotNull(other.get());
+		assertNotSame(local, other.get());
+	}
+
+	@Test
+	public void testExternalDtdNotLoaded() throws Exception {
+		String xml = "<?xml version=\"1.0\"?>\n"
+				+ "<!DOCTYPE root SYSTEM \"http://unreachable.invalid/missing.dtd\">\n"
+				+ "<root><child/></root>";
+		assertNotNull(XmlTreeWalker.parseDocument(new InputSource(new StringReader(xml)),
+				new XmlContentHandler(new File("doctype.xml")), false));
+	}
+
+	@Test
+	public void testRestrictedParserOptIn() throws Exception {
+		File file = writeDocument();
+
+		assertEquals("world|default", read(file, true));
+		assertEquals("|", read(file, false));
+		// released parsers read the external entities again
+		assertEquals("world|default", read(file, true));
+		assertEquals("world|default", read(file));
+	}
+
+	@Test
+	public void testWalkerExternalEntities() throws Exception {
+		File file = writeDocument();
+
+		assertEquals(0, audit(file, null));
+		assertEquals(1, audit(file, "false"));
+	}
+
+	private File writeDocument() throws IOException {
+		write("doc.dtd", "<!ENTITY who \"world\">\n"
+				+ "<!ATTLIST root kind CDATA \"default\">\n");
+		return write("doc.xml", "<?xml version=\"1.0\"?>\n"
+				+ "<!DOCTYPE root SYSTEM \"doc.dtd\">\n"
+				+ "<root>&who;</root>\n");
+	}
+
+	private static String read(File file) throws Exception {
+		return read(XmlReaderPool.acquire(), file);
+	}
+
+	private static String read(File file, boolean externalEntities) throws Exception {
+		return read(XmlReaderPool.acquire(externalEntities), file);
+	}
+
+	private static String read(XMLReader reader, File file) throws Exception {
+		final StringBuilder text = new StringBuilder();
+		final StringBuilder kind = new StringBuilder();
+		InputSource source = XmlFileSource.open(file);
+		try {
+			reader.setContentHandler(new DefaultHandler() {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes atts) {
+					if (atts.getValue("kind") != null) {
+						kind.append(atts.getValue("kind"));
+					}
+				}
+
+				@Override
+				public void characters(char[] ch, int start, int length) {
+					text.append(ch, start, length);
+				}
+			});
+			reader.parse(source);
+		} finally {
+			XmlFileSource.close(source);
+			XmlReaderPool.release(reader);
+		}
+		return text.toString().trim() + "|" + kind;
+	}
+
+	private static int audit(File file, String externalEntities) throws Exception {
+		DefaultConfiguration check = new DefaultConfiguration(XPathCheck.class.getName());
+		check.addAttribute("expression", "/root[@kind = 'default'][. = 'world']");
+		check.addAttribute("min", "1");
+		check.addAttribute("max", "-1");
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		if (externalEntities != null) {
+			walker.addAttribute("externalEntities", externalEntities);
+		}
+		walker.addChild(check);
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlReaderPoolTest.class.getClassLoader());
+		checker.configure(config);
+		checker.addListener(mock(AuditListener.class));
+		try {
+			return checker.process(Collections.singletonList(file));
+		} finally {
+			checker.destroy();
+		}
+	}
+
+	private File write(String name, String contents) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+}
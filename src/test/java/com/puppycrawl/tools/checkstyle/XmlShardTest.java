@@ -0,0 +1,184 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
+import com.puppycrawl.tools.checkstyle.checks.XPathCheck;
+
+public class XmlShardTest {
+
+	private static final File INPUT = new File("src/test/resources/xmlshard/export.xml");
+
+	@Test
+	public void testSplit() throws Exception {
+		FileText text = new FileText(INPUT, "UTF-8");
+		List<XmlShard> shards = split(text, 2);
+
+		// (1, 2), (3, 4), (5), (6) and the remainder
+		assertEquals(5, shards.size());
+		assertEquals("<export xmlns:x=\"urn:x\" version=\"1\">\n"
+			+ "  <batch id=\"a\">\n"
+			+ "    <record id=\"3\"/><record id=\"4\"/>\n"
+			+ "</batch></export>", shards.get(1).getText());
+		assertEquals(9, shards.get(1).mapLine(3));
+		assertEquals(4, shards.get(1).mapLine(2));
+
+		String remainder = shards.get(4).getText();
+		assertEquals(text.size(), remainder.split("\n", -1).length);
+		assertTrue(remainder.contains("  <batch id=\"b\">                                    </batch>"));
+		assertTrue(!remainder.contains("record"));
+	}
+
+	@Test
+	public void testShardLines() throws Exception {
+		FileText text = new FileText(INPUT, "UTF-8");
+		List<String> whole = elements(null);
+		for (XmlShard shard : split(text, 2)) {
+			List<String> elements = elements(shard);
+			assertTrue(elements + " in " + whole, whole.containsAll(elements));
+		}
+	}
+
+	@Test
+	public void testSameMessages() throws Exception {
+		List<String> whole = process(null, null, null);
+		List<String> sequential = process("2", null, null);
+		List<String> parallel = process("2", "3", null);
+
+		assertEquals(8, whole.size());
+		assertEquals(whole, sequential);
+		assertEquals(whole, parallel);
+	}
+
+	@Test
+	public void testFilteredParallel() throws Exception {
+		List<String> whole = process(null, null, null);
+
+		assertEquals(whole, process("2", "2", "**/*.xml"));
+		assertEquals(whole, process("2", null, "**/*.xml"));
+		assertEquals(0, process("2", "2", "*.txt").size());
+	}
+
+	private static List<XmlShard> split(FileText text, int size) throws Exception {
+		XmlShardSplitter splitter = new XmlShardSplitter(
+			XmlShardSplitter.parsePath("/export/batch/record"), text, size);
+		XMLReader reader = XmlReaderPool.acquire();
+		reader.setContentHandler(splitter);
+		InputSource source = XmlFileSource.open(INPUT);
+		try {
+			reader.parse(source);
+		}
+		finally {
+			XmlFileSource.close(source);
+			XmlReaderPool.release(reader);
+		}
+		return splitter.getShards();
+	}
+
+	private static List<String> elements(XmlShard shard) throws Exception {
+		XmlContentHandler handler = new XmlContentHandler(INPUT);
+		XMLReader reader = XmlReaderPool.acquire();
+		XMLReader parser = (shard == null) ? reader : shard.createFilter(reader);
+		parser.setContentHandler(handler);
+		InputSource source = (shard == null) ? XmlFileSource.open(INPUT) : shard.createSource(INPUT);
+		try {
+			parser.parse(source);
+		}
+		finally {
+			XmlFileSource.close(source);
+			XmlReaderPool.release(reader);
+		}
+		XmlDocument document = handler.getDocument();
+		List<String> elements = new ArrayList<String>();
+		collect(document, document.getRoot(), elements);
+		return elements;
+	}
+
+	private static void collect(XmlDocument document, int node, List<String> elements) {
+		for (int child = node; child != XmlDocument.NONE; child = document.getNextSibling(child)) {
+			if (document.getType(child) == XmlTokenTypes.ELEMENT) {
+				elements.add(document.getText(child) + "@" + document.getLine(child)
+					+ ":" + document.getColumn(child));
+			}
+			collect(document, document.getFirstChild(child), elements);
+		}
+	}
+
+	private List<String> process(String shardSize, String threads, String files) throws Exception {
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		if (shardSize != null) {
+			walker.addAttribute("shardElement", "/export/batch/record");
+			walker.addAttribute("shardSize", shardSize);
+		}
+		if (threads != null) {
+			walker.addAttribute("threads", threads);
+		}
+		walker.addChild(xpath("//record", null, "2", files));
+		walker.addChild(xpath("//x:v", "7", "-1", files));
+		walker.addChild(xpath("//*[@id]", null, "-1", files));
+		walker.addChild(xpath("//record[@id > 4]/x:v", null, "0", files));
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlShardTest.class.getClassLoader());
+		checker.configure(config);
+		RecordingListener listener = new RecordingListener();
+		checker.addListener(listener);
+		checker.process(Collections.singletonList(INPUT));
+		checker.destroy();
+		return listener.errors;
+	}
+
+	private static DefaultConfiguration xpath(String expression, String min, String max, String files) {
+		DefaultConfiguration check = new DefaultConfiguration(XPathCheck.class.getName());
+		check.addAttribute("expression", expression);
+		check.addAttribute("namespaces", "x, urn:x");
+		if (min != null) {
+			check.addAttribute("min", min);
+		}
+		check.addAttribute("max", max);
+		if (files != null) {
+			check.addAttribute("files", files);
+		}
+		return check;
+	}
+
+	private static class RecordingListener implements AuditListener {
+
+		private final List<String> errors = new ArrayList<String>();
+
+		public void addError(AuditEvent evt) {
+			errors.add(evt.getLine() + ":" + evt.getColumn() + ":" + evt.getMessage());
+		}
+
+		public void addException(AuditEvent evt, Throwable throwable) {
+			errors.add("exception: " + throwable);
+		}
+
+		public void auditStarted(AuditEvent evt) {
+		}
+
+		public void auditFinished(AuditEvent evt) {
+		}
+
+		public void fileStarted(AuditEvent evt) {
+		}
+
+		public void fileFinished(AuditEvent evt) {
+		}
+	}
+}
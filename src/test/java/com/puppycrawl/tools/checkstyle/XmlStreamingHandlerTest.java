@@ -0,0 +1,151 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import com.puppycrawl.tools.checkstyle.api.XmlStreamingCheck;
+import com.puppycrawl.tools.checkstyle.checks.XPathCheck;
+
+public class XmlStreamingHandlerTest {
+
+	private static boolean treeWalked;
+
+	@Test
+	public void testStreaming() throws Exception {
+		AuditListener listener = mock(AuditListener.class);
+		ArgumentCaptor<AuditEvent> argument = ArgumentCaptor.forClass(AuditEvent.class);
+
+		process("true", listener);
+
+		verify(listener).addError(argument.capture());
+		assertEquals("22 elements, 1 attributes", argument.getValue().getMessage());
+		assertEquals(29, argument.getValue().getLine());
+		assertFalse(treeWalked);
+	}
+
+	@Test
+	public void testAstByDefault() throws Exception {
+		AuditListener listener = mock(AuditListener.class);
+		ArgumentCaptor<AuditEvent> argument = ArgumentCaptor.forClass(AuditEvent.class);
+
+		process(null, listener);
+
+		verify(listener).addError(argument.capture());
+		assertEquals("0 elements, 0 attributes", argument.getValue().getMessage());
+		assertTrue(treeWalked);
+	}
+
+	@Test
+	public void testLargeFile() throws Exception {
+		AuditListener listener = mock(AuditListener.class);
+		ArgumentCaptor<AuditEvent> argument = ArgumentCaptor.forClass(AuditEvent.class);
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		walker.addAttribute("largeFileThreshold", "100");
+		DefaultConfiguration xpath = new DefaultConfiguration(XPathCheck.class.getName());
+		xpath.addAttribute("expression", "//*");
+		walker.addChild(xpath);
+
+		processWalker(walker, listener);
+
+		verify(listener, times(2)).addError(argument.capture());
+		List<AuditEvent> events = argument.getAllValues();
+		assertEquals("XPathCheck[//*] skipped: file too large (769 bytes, largeFileThreshold 100)",
+			events.get(0).getMessage());
+		assertEquals(SeverityLevel.WARNING, events.get(0).getSeverityLevel());
+		assertEquals("22 elements, 1 attributes", events.get(1).getMessage());
+		assertFalse(treeWalked);
+	}
+
+	private void process(String streaming, AuditListener listener) throws Exception {
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		if (streaming != null) {
+			walker.addAttribute("streaming", streaming);
+		}
+		processWalker(walker, listener);
+	}
+
+	private void processWalker(DefaultConfiguration walker, AuditListener listener) throws Exception {
+		walker.addChild(new DefaultConfiguration(CountingCheck.class.getName()));
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlStreamingHandlerTest.class.getClassLoader());
+		checker.configure(config);
+		checker.addListener(listener);
+
+		treeWalked = false;
+		checker.process(Collections.singletonList(new File("src/test/resources/test.xml")));
+		checker.destroy();
+	}
+
+	public static class CountingCheck extends Check implements XmlStreamingCheck {
+
+		private int elements;
+
+		private int attributes;
+
+		private int lastLine;
+
+		@Override
+		public int[] getDefaultTokens() {
+			return new int[0];
+		}
+
+		@Override
+		public void beginTree(DetailAST aRootAST) {
+			treeWalked = true;
+			elements = 0;
+			attributes = 0;
+		}
+
+		@Override
+		public void finishTree(DetailAST aRootAST) {
+			endDocument();
+		}
+
+		public void beginDocument(File aFile) {
+			elements = 0;
+			attributes = 0;
+		}
+
+		public void startElement(String aNamespaceURI, String aLocalName,
+				String aQName, int aLine, int aColumn) {
+			elements++;
+		}
+
+		public void attribute(String aNamespaceURI, String aLocalName,
+				String aQName, String aValue, int aLine, int aColumn) {
+			attributes++;
+		}
+
+		public void characters(char[] aCh, int aStart, int aLength,
+				int aLine, int aColumn) {
+		}
+
+		public void endElement(String aNamespaceURI, String aLocalName,
+				String aQName, int aLine, int aColumn) {
+			lastLine = aLine;
+		}
+
+		public void endDocument() {
+			log(lastLine, elements + " elements, " + attributes + " attributes");
+		}
+	}
+}
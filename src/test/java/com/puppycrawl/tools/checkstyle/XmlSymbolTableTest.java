@@ -0,0 +1,144 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
+
+public class XmlSymbolTableTest {
+
+	private static final List<XmlSymbolTable> TABLES = new ArrayList<XmlSymbolTable>();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testIntern() throws Exception {
+		XmlSymbolTable symbols = new XmlSymbolTable();
+		int first = symbols.intern("first");
+		for (int i = 0; i < 100; i++) {
+			symbols.intern("name" + i);
+		}
+
+		assertEquals(first, symbols.intern(new String("first")));
+		assertEquals(first, symbols.getId("first"));
+		assertEquals("first", symbols.getName(first));
+		assertEquals(XmlSymbolTable.NONE, symbols.getId("unknown"));
+		assertEquals(XmlSymbolTable.NONE, symbols.intern(null));
+		assertEquals(101, symbols.getSize());
+		assertEquals("name99", symbols.getName(symbols.getId("name99")));
+	}
+
+	@Test
+	public void testSharedBetweenDocuments() throws Exception {
+		XmlSymbolTable symbols = new XmlSymbolTable();
+		XmlDocument first = parse(symbols, "<x:a xmlns:x=\"urn:x\" b=\"1\"/>");
+		XmlDocument second = parse(symbols, "<x:a xmlns:x=\"urn:x\" b=\"2\"/>");
+
+		int firstElement = find(first, XmlTokenTypes.ELEMENT);
+		int secondElement = find(second, XmlTokenTypes.ELEMENT);
+		assertEquals(first.getSymbol(firstElement), second.getSymbol(secondElement));
+		assertSame(first.getText(firstElement), second.getText(secondElement));
+		assertEquals("x:a", second.getText(secondElement));
+		assertEquals(symbols.getId("urn:x"), second.getNamespace(secondElement));
+		assertSame(first.getAST(firstElement).getText(), second.getAST(secondElement).getText());
+
+		int value = find(second, XmlTokenTypes.STRING_LITERAL);
+		int attribute = find(second, XmlTokenTypes.ATTRIBUTE);
+		assertEquals(XmlSymbolTable.NONE, second.getNamespace(attribute));
+		assertEquals(XmlSymbolTable.NONE, second.getSymbol(second.getNextSibling(
+				second.getFirstChild(attribute))));
+		assertEquals("urn:x", second.getText(value));
+	}
+
+	@Test
+	public void testNewTableEachRun() throws Exception {
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		walker.addChild(new DefaultConfiguration(TableCheck.class.getName()));
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlSymbolTableTest.class.getClassLoader());
+		checker.configure(config);
+		checker.addListener(mock(AuditListener.class));
+
+		TABLES.clear();
+		try {
+			checker.process(Collections.singletonList(write("one.xml", "<one/>")));
+			checker.process(Collections.singletonList(write("two.xml", "<two/>")));
+		}
+		finally {
+			checker.destroy();
+		}
+
+		assertEquals(2, TABLES.size());
+		assertNotSame(TABLES.get(0), TABLES.get(1));
+		assertTrue(TABLES.get(1).getId("two") != XmlSymbolTable.NONE);
+		assertEquals(XmlSymbolTable.NONE, TABLES.get(1).getId("one"));
+	}
+
+	private File write(String name, String contents) throws Exception {
+		File file = new File(folder.getRoot(), name);
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(contents);
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	public static class TableCheck extends Check {
+
+		private XmlSymbolTable symbolTable;
+
+		public void setSymbolTable(XmlSymbolTable symbolTable) {
+			this.symbolTable = symbolTable;
+		}
+
+		@Override
+		public int[] getDefaultTokens() {
+			return new int[] {XmlTokenTypes.ELEMENT};
+		}
+
+		@Override
+		public void beginTree(DetailAST aRootAST) {
+			TABLES.add(symbolTable);
+		}
+	}
+
+	private static XmlDocument parse(XmlSymbolTable symbols, String xml) throws Exception {
+		XmlContentHandler handler = new XmlContentHandler(new File("doc.xml"), symbols);
+		return XmlTreeWalker.parseDocument(new InputSource(new StringReader(xml)), handler);
+	}
+
+	private static int find(XmlDocument document, int type) {
+		for (int node = 0; node < document.getSize(); node++) {
+			if (document.getType(node) == type) {
+				return node;
+			}
+		}
+		return XmlDocument.NONE;
+	}
+
+}
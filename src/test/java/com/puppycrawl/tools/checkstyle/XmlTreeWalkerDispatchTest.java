@@ -0,0 +1,121 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xml.sax.InputSource;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.XmlTokenTypes;
+
+public class XmlTreeWalkerDispatchTest {
+
+	private static final List<String> EVENTS = new ArrayList<String>();
+
+	@Test
+	public void testDispatchOrder() throws Exception {
+		File file = new File("src/test/resources/test.xml");
+
+		DefaultConfiguration first = new DefaultConfiguration(RecordingCheck.class.getName());
+		first.addAttribute("label", "first");
+		DefaultConfiguration second = new DefaultConfiguration(RecordingCheck.class.getName());
+		second.addAttribute("label", "second");
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		walker.addChild(first);
+		walker.addChild(second);
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlTreeWalkerDispatchTest.class.getClassLoader());
+		checker.configure(config);
+		checker.addListener(mock(AuditListener.class));
+
+		EVENTS.clear();
+		checker.process(Collections.singletonList(file));
+		checker.destroy();
+
+		List<String> expected = new ArrayList<String>();
+		DetailAST root = XmlTreeWalker.parse(new InputSource(new FileInputStream(file)), file);
+		expectedEvents(root, expected);
+
+		assertEquals(expected, EVENTS);
+	}
+
+	@Test
+	public void testTypeNameAlone() throws Exception {
+		DefaultConfiguration typeName = new DefaultConfiguration("TypeName");
+		typeName.addAttribute("format", "^[A-Z]+\\.xml$");
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		walker.addChild(typeName);
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlTreeWalkerDispatchTest.class.getClassLoader());
+		checker.configure(config);
+		AuditListener listener = mock(AuditListener.class);
+		checker.addListener(listener);
+		ArgumentCaptor<AuditEvent> argument = ArgumentCaptor.forClass(AuditEvent.class);
+
+		checker.process(Collections.singletonList(new File("src/test/resources/test.xml")));
+		checker.destroy();
+
+		verify(listener).addError(argument.capture());
+		assertTrue(argument.getValue().getMessage(),
+			argument.getValue().getMessage().startsWith("Name 'test.xml' must match pattern"));
+	}
+
+	private static void expectedEvents(DetailAST ast, List<String> events) {
+		for (DetailAST node = ast; node != null; node = node.getNextSibling()) {
+			boolean subscribed = node.getType() == XmlTokenTypes.ELEMENT
+					|| node.getType() == XmlTokenTypes.ATTRIBUTE;
+			if (subscribed) {
+				events.add("visit first " + node.getText() + "@" + node.getLineNo());
+				events.add("visit second " + node.getText() + "@" + node.getLineNo());
+			}
+			expectedEvents(node.getFirstChild(), events);
+			if (subscribed) {
+				events.add("leave first " + node.getText() + "@" + node.getLineNo());
+				events.add("leave second " + node.getText() + "@" + node.getLineNo());
+			}
+		}
+	}
+
+	public static class RecordingCheck extends Check {
+
+		private String label;
+
+		public void setLabel(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public int[] getDefaultTokens() {
+			return new int[] {XmlTokenTypes.ELEMENT, XmlTokenTypes.ATTRIBUTE};
+		}
+
+		@Override
+		public void visitToken(DetailAST aAST) {
+			EVENTS.add("visit " + label + " " + aAST.getText() + "@" + aAST.getLineNo());
+		}
+
+		@Override
+		public void leaveToken(DetailAST aAST) {
+			EVENTS.add("leave " + label + " " + aAST.getText() + "@" + aAST.getLineNo());
+		}
+	}
+}
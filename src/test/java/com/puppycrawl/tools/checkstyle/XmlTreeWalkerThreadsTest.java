@@ -0,0 +1,180 @@
+package com.puppycrawl.tools.checkstyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.checks.XPathCheck;
+
+public class XmlTreeWalkerThreadsTest {
+
+	private static final String[] INPUTS = {
+		"src/test/resources/xmltree/test.xml",
+		"src/test/resources/xmltree/hopital/hopital.xml",
+		"src/test/resources/test.xml",
+		"src/test/resources/issues/xpath-item/input.xml",
+		"src/test/resources/issues/xpath-namespace/input.xml",
+		"src/test/resources/issues/xquery-required/input.xml",
+	};
+
+	@Test
+	public void testSameMessagesInSameOrder() throws Exception {
+		List<String> sequential = process(null);
+		List<String> parallel = process("4");
+
+		assertTrue(sequential.size() > 3 * INPUTS.length);
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void testMessagesWithinFileEvents() throws Exception {
+		List<String> parallel = process("4");
+
+		int started = 0;
+		String current = null;
+		for (String event : parallel) {
+			if (event.startsWith("start:")) {
+				assertEquals(null, current);
+				current = event.substring("start:".length());
+				started++;
+			}
+			else if (event.startsWith("end:")) {
+				assertEquals(current, event.substring("end:".length()));
+				current = null;
+			}
+			else {
+				assertTrue(event, event.startsWith(current + ":"));
+			}
+		}
+		assertEquals(INPUTS.length, started);
+	}
+
+	@Test
+	public void testChecksStayOnTheirWorker() throws Exception {
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		walker.addAttribute("threads", "3");
+		for (int i = 0; i < 5; i++) {
+			DefaultConfiguration check = new DefaultConfiguration(InstanceCheck.class.getName());
+			check.addAttribute("label", "check" + i);
+			walker.addChild(check);
+		}
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlTreeWalkerThreadsTest.class.getClassLoader());
+		checker.configure(config);
+		checker.addListener(new RecordingListener());
+
+		List<File> files = new ArrayList<File>();
+		for (String input : INPUTS) {
+			files.add(new File(input));
+		}
+		INSTANCES.clear();
+		checker.process(files);
+		checker.destroy();
+
+		assertEquals(5, INSTANCES.size());
+		for (Map.Entry<String, Set<Integer>> entry : INSTANCES.entrySet()) {
+			assertEquals(entry.getKey(), 1, entry.getValue().size());
+		}
+	}
+
+	private List<String> process(String threads) throws Exception {
+		DefaultConfiguration walker = new DefaultConfiguration("XmlTreeWalker");
+		if (threads != null) {
+			walker.addAttribute("threads", threads);
+		}
+		for (String expression : new String[] {"//*[@*]", "//*[not(*)]", "//@*"}) {
+			DefaultConfiguration check = new DefaultConfiguration(XPathCheck.class.getName());
+			check.addAttribute("expression", expression);
+			walker.addChild(check);
+		}
+		DefaultConfiguration config = new DefaultConfiguration("Checker");
+		config.addChild(walker);
+
+		Checker checker = new Checker();
+		checker.setModuleClassLoader(XmlTreeWalkerThreadsTest.class.getClassLoader());
+		checker.configure(config);
+		RecordingListener listener = new RecordingListener();
+		checker.addListener(listener);
+
+		List<File> files = new ArrayList<File>();
+		for (String input : INPUTS) {
+			files.add(new File(input));
+		}
+		checker.process(files);
+		checker.destroy();
+		return listener.events;
+	}
+
+	private static final Map<String, Set<Integer>> INSTANCES =
+			new HashMap<String, Set<Integer>>();
+
+	public static class InstanceCheck extends Check {
+
+		private String label;
+
+		public void setLabel(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public int[] getDefaultTokens() {
+			return new int[0];
+		}
+
+		@Override
+		public void beginTree(DetailAST aRootAST) {
+			synchronized (INSTANCES) {
+				Set<Integer> instances = INSTANCES.get(label);
+				if (instances == null) {
+					instances = new HashSet<Integer>();
+					INSTANCES.put(label, instances);
+				}
+				instances.add(System.identityHashCode(this));
+			}
+		}
+	}
+
+	private static class RecordingListener implements AuditListener {
+
+		private final List<String> events = new ArrayList<String>();
+
+		public void addError(AuditEvent evt) {
+			events.add(new File(evt.getFileName()).getName() + ":" + evt.getLine()
+					+ ":" + evt.getColumn() + ":" + evt.getMessage());
+		}
+
+		public void addException(AuditEvent evt, Throwable throwable) {
+			events.add("exception: " + throwable);
+		}
+
+		public void auditStarted(AuditEvent evt) {
+		}
+
+		public void auditFinished(AuditEvent evt) {
+		}
+
+		public void fileStarted(AuditEvent evt) {
+			events.add("start:" + new File(evt.getFileName()).getName());
+		}
+
+		public void fileFinished(AuditEvent evt) {
+			events.add("end:" + new File(evt.getFileName()).getName());
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.puppycrawl.tools.checkstyle.checks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.om.SequenceIterator;
+
+import org.junit.Test;
+
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
+import com.puppycrawl.tools.checkstyle.api.FileContents;
+import com.puppycrawl.tools.checkstyle.api.LocalizedMessage;
+import com.puppycrawl.tools.checkstyle.api.LocalizedMessages;
+
+public class AbstractExpressionCheckTest {
+
+	@Test
+	public void testStopsOnceMinIsReached() throws Exception {
+		XQueryCheck check = new XQueryCheck();
+		check.setMin(2);
+		check.setMax(-1);
+		SequenceIterator results = mock(SequenceIterator.class);
+		when(results.next()).thenReturn(mock(Item.class));
+
+		check.countMatches(new DetailAST(), results);
+
+		verify(results, times(2)).next();
+		verify(results).close();
+	}
+
+	@Test
+	public void testNothingToEvaluate() throws Exception {
+		XQueryCheck check = new XQueryCheck();
+		check.setMax(-1);
+		SequenceIterator results = mock(SequenceIterator.class);
+
+		check.countMatches(new DetailAST(), results);
+
+		verify(results, times(0)).next();
+		verify(results).close();
+	}
+
+	@Test
+	public void testCountingExpression() throws Exception {
+		CountingCheck check = new CountingCheck(0);
+		check.setExpression("//a");
+		assertEquals("count((//a))", check.getCountingExpression());
+		check.setMax(-1);
+		assertNull(check.getCountingExpression());
+		check.setMin(1);
+		assertEquals("exists((//a))", check.getCountingExpression());
+	}
+
+	@Test
+	public void testCountOnlyWithinLimits() throws Exception {
+		CountingCheck check = new CountingCheck(3);
+		check.setMax(3);
+
+		check.evaluate(new DetailAST(), mock(Item.class));
+
+		assertEquals(0, check.iterations);
+	}
+
+	@Test
+	public void testLessMatchesNotIterated() throws Exception {
+		LocalizedMessages messages = new LocalizedMessages();
+		CountingCheck check = createCheck(3, messages);
+		check.setMax(3);
+		check.setMin(4);
+
+		check.evaluate(new DetailAST(), mock(Item.class));
+
+		assertEquals(0, check.iterations);
+		assertEquals(1, messages.size());
+	}
+
+	@Test
+	public void testIteratesToLocate() throws Exception {
+		LocalizedMessages messages = new LocalizedMessages();
+		CountingCheck check = createCheck(4, messages);
+		check.setMax(3);
+		NodeInfo node = mock(NodeInfo.class);
+		when(node.getLineNumber()).thenReturn(1);
+		when(node.getColumnNumber()).thenReturn(4);
+
+		check.evaluate(new DetailAST(), node);
+
+		assertEquals(1, check.iterations);
+		assertEquals(1, messages.size());
+	}
+
+	@Test
+	public void testMaxReportedStopsIteration() throws Exception {
+		LocalizedMessages messages = new LocalizedMessages();
+		CountingCheck check = createCheck(1000, messages);
+		check.setMax(0);
+		check.setMaxReported(2);
+		check.nodes = 1000;
+
+		check.evaluate(new DetailAST(), mock(Item.class));
+
+		verify(check.results, times(3)).next();
+		verify(check.results).close();
+		List<LocalizedMessage> logged = new ArrayList<LocalizedMessage>(messages.getMessages());
+		assertEquals(3, logged.size());
+		assertEquals("test.invalidPath", logged.get(0).getKey());
+		assertEquals(1, logged.get(0).getLineNo());
+		assertEquals(2, logged.get(1).getLineNo());
+		assertEquals("test.suppressed", logged.get(2).getKey());
+		assertEquals(3, logged.get(2).getLineNo());
+	}
+
+	@Test
+	public void testMaxReportedWithoutCount() throws Exception {
+		LocalizedMessages messages = new LocalizedMessages();
+		CountingCheck check = createCheck(0, messages);
+		check.setMax(1);
+		check.setMaxReported(0);
+		check.nodes = 5;
+
+		check.countMatches(new DetailAST(), check.iterate(mock(Item.class)));
+
+		verify(check.results, times(6)).next();
+		List<LocalizedMessage> logged = new ArrayList<LocalizedMessage>(messages.getMessages());
+		assertEquals(1, logged.size());
+		assertEquals("test.suppressed", logged.get(0).getKey());
+		assertEquals(2, logged.get(0).getLineNo());
+	}
+
+	private static CountingCheck createCheck(long matches, LocalizedMessages messages)
+			throws Exception {
+		CountingCheck check = new CountingCheck(matches);
+		check.configure(new DefaultConfiguration("CountingCheck"));
+		check.setMessages(messages);
+		String[] lines = new String[1000];
+		Arrays.fill(lines, "<a/>");
+		check.setFileContents(new FileContents("test.xml", lines));
+		return check;
+	}
+
+	private static final class CountingCheck extends AbstractExpressionCheck {
+
+		private final long matches;
+
+		private int iterations;
+
+		private int nodes;
+
+		private SequenceIterator results;
+
+		CountingCheck(long matches) {
+			super("test");
+			this.matches = matches;
+		}
+
+		@Override
+		protected SequenceIterator iterate(Item context) {
+			iterations++;
+			results = mock(SequenceIterator.class);
+			try {
+				if (nodes > 0) {
+					Item[] items = new Item[nodes];
+					for (int i = 0; i < nodes; i++) {
+						NodeInfo node = mock(NodeInfo.class);
+						when(node.getLineNumber()).thenReturn(i + 1);
+						when(node.getColumnNumber()).thenReturn(1);
+						items[i] = node;
+					}
+					when(results.next()).thenReturn(items[0], Arrays.copyOfRange(items, 1, nodes + 1));
+				}
+				else {
+					when(results.next()).thenReturn(context, context, context, context, null);
+				}
+			} catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+			return results;
+		}
+
+		@Override
+		protected long count(Item context) {
+			return matches;
+		}
+	}
+
+}
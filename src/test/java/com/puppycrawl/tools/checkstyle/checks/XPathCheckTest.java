@@ -5,6 +5,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
@@ -88,4 +92,44 @@ public class XPathCheckTest extends AbstractXmlCheckTest {
 		assertEquals(30, event1.getLine());
 	}
 
+	@Test
+	public void testStreamed() throws Exception {
+		// prepare
+		AuditListener listener = mock(AuditListener.class);
+		ArgumentCaptor<AuditEvent> argument = ArgumentCaptor
+				.forClass(AuditEvent.class);
+
+		// execute
+		processChecker("issues/xpath-streamed", listener);
+
+		// verify
+		verify(listener).addError(argument.capture());
+		assertEquals(XPathCheck.class.getName(), argument.getValue()
+				.getSourceName());
+		assertEquals(8, argument.getValue().getLine());
+	}
+
+	@Test
+	public void testMaxReported() throws Exception {
+		// prepare
+		AuditListener listener = mock(AuditListener.class);
+		ArgumentCaptor<AuditEvent> argument = ArgumentCaptor
+				.forClass(AuditEvent.class);
+
+		// execute
+		processChecker("issues/xpath-max-reported", listener);
+
+		// verify
+		verify(listener, times(4)).addError(argument.capture());
+		List<String> messages = new ArrayList<String>();
+		for (AuditEvent event : argument.getAllValues()) {
+			messages.add(event.getLine() + ": " + event.getMessage());
+		}
+		assertEquals("14", messages.get(0).substring(0, 2));
+		assertEquals("21", messages.get(1).substring(0, 2));
+		assertEquals(Arrays.asList(
+				"22: 5 further match(es) for expression '//author' suppressed, first at line 22.",
+				"22: 5 further match(es) for expression '//book[year = 2003]/author' suppressed, first at line 22."),
+				messages.subList(2, 4));
+	}
 }
@@ -0,0 +1,222 @@
+package com.puppycrawl.tools.checkstyle.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class XmlDaemonTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAuditAndReload() throws Exception {
+		File config = writeConfig("1");
+		File input = new File("src/test/resources/issues/xpath-required/input.xml");
+		List<File> files = Arrays.asList(input);
+
+		XmlCheckSession session = new XmlCheckSession(config, new Properties());
+		final XmlDaemonMain daemon = new XmlDaemonMain(session, 0);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				daemon.run();
+			}
+		});
+		thread.start();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(0, XmlDaemonClient.audit(daemon.getPort(), "plain", files, out));
+			assertTrue(out.toString("UTF-8").contains("Audit done"));
+
+			out.reset();
+			assertEquals(0, XmlDaemonClient.audit(daemon.getPort(), "xml", files, out));
+			assertTrue(out.toString("UTF-8").contains("<checkstyle"));
+			assertEquals(1, session.getLoadCount());
+
+			long timestamp = config.lastModified();
+			config = writeConfig("10");
+			config.setLastModified(timestamp + 2000);
+
+			out.reset();
+			assertEquals(1, XmlDaemonClient.audit(daemon.getPort(), "plain", files, out));
+			assertTrue(out.toString("UTF-8").contains(input.getName()));
+			assertEquals(2, session.getLoadCount());
+
+			XmlDaemonClient.stop(daemon.getPort());
+			thread.join(10000);
+			assertFalse(XmlDaemonMain.getDefaultTokenFile(daemon.getPort()).exists());
+		}
+		finally {
+			daemon.stop();
+		}
+	}
+
+	@Test
+	public void testRejectsWrongToken() throws Exception {
+		File config = writeConfig("1");
+		List<File> files = Arrays.asList(new File("src/test/resources/issues/xpath-required/input.xml"));
+		File token = new File(folder.getRoot(), "token");
+
+		final XmlDaemonMain daemon = new XmlDaemonMain(new XmlCheckSession(config, new Properties()), 0, token);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				daemon.run();
+			}
+		});
+		thread.start();
+		try {
+			assertTrue(token.canRead());
+			for (String request : new String[] {"stop\n", "wrong\nstop\n"}) {
+				Socket socket = new Socket(InetAddress.getByName(null), daemon.getPort());
+				try {
+					socket.getOutputStream().write(request.getBytes("UTF-8"));
+					BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+					assertEquals("failed wrong token", in.readLine());
+				}
+				finally {
+					socket.close();
+				}
+			}
+			assertTrue(thread.isAlive());
+			assertEquals(0, XmlDaemonClient.audit(daemon.getPort(), token, "plain", files, new ByteArrayOutputStream()));
+
+			XmlDaemonClient.stop(daemon.getPort(), token);
+			thread.join(10000);
+			assertFalse(thread.isAlive());
+			assertFalse(token.exists());
+		}
+		finally {
+			daemon.stop();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testFailedAudit() throws Exception {
+		XmlCheckSession session = new XmlCheckSession(
+			new File(folder.getRoot(), "missing.xml"), new Properties());
+		final File token = new File(folder.getRoot(), "token");
+		final XmlDaemonMain daemon = new XmlDaemonMain(session, 0, token);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				daemon.run();
+			}
+		});
+		thread.start();
+		try {
+			XmlDaemonClient.audit(daemon.getPort(), token, "plain",
+				Arrays.asList(new File("input.xml")), new ByteArrayOutputStream());
+		}
+		finally {
+			daemon.stop();
+		}
+	}
+
+	@Test
+	public void testDropsIdleClient() throws Exception {
+		File config = writeConfig("1");
+		List<File> files = Arrays.asList(new File("src/test/resources/issues/xpath-required/input.xml"));
+
+		File token = new File(folder.getRoot(), "token");
+		final XmlDaemonMain daemon = new XmlDaemonMain(new XmlCheckSession(config, new Properties()), 0, token);
+		daemon.setReadTimeout(200);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				daemon.run();
+			}
+		});
+		thread.start();
+		Socket idle = new Socket(InetAddress.getByName(null), daemon.getPort());
+		try {
+			assertEquals(0, XmlDaemonClient.audit(daemon.getPort(), token, "plain", files, new ByteArrayOutputStream()));
+
+			XmlDaemonClient.stop(daemon.getPort(), token);
+			thread.join(10000);
+			assertFalse(thread.isAlive());
+		}
+		finally {
+			idle.close();
+			daemon.stop();
+		}
+	}
+
+	@Test
+	public void testServesAfterRuntimeException() throws Exception {
+		XmlCheckSession session = mock(XmlCheckSession.class);
+		when(session.audit(anyListOf(File.class), anyString(), any(OutputStream.class)))
+			.thenThrow(new IllegalStateException("broken check"));
+		List<File> files = Arrays.asList(new File("input.xml"));
+
+		File token = new File(folder.getRoot(), "token");
+		final XmlDaemonMain daemon = new XmlDaemonMain(session, 0, token);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				daemon.run();
+			}
+		});
+		thread.start();
+		try {
+			for (int i = 0; i < 2; i++) {
+				try {
+					XmlDaemonClient.audit(daemon.getPort(), token, "plain", files, new ByteArrayOutputStream());
+					fail("the audit failed");
+				}
+				catch (IOException ex) {
+					assertTrue(ex.getMessage().contains("broken check"));
+				}
+			}
+
+			XmlDaemonClient.stop(daemon.getPort(), token);
+			thread.join(10000);
+			assertFalse(thread.isAlive());
+		}
+		finally {
+			daemon.stop();
+		}
+	}
+
+	private File writeConfig(String min) throws IOException {
+		File file = new File(folder.getRoot(), "checkstyle.xml");
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write("<?xml version=\"1.0\"?>\n"
+				+ "<!DOCTYPE module PUBLIC \"-//Puppy Crawl//DTD Check Configuration 1.3//EN\""
+				+ " \"http://www.puppycrawl.com/dtds/configuration_1_3.dtd\">\n"
+				+ "<module name=\"Checker\">\n"
+				+ "  <module name=\"XmlTreeWalker\">\n"
+				+ "    <module name=\"XPathCheck\">\n"
+				+ "      <property name=\"expression\" value=\"//book\"/>\n"
+				+ "      <property name=\"min\" value=\"" + min + "\"/>\n"
+				+ "      <property name=\"max\" value=\"-1\"/>\n"
+				+ "    </module>\n"
+				+ "  </module>\n"
+				+ "</module>\n");
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+}
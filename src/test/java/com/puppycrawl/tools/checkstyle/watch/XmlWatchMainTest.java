@@ -0,0 +1,108 @@
+package com.puppycrawl.tools.checkstyle.watch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.puppycrawl.tools.checkstyle.daemon.XmlCheckSession;
+
+public class XmlWatchMainTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testIncrementalDiffs() throws Exception {
+		File config = writeConfig();
+		File sources = folder.newFolder("sources");
+		File first = write("sources/first.xml", "<root>\n<bad/>\n</root>\n");
+		File second = write("sources/second.xml", "<root/>\n");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XmlWatchMain watch = new XmlWatchMain(new XmlCheckSession(config, new Properties()),
+			Arrays.asList(sources), new PrintStream(out, true));
+
+		assertEquals(3, watch.check());
+		String report = out.toString();
+		assertTrue(report, report.startsWith("+ " + first.getAbsolutePath() + ":2:"));
+		assertTrue(report, report.contains("2 files audited: 1 new, 0 fixed, 1 remaining"));
+		assertEquals(0, watch.check());
+
+		out.reset();
+		long timestamp = second.lastModified();
+		write("sources/second.xml", "<root>\n\n<bad/>\n</root>\n").setLastModified(timestamp + 2000);
+		assertEquals(1, watch.check());
+		report = out.toString();
+		assertTrue(report, report.startsWith("+ " + second.getAbsolutePath() + ":3:"));
+		assertTrue(report, report.contains("1 files audited: 1 new, 0 fixed, 2 remaining"));
+
+		out.reset();
+		assertTrue(first.delete());
+		assertEquals(1, watch.check());
+		report = out.toString();
+		assertTrue(report, report.startsWith("- " + first.getAbsolutePath() + ":2:"));
+		assertTrue(report, report.contains("0 files audited: 0 new, 1 fixed, 1 remaining"));
+	}
+
+	@Test
+	public void testShiftedLines() throws Exception {
+		File config = writeConfig();
+		File sources = folder.newFolder("sources");
+		File file = write("sources/file.xml", "<root>\n<bad/>\n</root>\n");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XmlWatchMain watch = new XmlWatchMain(new XmlCheckSession(config, new Properties()),
+			Arrays.asList(sources), new PrintStream(out, true));
+		assertEquals(2, watch.check());
+
+		out.reset();
+		long timestamp = file.lastModified();
+		write("sources/file.xml", "<root>\n\n\n<bad/>\n</root>\n").setLastModified(timestamp + 2000);
+		assertEquals(1, watch.check());
+		assertEquals("1 files audited: 0 new, 0 fixed, 1 remaining", out.toString().trim());
+
+		out.reset();
+		write("sources/file.xml", "<root>\n</root>\n").setLastModified(timestamp + 4000);
+		assertEquals(1, watch.check());
+		String report = out.toString();
+		assertTrue(report, report.startsWith("- " + file.getAbsolutePath() + ":4:"));
+		assertTrue(report, report.contains("1 files audited: 0 new, 1 fixed, 0 remaining"));
+	}
+
+	private File writeConfig() throws IOException {
+		return write("checkstyle.xml", "<?xml version=\"1.0\"?>\n"
+			+ "<!DOCTYPE module PUBLIC \"-//Puppy Crawl//DTD Check Configuration 1.3//EN\""
+			+ " \"http://www.puppycrawl.com/dtds/configuration_1_3.dtd\">\n"
+			+ "<module name=\"Checker\">\n"
+			+ "  <module name=\"XmlTreeWalker\">\n"
+			+ "    <module name=\"XPathCheck\">\n"
+			+ "      <property name=\"expression\" value=\"//bad\"/>\n"
+			+ "      <property name=\"max\" value=\"0\"/>\n"
+			+ "    </module>\n"
+			+ "  </module>\n"
+			+ "</module>\n");
+	}
+
+	private File write(String name, String contents) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(contents);
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+}